@@ -0,0 +1,145 @@
+package time.clock.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.concurrent.Callable;
+
+import time.clock.data.ActivityType;
+import time.clock.data.DurabilityPolicy;
+import time.clock.data.PunchEngine;
+import time.clock.data.TimeFormats;
+
+/**
+ * Synthetic data directories for the benchmarks, and running engine code with its console output thrown
+ * away so the forked benchmark JVMs only print results.
+ */
+
+public final class BenchData {
+
+	public static final int CALENDAR_EMPLOYEES = 1000;	//Employees in the synthetic calendars
+
+	//Punches each synthetic employee makes each day, with their minute of the day
+	private static final ActivityType[] DAY = {ActivityType.CLOCK_IN, ActivityType.BREAK_START, ActivityType.BREAK_END,
+			ActivityType.LUNCH_START, ActivityType.LUNCH_END, ActivityType.CLOCK_OUT};
+	private static final int[] DAY_MINUTES = {8 * 60, 10 * 60, 10 * 60 + 15, 12 * 60, 12 * 60 + 30, 16 * 60 + 30};
+
+	private static final PrintStream NOWHERE = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	private BenchData() {
+	}
+
+	/**
+	 * @param name What the directory is for
+	 * @return a new empty temporary directory
+	 * @throws IOException if it cannot be created
+	 */
+
+	public static File newDirectory(String name) throws IOException {
+		return Files.createTempDirectory("timeclock-" + name).toFile();
+	}
+
+	/**
+	 * Write employees.txt, with an admin and employees e0 to e(employees - 1), and a time ordered
+	 * calendar.txt of the given size ending yesterday.
+	 * @param data		Data directory
+	 * @param employees	Employees besides the admin
+	 * @param lines		Punches in calendar.txt
+	 * @throws IOException if the files cannot be written
+	 */
+
+	public static void writeCalendar(File data, int employees, long lines) throws IOException {
+		data.mkdirs();
+		BufferedWriter employeeFile = new BufferedWriter(new FileWriter(new File(data, "employees.txt")));
+		employeeFile.write("admin,admin\n");
+		for(int i = 0; i < employees; i++) {
+			employeeFile.write("e" + i + ",user\n");
+		}
+		employeeFile.close();
+
+		long perDay = (long) employees * DAY.length;
+		long days = (lines + perDay - 1) / perDay;
+		LocalDate day = LocalDate.now(TimeFormats.ZONE).minusDays(days);
+		BufferedWriter calendar = new BufferedWriter(new FileWriter(new File(data, "calendar.txt")), 1 << 16);
+		long written = 0;
+		while(written < lines) {
+			for(int slot = 0; slot < DAY.length && written < lines; slot++) {
+				String time = TimeFormats.PARSE_DATE_TIME.format(day.atStartOfDay().plusMinutes(DAY_MINUTES[slot]));
+				for(int i = 0; i < employees && written < lines; i++) {
+					calendar.write("e" + i + "," + DAY[slot].getName() + "," + time + "\n");
+					written++;
+				}
+			}
+			day = day.plusDays(1);
+		}
+		calendar.close();
+	}
+
+	/**
+	 * Delete the journal months and ID dictionary, so the next engine converts calendar.txt again.
+	 * @param data Data directory
+	 */
+
+	public static void deleteJournal(File data) {
+		for(File segment: data.listFiles((directory, name) -> name.startsWith("calendar-") || name.equals("calendar.ids"))) {
+			segment.delete();
+		}
+	}
+
+	/**
+	 * Start an engine on a data directory without its startup messages.
+	 * @param data		Data directory
+	 * @param policy	Durability policy setting, e.g. punch
+	 * @return the engine
+	 * @throws Exception if the engine cannot be started
+	 */
+
+	public static PunchEngine engine(File data, String policy) throws Exception {
+		return quietly(() -> new PunchEngine(data, DurabilityPolicy.parse(policy)));
+	}
+
+	/**
+	 * Run something with System.out going nowhere, e.g. engine startup or console report rendering.
+	 * @param task What to run
+	 * @return its result
+	 * @throws Exception if it fails
+	 */
+
+	public static <T> T quietly(Callable<T> task) throws Exception {
+		PrintStream out = System.out;
+		System.setOut(NOWHERE);
+		try {
+			return task.call();
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	/**
+	 * Delete a file or a directory and everything in it.
+	 * @param file The file or directory
+	 */
+
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child: children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}//BenchData
@@ -0,0 +1,141 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.clock.data.CsvParser;
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PunchEngine;
+import time.clock.data.PunchImport;
+
+/**
+ * Parsing a calendar.txt format upload, importing it into an empty journal, and importing it again when
+ * every punch is a duplicate.
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+public class ImportBenchmark {
+
+	static final int PUNCHES = 1000000;		//Punches in the upload
+
+	/**
+	 * An upload and an empty journal to import it into.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Upload {
+		File data;
+		File upload;
+
+		@Setup(Level.Trial)
+		public void write() throws Exception {
+			System.setProperty(EngineSnapshot.PROPERTY, "off");
+			data = BenchData.newDirectory("import");
+			BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, PUNCHES);
+			upload = new File(data, "upload.csv");
+			new File(data, "calendar.txt").renameTo(upload);
+		}
+
+		@Setup(Level.Invocation)
+		public void deleteJournal() {
+			BenchData.deleteJournal(data);
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() {
+			BenchData.delete(data);
+		}
+	}
+
+	/**
+	 * An upload already imported once.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Imported {
+		File data;
+		File upload;
+
+		@Setup(Level.Trial)
+		public void write() throws Exception {
+			System.setProperty(EngineSnapshot.PROPERTY, "off");
+			data = BenchData.newDirectory("import");
+			BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, PUNCHES);
+			upload = new File(data, "upload.csv");
+			new File(data, "calendar.txt").renameTo(upload);
+			importUpload(data, upload);
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() {
+			BenchData.delete(data);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	public long parseCalendar(Upload upload) throws Exception {
+		long[] minutes = new long[1];
+		FileChannel input = FileChannel.open(upload.upload.toPath());
+		try {
+			new CsvParser(input, Charset.defaultCharset()).readCalendar(String::length, (employee, type, epochMinute) -> minutes[0] += epochMinute);
+		} finally {
+			input.close();
+		}
+		return minutes[0];
+	}
+
+	@Benchmark
+	public long importCalendar(Upload upload) throws Exception {
+		long accepted = importUpload(upload.data, upload.upload);
+		if(accepted != PUNCHES) {
+			throw new IllegalStateException("Imported " + accepted + " of " + PUNCHES + " punches.");
+		}
+		return accepted;
+	}
+
+	@Benchmark
+	public long importDuplicates(Imported imported) throws Exception {
+		PunchEngine engine = BenchData.engine(imported.data, "punch");
+		PunchImport punches = engine.newImport();
+		punches.readCalendar(imported.upload);
+		long duplicates = BenchData.quietly(() -> engine.importPunches(punches)).getDuplicates();
+		engine.close();
+		return duplicates;
+	}
+
+	/**
+	 * Import an upload into a data directory with a new engine.
+	 * @return the punches accepted
+	 */
+
+	static long importUpload(File data, File upload) throws Exception {
+		PunchEngine engine = BenchData.engine(data, "punch");
+		PunchImport punches = engine.newImport();
+		punches.readCalendar(upload);
+		long accepted = BenchData.quietly(() -> engine.importPunches(punches)).getAccepted();
+		engine.close();
+		return accepted;
+	}
+}//ImportBenchmark
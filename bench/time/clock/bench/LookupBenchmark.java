@@ -0,0 +1,80 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.clock.data.Employee;
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PunchEngine;
+
+/**
+ * isEmployee and getEmployee against a large registry, one in ten lookups for an ID that is not registered.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+	private static final int EMPLOYEES = 100000;	//Employees in the registry
+	private static final int KEYS = 1 << 20;		//IDs looked up in turn, a power of two
+
+	private File data;
+	private PunchEngine engine;
+	private String[] keys;
+
+	/**
+	 * Each thread's place in the IDs.
+	 */
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		System.setProperty(EngineSnapshot.PROPERTY, "off");
+		data = BenchData.newDirectory("lookups");
+		BenchData.writeCalendar(data, EMPLOYEES, 0);
+		engine = BenchData.engine(data, "punch");
+		keys = new String[KEYS];
+		Random random = new Random(42);
+		for(int i = 0; i < KEYS; i++) {
+			keys[i] = "e" + random.nextInt(EMPLOYEES + EMPLOYEES / 10);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		engine.close();
+		BenchData.delete(data);
+	}
+
+	@Benchmark
+	public boolean isEmployee(Cursor cursor) {
+		return engine.isEmployee(keys[cursor.next++ & (KEYS - 1)]);
+	}
+
+	@Benchmark
+	public Employee getEmployee(Cursor cursor) {
+		return engine.getEmployee(keys[cursor.next++ & (KEYS - 1)]);
+	}
+}//LookupBenchmark
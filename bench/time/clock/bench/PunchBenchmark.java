@@ -0,0 +1,135 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import time.clock.data.ActivityType;
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PresenceEvent;
+import time.clock.data.PresenceFeed;
+import time.clock.data.PunchEngine;
+import time.clock.data.PunchResult;
+
+/**
+ * Punches made from many terminals at once, each waiting for its punch to be durable, optionally with live
+ * boards subscribed to the presence feed. The boards' delivery latency is printed when the trial ends.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+@Threads(PunchBenchmark.TERMINALS)
+@State(Scope.Benchmark)
+public class PunchBenchmark {
+
+	static final int TERMINALS = 64;				//Terminals punching at once
+	private static final int EMPLOYEES = 10000;		//Employees, each punched by one terminal
+
+	@Param({"interval:10"})
+	public String policy;
+
+	@Param({"0", "1000"})
+	public int boards;
+
+	private File data;
+	private PunchEngine engine;
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong latencyMillis = new AtomicLong();
+	private final AtomicLong maxLatencyMillis = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * A terminal serving its own employees, clocking each in and out in turn.
+	 */
+
+	@State(Scope.Thread)
+	public static class Terminal {
+		String[] employees;
+		boolean[] onShift;
+		int next;
+
+		@Setup(Level.Trial)
+		public void assign(ThreadParams thread) {
+			int terminals = thread.getThreadCount();
+			employees = new String[(EMPLOYEES - thread.getThreadIndex() + terminals - 1) / terminals];
+			onShift = new boolean[employees.length];
+			for(int i = 0; i < employees.length; i++) {
+				employees[i] = "e" + (thread.getThreadIndex() + i * terminals);
+			}
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		System.setProperty(EngineSnapshot.PROPERTY, "off");
+		data = BenchData.newDirectory("punches");
+		BenchData.writeCalendar(data, EMPLOYEES, 0);
+		engine = BenchData.engine(data, policy);
+		for(int board = 0; board < boards; board++) {
+			engine.getPresence().subscribe(new PresenceFeed.Subscriber() {
+				@Override
+				public void onSubscribe(PresenceFeed.Subscription subscription) {
+					subscription.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(PresenceEvent event) {
+					long latency = System.currentTimeMillis() - event.getMillis();
+					latencyMillis.addAndGet(latency);
+					maxLatencyMillis.accumulateAndGet(latency, Math::max);
+					delivered.incrementAndGet();
+				}
+
+				@Override
+				public void onError(Throwable failure) {
+					dropped.incrementAndGet();
+				}
+
+				@Override
+				public void onComplete() {
+				}
+			});
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		if(boards > 0) {
+			System.out.println("presence delivery to " + boards + " boards: " + delivered.get() + " events, average "
+					+ latencyMillis.get() / Math.max(1, delivered.get()) + " ms, max " + maxLatencyMillis.get() + " ms, "
+					+ dropped.get() + " boards dropped for falling behind");
+		}
+		engine.close();
+		BenchData.delete(data);
+	}
+
+	@Benchmark
+	public PunchResult punch(Terminal terminal) {
+		int i = terminal.next;
+		terminal.next = (i + 1) % terminal.employees.length;
+		PunchResult result = engine.punch(terminal.employees[i], terminal.onShift[i] ? ActivityType.CLOCK_OUT : ActivityType.CLOCK_IN);
+		if(result.isRecorded()) {
+			terminal.onShift[i] = !terminal.onShift[i];
+		}
+		return result;
+	}
+}//PunchBenchmark
@@ -0,0 +1,101 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.clock.data.EngineSnapshot;
+import time.clock.data.Hours;
+import time.clock.data.PayRules;
+import time.clock.data.PunchEngine;
+import time.clock.data.TimeFormats;
+
+/**
+ * Recomputing every timesheet under new pay rules on one thread and on the common fork-join pool. The trial
+ * checks both give the same totals before anything is timed.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+@State(Scope.Benchmark)
+public class RecomputeBenchmark {
+
+	@Param({"1000000"})
+	public long lines;
+
+	private File data;
+	private PunchEngine engine;
+	private PayRules rules;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		System.setProperty(EngineSnapshot.PROPERTY, "off");
+		data = BenchData.newDirectory("recompute");
+		BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, lines);
+		engine = BenchData.engine(data, "punch");
+		rules = PayRules.parse("round:15,unpaid-breaks");
+		engine.recomputeHours(rules, null);
+		List<String> sequential = periodTotals();
+		engine.recomputeHours(rules, ForkJoinPool.commonPool());
+		if(!sequential.equals(periodTotals())) {
+			throw new IllegalStateException("Parallel and sequential recompute totals differ.");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		engine.close();
+		BenchData.delete(data);
+	}
+
+	@Benchmark
+	public PunchEngine sequential() {
+		engine.recomputeHours(rules, null);
+		return engine;
+	}
+
+	@Benchmark
+	public PunchEngine forkJoin() {
+		engine.recomputeHours(rules, ForkJoinPool.commonPool());
+		return engine;
+	}
+
+	/**
+	 * Every employee's totals for every pay period from the first punch to today.
+	 */
+
+	private List<String> periodTotals() {
+		List<String> totals = new ArrayList<String>();
+		LocalDate today = LocalDate.now(TimeFormats.ZONE);
+		LocalDate first = engine.getAllActivities().get(0).getDateTime().toLocalDate();
+		for(LocalDate day = first; !day.isAfter(today); day = day.plusDays(engine.getPayPeriod().getLengthDays())) {
+			for(Map.Entry<String, Hours> entry: engine.getPayPeriodSummary(day).entrySet()) {
+				Hours hours = entry.getValue();
+				totals.add(entry.getKey() + "," + hours.getShiftMinutes() + "," + hours.getBreakMinutes() + "," + hours.getLunchMinutes()
+						+ "," + hours.getPaidMinutes());
+			}
+		}
+		return totals;
+	}
+}//RecomputeBenchmark
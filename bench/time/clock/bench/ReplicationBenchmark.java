@@ -0,0 +1,81 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PunchEngine;
+import time.clock.data.ReplicationFollower;
+import time.clock.data.ReplicationLeader;
+
+/**
+ * A follower with an empty data directory catching up with a leader's whole journal over a local socket.
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class ReplicationBenchmark {
+
+	private File data;
+	private File follower;
+	private PunchEngine leader;
+	private ReplicationLeader replication;
+	private long records;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		System.setProperty(EngineSnapshot.PROPERTY, "off");
+		data = BenchData.newDirectory("replication");
+		File leaderData = new File(data, "leader");
+		BenchData.writeCalendar(leaderData, BenchData.CALENDAR_EMPLOYEES, ImportBenchmark.PUNCHES);
+		leader = BenchData.engine(leaderData, "punch");
+		replication = new ReplicationLeader(leader, 0);
+		replication.start();
+		records = leader.getJournalPosition().getTotalRecords();
+		follower = new File(data, "follower");
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyFollower() throws Exception {
+		BenchData.delete(follower);
+		follower.mkdirs();
+		new File(follower, "employees.txt").createNewFile();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		replication.stop();
+		leader.close();
+		BenchData.delete(data);
+	}
+
+	@Benchmark
+	public long catchUp() throws Exception {
+		PunchEngine engine = BenchData.engine(follower, "interval:10");
+		ReplicationFollower following = new ReplicationFollower(engine, "localhost:" + replication.getPort());
+		following.start();
+		while(engine.getJournalPosition().getTotalRecords() < records) {
+			Thread.sleep(1);
+		}
+		following.promote();
+		engine.close();
+		return records;
+	}
+}//ReplicationBenchmark
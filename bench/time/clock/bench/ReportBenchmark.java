@@ -0,0 +1,85 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PunchEngine;
+import time.clock.data.TimeClock;
+
+/**
+ * The console's admin reports with their output thrown away: the single employee report rendered again and
+ * from the report cache, and the all activity report.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+	@Param({"1000000"})
+	public long lines;
+
+	private File data;
+	private PunchEngine engine;
+	private TimeClock console;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		System.setProperty(EngineSnapshot.PROPERTY, "off");
+		data = BenchData.newDirectory("reports");
+		BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, lines);
+		engine = BenchData.engine(data, "punch");
+		console = new TimeClock(engine);
+		//Load the history before timing, as the first report would
+		engine.getAllActivities().size();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		engine.close();
+		BenchData.delete(data);
+	}
+
+	@Benchmark
+	public int employeeReportUncached() throws Exception {
+		return BenchData.quietly(() -> {
+			engine.getReportCache().clear();
+			console.displayEmployeeData("e1");
+			return 1;
+		});
+	}
+
+	@Benchmark
+	public int employeeReportCached() throws Exception {
+		return BenchData.quietly(() -> {
+			console.displayEmployeeData("e1");
+			return 1;
+		});
+	}
+
+	@Benchmark
+	public int allReport() throws Exception {
+		return BenchData.quietly(() -> {
+			console.displayAllData();
+			return 1;
+		});
+	}
+}//ReportBenchmark
@@ -0,0 +1,195 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import time.clock.api.PunchServer;
+import time.clock.api.ShardRouter;
+import time.clock.data.ActivityType;
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PunchEngine;
+import time.clock.data.ShardRing;
+import time.clock.data.ShardSplit;
+
+/**
+ * Placing employees on the shard ring, and punches over HTTP straight to one shard and through a router to
+ * shards in the same process, to show what the extra hop costs.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class ShardBenchmark {
+
+	static final int TERMINALS = 64;				//Terminals punching at once
+	private static final int SHARDS = 3;			//Shards behind the router
+	private static final int EMPLOYEES = 10000;		//Employees split between the shards
+	private static final int KEYS = 1 << 16;		//IDs placed on the ring in turn, a power of two
+
+	/**
+	 * The ring and the IDs placed on it.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Ring {
+		ShardRing ring = new ShardRing(SHARDS);
+		String[] keys = new String[KEYS];
+
+		@Setup(Level.Trial)
+		public void keys() {
+			for(int i = 0; i < KEYS; i++) {
+				keys[i] = "e" + i % EMPLOYEES;
+			}
+		}
+	}
+
+	/**
+	 * Each thread's place in the ring's IDs.
+	 */
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	/**
+	 * Shards serving a split of the employees, and a router in front of them.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Cluster {
+		File data;
+		PunchEngine[] engines = new PunchEngine[SHARDS];
+		PunchServer[] servers = new PunchServer[SHARDS];
+		ShardRouter router;
+		List<String> shardEmployees = new ArrayList<String>();		//Employees on shard 0
+		List<String> everyone = new ArrayList<String>();
+
+		@Setup(Level.Trial)
+		public void start() throws Exception {
+			System.setProperty(EngineSnapshot.PROPERTY, "off");
+			data = BenchData.newDirectory("shards");
+			BenchData.writeCalendar(data, EMPLOYEES, 0);
+			ShardRing ring = new ShardRing(SHARDS);
+			BenchData.quietly(() -> ShardSplit.split(data, ring));
+			List<String> addresses = new ArrayList<String>();
+			for(int shard = 0; shard < SHARDS; shard++) {
+				engines[shard] = BenchData.engine(new File(data, "shard-" + shard), "interval:10");
+				servers[shard] = new PunchServer(engines[shard], 0);
+				servers[shard].start();
+				addresses.add("localhost:" + servers[shard].getPort());
+			}
+			router = new ShardRouter(addresses, 0);
+			router.start();
+			for(int i = 0; i < EMPLOYEES; i++) {
+				if(ring.shardOf("e" + i) == 0) {
+					shardEmployees.add("e" + i);
+				}
+				everyone.add("e" + i);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void stop() {
+			router.stop();
+			for(int shard = 0; shard < SHARDS; shard++) {
+				servers[shard].stop();
+				engines[shard].close();
+			}
+			BenchData.delete(data);
+		}
+	}
+
+	/**
+	 * A terminal punching its own share of the employees in and out in turn.
+	 */
+
+	@State(Scope.Thread)
+	public static class Terminal {
+		int index;
+		int terminals;
+		int next;
+		boolean[] onShift = new boolean[EMPLOYEES];
+
+		@Setup(Level.Trial)
+		public void assign(ThreadParams thread) {
+			index = thread.getThreadIndex();
+			terminals = thread.getThreadCount();
+		}
+
+		String nextEmployee(List<String> employees) {
+			int i = index + next * terminals;
+			if(i >= employees.size()) {
+				next = 0;
+				i = index;
+			}
+			next++;
+			return employees.get(i);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Threads(1)
+	public int shardOf(Ring ring, Cursor cursor) {
+		return ring.ring.shardOf(ring.keys[cursor.next++ & (KEYS - 1)]);
+	}
+
+	@Benchmark
+	@Threads(TERMINALS)
+	public int httpPunchOneShard(Cluster cluster, Terminal terminal) throws Exception {
+		return punch(cluster.servers[0].getPort(), terminal, terminal.nextEmployee(cluster.shardEmployees));
+	}
+
+	@Benchmark
+	@Threads(TERMINALS)
+	public int httpPunchRouter(Cluster cluster, Terminal terminal) throws Exception {
+		return punch(cluster.router.getPort(), terminal, terminal.nextEmployee(cluster.everyone));
+	}
+
+	/**
+	 * Punch an employee in or out over HTTP.
+	 * @return the HTTP status
+	 */
+
+	private static int punch(int port, Terminal terminal, String employeeID) throws Exception {
+		int employee = Integer.parseInt(employeeID.substring(1));
+		ActivityType action = terminal.onShift[employee] ? ActivityType.CLOCK_OUT : ActivityType.CLOCK_IN;
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/punch?employee=" + employeeID
+				+ "&action=" + action.getName()).openConnection();
+		connection.setRequestMethod("POST");
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		while(in.read() >= 0) {
+			//Read to the end so the connection is used again
+		}
+		in.close();
+		if(status == 200) {
+			terminal.onShift[employee] = !terminal.onShift[employee];
+		}
+		return status;
+	}
+}//ShardBenchmark
@@ -0,0 +1,143 @@
+package time.clock.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.clock.data.EngineSnapshot;
+import time.clock.data.PunchEngine;
+
+/**
+ * Engine startup on a synthetic calendar: converting calendar.txt, restarting from the journal and from a
+ * snapshot, and loading the full history for reports. Each startup is timed on its own.
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+public class StartupBenchmark {
+
+	/**
+	 * A calendar.txt with no journal yet, converted again by every startup.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Calendar {
+		@Param({"10000", "1000000"})
+		public long lines;
+
+		File data;
+
+		@Setup(Level.Trial)
+		public void write() throws Exception {
+			System.setProperty(EngineSnapshot.PROPERTY, "off");
+			data = BenchData.newDirectory("startup");
+			BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, lines);
+		}
+
+		@Setup(Level.Invocation)
+		public void deleteJournal() {
+			BenchData.deleteJournal(data);
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() {
+			BenchData.delete(data);
+		}
+	}
+
+	/**
+	 * A calendar already converted into the journal, with snapshots off.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Journal {
+		@Param({"10000", "1000000"})
+		public long lines;
+
+		File data;
+
+		@Setup(Level.Trial)
+		public void write() throws Exception {
+			System.setProperty(EngineSnapshot.PROPERTY, "off");
+			data = BenchData.newDirectory("startup");
+			BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, lines);
+			BenchData.engine(data, "punch").close();
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() {
+			BenchData.delete(data);
+		}
+	}
+
+	/**
+	 * A calendar converted into the journal with a snapshot of the engine written on close.
+	 */
+
+	@State(Scope.Benchmark)
+	public static class Snapshot {
+		@Param({"10000", "1000000"})
+		public long lines;
+
+		File data;
+
+		@Setup(Level.Trial)
+		public void write() throws Exception {
+			System.setProperty(EngineSnapshot.PROPERTY, "15");
+			data = BenchData.newDirectory("startup");
+			BenchData.writeCalendar(data, BenchData.CALENDAR_EMPLOYEES, lines);
+			BenchData.engine(data, "punch").close();
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() {
+			BenchData.delete(data);
+		}
+	}
+
+	@Benchmark
+	public long convertCalendar(Calendar calendar) throws Exception {
+		return start(calendar.data);
+	}
+
+	@Benchmark
+	public long fromJournal(Journal journal) throws Exception {
+		return start(journal.data);
+	}
+
+	@Benchmark
+	public long fromSnapshot(Snapshot snapshot) throws Exception {
+		return start(snapshot.data);
+	}
+
+	@Benchmark
+	public int loadHistory(Journal journal) throws Exception {
+		PunchEngine engine = BenchData.engine(journal.data, "punch");
+		int size = engine.getAllActivities().size();
+		engine.close();
+		return size;
+	}
+
+	private static long start(File data) throws Exception {
+		PunchEngine engine = BenchData.engine(data, "punch");
+		long records = engine.getJournalPosition().getTotalRecords();
+		engine.close();
+		return records;
+	}
+}//StartupBenchmark
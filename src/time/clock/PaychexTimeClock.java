@@ -1,18 +1,151 @@
 package time.clock;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import time.clock.api.PunchServer;
+import time.clock.api.ShardRouter;
+import time.clock.data.DurabilityPolicy;
+import time.clock.data.PayRules;
+import time.clock.data.PunchImport;
+import time.clock.data.PunchEngine;
+import time.clock.data.ReplicationFollower;
+import time.clock.data.ReplicationLeader;
+import time.clock.data.ShardRing;
+import time.clock.data.ShardSplit;
 import time.clock.data.TimeClock;
+import time.clock.data.TimeFormats;
 
 public class PaychexTimeClock {
 
 	/**
 	 * Paychex Time Clock application main program.
-	 * 
-	 * @param args program args not used.
+	 *
+	 * @param args no args for the console application, "--http &lt;port&gt; [data directory]" to serve the HTTP punch API,
+	 * "--follow &lt;leader host:port&gt; &lt;port&gt; [data directory]" to serve the HTTP API as a standby of another time clock,
+	 * "--recompute &lt;pay rules&gt; [data directory]" to work out every timesheet again under new pay rules,
+	 * "--archive &lt;MM/yyyy&gt; [data directory]" to archive the journal months before a month,
+	 * "--import &lt;file&gt; [data directory]" to import punches from a calendar.txt format file or a kiosk's journal segment,
+	 * "--split &lt;shards&gt; [data directory]" to split the employees and punches into a shard-N directory for each shard,
+	 * or "--router &lt;port&gt; &lt;shard host:port,...&gt;" to serve the HTTP API in front of shards listed in shard order.
+	 * @throws IOException if the HTTP port cannot be bound or a file cannot be read or written
 	 */
-	
-	public static void main(String[] args) {
+
+	public static void main(String[] args) throws IOException {
+		if(args.length >= 2 && args[0].equals("--http")) {
+			//Serve the HTTP API until the process is stopped
+			File dataDirectory = new File(args.length >= 3 ? args[2] : "src");
+			serve(new PunchEngine(dataDirectory, DurabilityPolicy.fromSystemProperty()), Integer.parseInt(args[1]), null);
+			return;
+		}
+
+		if(args.length >= 3 && args[0].equals("--follow")) {
+			//Serve the HTTP API read only, applying the leader's punches until promoted with POST /promote
+			File dataDirectory = new File(args.length >= 4 ? args[3] : "src");
+			serve(new PunchEngine(dataDirectory, DurabilityPolicy.fromSystemProperty()), Integer.parseInt(args[2]), args[1]);
+			return;
+		}
+
+		if(args.length >= 2 && args[0].equals("--recompute")) {
+			//Work out every timesheet in parallel under the given rules and show the current pay period
+			PayRules rules = PayRules.parse(args[1]);
+			File dataDirectory = new File(args.length >= 3 ? args[2] : "src");
+			PunchEngine engine = new PunchEngine(dataDirectory, DurabilityPolicy.fromSystemProperty());
+			long start = System.nanoTime();
+			engine.recomputeHours(rules, ForkJoinPool.commonPool());
+			System.out.println("Recomputed timesheets with " + rules + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+			new TimeClock(engine).displayPayPeriodSummary(LocalDate.now(TimeFormats.ZONE));
+			engine.close();
+			return;
+		}
+
+		if(args.length >= 2 && args[0].equals("--archive")) {
+			//Compact and archive the journal months before the given month
+			YearMonth before = YearMonth.parse(args[1], DateTimeFormatter.ofPattern("MM/yyyy"));
+			File dataDirectory = new File(args.length >= 3 ? args[2] : "src");
+			PunchEngine engine = new PunchEngine(dataDirectory, DurabilityPolicy.fromSystemProperty());
+			System.out.println("Archived " + engine.archive(before) + " journal months.");
+			engine.close();
+			return;
+		}
+
+		if(args.length >= 2 && args[0].equals("--import")) {
+			//Check and record punches made elsewhere. A .dat journal segment comes with the calendar.ids it was written with.
+			File importFile = new File(args[1]);
+			File dataDirectory = new File(args.length >= 3 ? args[2] : "src");
+			PunchEngine engine = new PunchEngine(dataDirectory, DurabilityPolicy.fromSystemProperty());
+			PunchImport punches = engine.newImport();
+			if(importFile.getName().endsWith(".dat")) {
+				punches.readJournal(importFile, new File(importFile.getAbsoluteFile().getParentFile(), "calendar.ids"));
+			} else {
+				punches.readCalendar(importFile);
+			}
+			System.out.println(engine.importPunches(punches));
+			engine.close();
+			return;
+		}
+
+		if(args.length >= 2 && args[0].equals("--split")) {
+			//Write each shard's employees and punches, for each shard to be served with --http from its own directory
+			File dataDirectory = new File(args.length >= 3 ? args[2] : "src");
+			System.out.print(ShardSplit.split(dataDirectory, new ShardRing(Integer.parseInt(args[1]))));
+			return;
+		}
+
+		if(args.length >= 3 && args[0].equals("--router")) {
+			//Route the HTTP API to the shards until the process is stopped
+			final ShardRouter router = new ShardRouter(Arrays.asList(args[2].split(",")), Integer.parseInt(args[1]));
+			Runtime.getRuntime().addShutdownHook(new Thread(router::stop));
+			router.start();
+			System.out.println("Paychex Time Clock router listening on port " + router.getPort() + " for "
+					+ router.getRing().getShards() + " shards");
+			return;
+		}
+
 		//Create an instance of the TimeClock system and start the login CMI
 		TimeClock system = new TimeClock();
 		system.login();
 	}
+
+	/**
+	 * Serve the HTTP API on an engine until the process is stopped. With -Dtimeclock.replication=&lt;port&gt;
+	 * the journal is also streamed to followers, which a follower does too, so standbys can be chained.
+	 * @param engine	The engine
+	 * @param port		HTTP port
+	 * @param leader	host:port of the leader to follow, or null to take punches
+	 * @throws IOException if a port cannot be bound
+	 */
+
+	private static void serve(final PunchEngine engine, int port, String leader) throws IOException {
+		final PunchServer server = new PunchServer(engine, port);
+		final ReplicationFollower follower = leader == null ? null : new ReplicationFollower(engine, leader);
+		int replicationPort = ReplicationLeader.portFromSystemProperty();
+		final ReplicationLeader replication = replicationPort < 0 ? null : new ReplicationLeader(engine, replicationPort);
+		server.setReplication(replication, follower);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop();
+			if(follower != null) {
+				follower.promote();
+			}
+			if(replication != null) {
+				replication.stop();
+			}
+			engine.close();
+		}));
+		if(follower != null) {
+			follower.start();
+			System.out.println("Following " + leader);
+		}
+		if(replication != null) {
+			replication.start();
+			System.out.println("Replicating the punch journal on port " + replication.getPort());
+		}
+		server.start();
+		System.out.println("Paychex Time Clock API listening on port " + server.getPort());
+	}
 }//PaychexTimeClock
@@ -0,0 +1,161 @@
+package time.clock.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import time.clock.data.Employee;
+import time.clock.data.PresenceEvent;
+import time.clock.data.PresenceFeed;
+import time.clock.data.PunchEngine;
+
+/**
+ * Streams the {@link PresenceFeed} to live boards as server-sent events. A board is first sent the counts
+ * and everyone on shift, then a presence event for every change:
+ *
+ * <pre>
+ * event: counts
+ * data: onShift,onBreak,onLunch
+ *
+ * event: presence
+ * data: ID,onShift,onBreak,onLunch
+ * </pre>
+ *
+ * The request thread is given back once the board is subscribed, and events are written from the feed's
+ * delivery threads. A board that falls too far behind is disconnected, and the browser reconnects and
+ * starts again from the current state.
+ */
+
+class PresenceStream implements HttpHandler {
+
+	private static final int REQUEST_EVENTS = 64;			//Events asked for at a time
+	private static final long KEEPALIVE_SECONDS = 15;		//Comment sent to idle boards so proxies keep them open
+
+	private PunchEngine engine;							//Engine whose feed is streamed
+	private Set<Board> boards;							//Open streams
+	private ScheduledExecutorService keepalive;			//Writes the keepalive comments
+
+	PresenceStream(PunchEngine engine) {
+		this.engine = engine;
+		boards = ConcurrentHashMap.newKeySet();
+		keepalive = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "presence-keepalive");
+			thread.setDaemon(true);
+			return thread;
+		});
+		keepalive.scheduleWithFixedDelay(() -> {
+			for(Board board: boards) {
+				board.write(": keepalive\n\n");
+			}
+		}, KEEPALIVE_SECONDS, KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		if(!exchange.getRequestMethod().equals("GET")) {
+			PunchServer.send(exchange, 405, "Use GET.");
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+		Board board = new Board(exchange);
+		boards.add(board);
+
+		//Subscribe before reading the current state, so no change is missed. A change seen twice is harmless.
+		PresenceFeed feed = engine.getPresence();
+		feed.subscribe(board);
+		StringBuilder start = new StringBuilder();
+		start.append("event: counts\ndata: ").append(feed.getOnShift()).append(',').append(feed.getOnBreak()).append(',')
+			.append(feed.getOnLunch()).append("\n\n");
+		for(Employee employee: engine.getPresentEmployees()) {
+			start.append("event: presence\ndata: ").append(employee.getUniqueID()).append(',').append(employee.isOnShift()).append(',')
+				.append(employee.isOnBreak()).append(',').append(employee.isOnLunch()).append("\n\n");
+		}
+		if(board.write(start.toString())) {
+			board.subscription.request(REQUEST_EVENTS);
+		}
+	}
+
+	/**
+	 * Disconnect every board and stop the keepalive.
+	 */
+
+	void stop() {
+		keepalive.shutdownNow();
+		for(Board board: boards) {
+			board.close();
+		}
+	}
+
+	/**
+	 * One board's stream. Writes are synchronized, as events and keepalives come from different threads.
+	 */
+
+	private class Board implements PresenceFeed.Subscriber {
+		private HttpExchange exchange;					//The open request
+		private OutputStream out;						//The event stream
+		private PresenceFeed.Subscription subscription;	//The board's subscription
+		private int delivered;							//Events written since more were asked for
+
+		private Board(HttpExchange exchange) {
+			this.exchange = exchange;
+			out = exchange.getResponseBody();
+		}
+
+		@Override
+		public void onSubscribe(PresenceFeed.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(PresenceEvent event) {
+			if(write("event: presence\ndata: " + event + "\n\n") && ++delivered == REQUEST_EVENTS) {
+				delivered = 0;
+				subscription.request(REQUEST_EVENTS);
+			}
+		}
+
+		@Override
+		public void onError(Throwable failure) {
+			close();
+		}
+
+		@Override
+		public void onComplete() {
+			close();
+		}
+
+		/**
+		 * Write and flush some of the stream, disconnecting the board if it has gone away.
+		 * @return true if written
+		 */
+
+		private synchronized boolean write(String text) {
+			try {
+				out.write(text.getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				return true;
+			} catch (IOException e) {
+				//The board went away
+				subscription.cancel();
+				close();
+				return false;
+			}
+		}
+
+		private void close() {
+			if(boards.remove(this)) {
+				exchange.close();
+			}
+		}
+	}//Board
+}//PresenceStream
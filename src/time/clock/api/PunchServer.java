@@ -0,0 +1,462 @@
+package time.clock.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import time.clock.data.Activity;
+import time.clock.data.ActivityType;
+import time.clock.data.Employee;
+import time.clock.data.Hours;
+import time.clock.data.PunchEngine;
+import time.clock.data.PunchImport;
+import time.clock.data.PunchResult;
+import time.clock.data.ReplicationFollower;
+import time.clock.data.ReplicationLeader;
+import time.clock.data.ReportCursor;
+import time.clock.data.ReportQuery;
+import time.clock.data.ReportWriter;
+import time.clock.data.TimeFormats;
+
+/**
+ * Embedded HTTP API for the time clock. Punches go through the same {@link PunchEngine} rules as the
+ * console menu. Every request is handled on its own thread, so a slow client never holds up another.
+ *
+ * <pre>
+ * POST /punch?employee=ID&amp;action=clock-in    clock-in, clock-out, break-start, break-end, lunch-start, lunch-end
+ * GET  /employees/ID                          ID,role,onShift,onBreak,onLunch
+ * GET  /reports/employee?employee=ID          one employee's shift activity
+ * GET  /reports/all                           all shift activity
+ * GET  /reports/hours?date=MM/dd/yyyy         worked hours per employee for the pay period holding the date
+ * POST /import                                punches in the calendar.txt format, e.g. queued by an offline kiosk,
+ *                                             answered with accepted=, duplicates=, rejected=, unknown=, malformed=
+ *                                             and elapsedMillis= lines
+ * GET  /metrics                               latencies, counters and memory use in the Prometheus text format
+ * GET  /replication                           leader or follower status and replication lag
+ * GET  /presence                              live board of who is on shift, break or lunch, as server-sent events
+ * POST /promote                               stop following the leader and take punches
+ * </pre>
+ *
+ * Activity reports also take from and to (MM/dd/yyyy), action, page and size parameters, and the all
+ * activity report takes order=time for rows in time order, by employee ID within a minute, rather than
+ * the order recorded. The hours report also takes employee, and defaults to the current pay period. A
+ * follower of another time clock answers punches and imports with 503 until it is promoted.
+ *
+ * Reports, imports and promoting are for admins only, as in the console, and the admin making the request
+ * gives their ID in the X-Employee-ID header. The server listens on the loopback address unless
+ * -Dtimeclock.http.address gives another, e.g. 0.0.0.0 for every interface.
+ */
+
+public class PunchServer {
+
+	private static final int REPORT_CHUNK = 1000;	//Report rows read and written at a time
+
+	public static final String ADDRESS_PROPERTY = "timeclock.http.address";
+	public static final String EMPLOYEE_HEADER = "X-Employee-ID";	//Header naming the admin making an admin request
+
+	static final String PAGING_ERROR = "page must be 0 or more and size 1 or more.";
+
+	private PunchEngine engine;			//Shared engine
+	private HttpServer server;			//The HTTP server
+	private ExecutorService executor;	//Runs each request on its own thread
+	private PresenceStream presence;	//Streams who is on shift, break or lunch to live boards
+	private volatile ReplicationLeader leader;		//Streams the journal to followers, null if not leading
+	private volatile ReplicationFollower follower;	//Follows another time clock, null if not following
+
+	/**
+	 * Set up the server on a port. The server is not started until {@link #start()}.
+	 * @param engine	The shared engine
+	 * @param port		Port to listen on, 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+
+	public PunchServer(PunchEngine engine, int port) throws IOException {
+		this.engine = engine;
+		server = createServer(port);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/punch", new PunchHandler());
+		server.createContext("/employees/", new EmployeeHandler());
+		server.createContext("/reports/", new ReportHandler());
+		server.createContext("/import", new ImportHandler());
+		presence = new PresenceStream(engine);
+		server.createContext("/metrics", exchange -> send(exchange, 200, engine.getMetrics().toText() + engine.getPresence().toText()
+				+ replicationText()));
+		server.createContext("/replication", exchange -> send(exchange, 200, replicationStatus()));
+		server.createContext("/promote", new PromoteHandler());
+		server.createContext("/presence", presence);
+	}
+
+	/**
+	 * Report on and promote the engine's replication.
+	 * @param leader	Streams the journal to followers, or null
+	 * @param follower	Follows another time clock, or null
+	 */
+
+	public void setReplication(ReplicationLeader leader, ReplicationFollower follower) {
+		this.leader = leader;
+		this.follower = follower;
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop accepting requests and give running ones a second to finish.
+	 */
+
+	public void stop() {
+		presence.stop();
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Handles punches. Rejected punches answer 409 with the same reason the console shows.
+	 */
+
+	private class PunchHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				send(exchange, 405, "Use POST.");
+				return;
+			}
+			if(isFollowing()) {
+				send(exchange, 503, "Following another time clock, punches go to the leader.");
+				return;
+			}
+			Map<String, String> query = parseQuery(exchange);
+			String employeeID = query.get("employee");
+			String actionName = query.get("action");
+			if(employeeID == null || actionName == null) {
+				send(exchange, 400, "employee and action are required.");
+				return;
+			}
+
+			ActivityType action;
+			try {
+				action = ActivityType.fromName(actionName);
+			} catch (IllegalArgumentException e) {
+				send(exchange, 400, e.getMessage());
+				return;
+			}
+
+			PunchResult result = engine.punch(employeeID, action);
+			if(result.isRecorded()) {
+				send(exchange, 200, action.getDescription() + " Current time: " + TimeFormats.format(result.getActivity().getDateTime()));
+			} else if(result.getStatus() == PunchResult.Status.NOT_AN_EMPLOYEE) {
+				send(exchange, 404, employeeID + " " + result.getStatus().getMessage());
+			} else if(result.getStatus() == PunchResult.Status.NOT_SAVED) {
+				send(exchange, 503, result.getStatus().getMessage());
+			} else {
+				send(exchange, 409, result.getStatus().getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Handles bulk uploads of punches. The body is streamed into the import, then the punches are checked
+	 * and recorded together.
+	 */
+
+	private class ImportHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				send(exchange, 405, "Use POST.");
+				return;
+			}
+			if(!checkAdmin(exchange)) {
+				return;
+			}
+			if(isFollowing()) {
+				send(exchange, 503, "Following another time clock, imports go to the leader.");
+				return;
+			}
+			PunchImport punches = engine.newImport();
+			punches.readCalendar(Channels.newChannel(exchange.getRequestBody()), StandardCharsets.UTF_8, "upload");
+			send(exchange, 200, engine.importPunches(punches).toFields());
+		}
+	}
+
+	/**
+	 * Promotes a follower so it takes punches, e.g. once its leader is gone. Whatever the follower had
+	 * applied by then is what it carries on from.
+	 */
+
+	private class PromoteHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				send(exchange, 405, "Use POST.");
+				return;
+			}
+			if(!checkAdmin(exchange)) {
+				return;
+			}
+			ReplicationFollower following = follower;
+			if(following == null || !following.isFollowing()) {
+				send(exchange, 409, "Not following another time clock.");
+				return;
+			}
+			following.promote();
+			send(exchange, 200, "Promoted. " + engine.getJournalPosition().getTotalRecords() + " punches in the journal.");
+		}
+	}
+
+	/**
+	 * Handles employee state lookups.
+	 */
+
+	private class EmployeeHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			String employeeID = exchange.getRequestURI().getPath().substring("/employees/".length());
+			Employee employee = engine.getEmployee(employeeID);
+			if(employee == null) {
+				send(exchange, 404, employeeID + " is not an employee.");
+				return;
+			}
+			send(exchange, 200, employee.getUniqueID() + "," + employee.getRole() + "," + employee.isOnShift()
+					+ "," + employee.isOnBreak() + "," + employee.isOnLunch());
+		}
+	}
+
+	/**
+	 * Handles the same reports as the admin reports menu. Rows are streamed in chunks as they are read,
+	 * filtered by the optional from, to (MM/dd/yyyy) and action parameters and paged by page and size.
+	 */
+
+	private class ReportHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if(!checkAdmin(exchange)) {
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				report(exchange);
+			} finally {
+				engine.getMetrics().getReportHistogram().recordSince(start);
+			}
+		}
+
+		private void report(HttpExchange exchange) throws IOException {
+			String report = exchange.getRequestURI().getPath().substring("/reports/".length());
+			Map<String, String> parameters = parseQuery(exchange);
+			if(report.equals("hours")) {
+				sendHours(exchange, parameters);
+				return;
+			}
+			String employeeID = null;
+			if(report.equals("employee")) {
+				employeeID = parameters.get("employee");
+				if(employeeID == null) {
+					send(exchange, 400, "employee is required.");
+					return;
+				}
+				if(!engine.isEmployee(employeeID)) {
+					send(exchange, 404, employeeID + " is not an employee.");
+					return;
+				}
+			} else if(!report.equals("all")) {
+				send(exchange, 404, "Unknown report: " + report);
+				return;
+			}
+
+			ReportQuery query;
+			int page;
+			int size;
+			try {
+				LocalDate from = parameters.containsKey("from") ? LocalDate.parse(parameters.get("from"), TimeFormats.DATE) : null;
+				LocalDate to = parameters.containsKey("to") ? LocalDate.parse(parameters.get("to"), TimeFormats.DATE) : null;
+				ActivityType type = parameters.containsKey("action") ? ActivityType.fromName(parameters.get("action")) : null;
+				query = new ReportQuery(employeeID, from, to, type);
+				page = parameters.containsKey("page") ? Integer.parseInt(parameters.get("page")) : 0;
+				size = parameters.containsKey("size") ? Integer.parseInt(parameters.get("size")) : Integer.MAX_VALUE;
+			} catch (DateTimeParseException | IllegalArgumentException e) {
+				send(exchange, 400, e.getMessage());
+				return;
+			}
+			String order = parameters.get("order");
+			if(order != null && !order.equals("time")) {
+				send(exchange, 400, "Unknown order: " + order);
+				return;
+			}
+			if(page < 0 || size <= 0) {
+				//Checked before the status is sent, so a bad page is a 400 and not an empty or broken 200
+				send(exchange, 400, PAGING_ERROR);
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream body = exchange.getResponseBody();
+			ReportWriter writer = new ReportWriter(body);
+			if(employeeID != null) {
+				//Single employee reports are served from the engine's report cache
+				writer.writeRendered(engine.getEmployeeReport(query), (long) page * size, size);
+			} else {
+				ReportCursor cursor = engine.query(query, order != null);
+				cursor.skip((long) page * size);
+				int written = 0;
+				while(written < size && cursor.hasNext()) {
+					List<Activity> rows = cursor.nextPage(Math.min(REPORT_CHUNK, size - written));
+					writer.writeAllPage(rows);
+					written += rows.size();
+				}
+			}
+			body.close();
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Send the worked hours report as employee,paidMinutes,breakMinutes,lunchMinutes lines.
+	 */
+
+	private void sendHours(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+		LocalDate day;
+		try {
+			day = parameters.containsKey("date") ? LocalDate.parse(parameters.get("date"), TimeFormats.DATE) : LocalDate.now(TimeFormats.ZONE);
+		} catch (DateTimeParseException e) {
+			send(exchange, 400, e.getMessage());
+			return;
+		}
+		Map<String, Hours> summary;
+		String employeeID = parameters.get("employee");
+		if(employeeID != null) {
+			if(!engine.isEmployee(employeeID)) {
+				send(exchange, 404, employeeID + " is not an employee.");
+				return;
+			}
+			summary = Collections.singletonMap(employeeID, engine.getPeriodHours(employeeID, day));
+		} else {
+			summary = engine.getPayPeriodSummary(day);
+		}
+		StringBuilder body = new StringBuilder();
+		for(Map.Entry<String, Hours> entry: summary.entrySet()) {
+			Hours hours = entry.getValue();
+			body.append(entry.getKey()).append(',').append(hours.getPaidMinutes()).append(',')
+				.append(hours.getBreakMinutes()).append(',').append(hours.getLunchMinutes()).append('\n');
+		}
+		send(exchange, 200, body.toString());
+	}
+
+	/**
+	 * Check an admin request is made by an admin, named by the X-Employee-ID header.
+	 * @return true if it is, otherwise the request has been answered with 401 or 403
+	 */
+
+	private boolean checkAdmin(HttpExchange exchange) throws IOException {
+		String employeeID = exchange.getRequestHeaders().getFirst(EMPLOYEE_HEADER);
+		if(employeeID == null) {
+			send(exchange, 401, EMPLOYEE_HEADER + " naming an admin is required.");
+			return false;
+		}
+		Employee employee = engine.getEmployee(employeeID);
+		if(employee == null || !employee.getRole().equals("admin")) {
+			send(exchange, 403, employeeID + " is not an admin.");
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isFollowing() {
+		ReplicationFollower following = follower;
+		return following != null && following.isFollowing();
+	}
+
+	private String replicationStatus() {
+		ReplicationLeader leading = leader;
+		ReplicationFollower following = follower;
+		if(leading == null && following == null) {
+			return "Replication is off.\n";
+		}
+		return (following == null ? "" : following.getStatus()) + (leading == null ? "" : leading.getStatus());
+	}
+
+	private String replicationText() {
+		ReplicationLeader leading = leader;
+		ReplicationFollower following = follower;
+		return (following == null ? "" : following.toText()) + (leading == null ? "" : leading.toText());
+	}
+
+	/**
+	 * Create an HTTP server that sends small answers at once. Without TCP_NODELAY an answer written as
+	 * headers then body waits on the client's delayed ACK, some 40 ms a request. The server listens on the
+	 * loopback address unless the timeclock.http.address system property gives another.
+	 */
+
+	static HttpServer createServer(int port) throws IOException {
+		//Read once, when the first server is created
+		if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		String address = System.getProperty(ADDRESS_PROPERTY);
+		return HttpServer.create(address == null ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+				: new InetSocketAddress(address, port), 1024);
+	}
+
+	/**
+	 * Parse the URL query string into a map.
+	 */
+
+	static Map<String, String> parseQuery(HttpExchange exchange) throws UnsupportedEncodingException {
+		Map<String, String> query = new HashMap<String, String>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if(raw == null) {
+			return query;
+		}
+		for(String pair: raw.split("&")) {
+			int equals = pair.indexOf('=');
+			if(equals > 0) {
+				query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Send a plain text response and close the exchange.
+	 */
+
+	static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if(bytes.length > 0) {
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+			out.close();
+		}
+		exchange.close();
+	}
+}//PunchServer
@@ -0,0 +1,553 @@
+package time.clock.api;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import time.clock.data.ImportResult;
+import time.clock.data.ShardRing;
+
+/**
+ * Serves the {@link PunchServer} API in front of shards, each a time clock serving its own employees'
+ * data split off with --split. Every employee belongs to one shard, chosen by a {@link ShardRing}, so
+ * requests about one employee are forwarded to their shard as they are:
+ *
+ * <pre>
+ * POST /punch?employee=ID&amp;action=clock-in
+ * GET  /employees/ID
+ * GET  /reports/employee?employee=ID
+ * GET  /reports/hours?employee=ID
+ * </pre>
+ *
+ * Requests about everyone go to every shard at once and the answers are put together:
+ *
+ * <pre>
+ * GET  /reports/all           every shard's rows merged in time order, then paged, as order=time on one time clock
+ * GET  /reports/hours         every shard's worked hours
+ * POST /import                each shard sent its own employees' punches, and the results added up
+ * GET  /metrics               requests and unavailable answers per shard in the Prometheus text format
+ * </pre>
+ *
+ * A shard that cannot be reached answers 502. Live boards and replication connect to each shard itself.
+ * The X-Employee-ID header of admin requests is passed on, and each shard checks the admin.
+ */
+
+public class ShardRouter {
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final int READ_TIMEOUT_MILLIS = 60000;
+	private static final int REPORT_BUFFER = 1 << 16;	//Report characters read and written at a time
+
+	private ShardRing ring;				//Gives each employee's shard
+	private String[] shards;			//Each shard's host:port
+	private HttpServer server;			//The HTTP server
+	private ExecutorService executor;	//Runs each request, and each shard's part of a request about everyone
+	private LongAdder[] requests;		//Requests sent to each shard
+	private LongAdder[] unavailable;	//Requests each shard could not be reached for
+
+	/**
+	 * Set up the router on a port. The router is not started until {@link #start()}.
+	 * @param shards	Each shard's host:port, in shard number order
+	 * @param port		Port to listen on, 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+
+	public ShardRouter(List<String> shards, int port) throws IOException {
+		this.shards = shards.toArray(new String[shards.size()]);
+		ring = new ShardRing(this.shards.length);
+		requests = new LongAdder[this.shards.length];
+		unavailable = new LongAdder[this.shards.length];
+		for(int shard = 0; shard < this.shards.length; shard++) {
+			if(this.shards[shard].lastIndexOf(':') < 0) {
+				throw new IllegalArgumentException("Expected host:port, got " + this.shards[shard]);
+			}
+			requests[shard] = new LongAdder();
+			unavailable[shard] = new LongAdder();
+		}
+		server = PunchServer.createServer(port);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/punch", new PunchHandler());
+		server.createContext("/employees/", exchange -> forward(exchange,
+				ring.shardOf(exchange.getRequestURI().getPath().substring("/employees/".length()))));
+		server.createContext("/reports/", new ReportHandler());
+		server.createContext("/import", new ImportHandler());
+		server.createContext("/metrics", exchange -> PunchServer.send(exchange, 200, metricsText()));
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop accepting requests and give running ones a second to finish.
+	 */
+
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the port the router is listening on
+	 */
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public ShardRing getRing() {
+		return ring;
+	}
+
+	/**
+	 * Forwards punches to the employee's shard.
+	 */
+
+	private class PunchHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			String employeeID = PunchServer.parseQuery(exchange).get("employee");
+			if(employeeID == null) {
+				PunchServer.send(exchange, 400, "employee and action are required.");
+				return;
+			}
+			forward(exchange, ring.shardOf(employeeID));
+		}
+	}
+
+	/**
+	 * Forwards one employee's reports to their shard, and puts together reports about everyone.
+	 */
+
+	private class ReportHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if(!namesAdmin(exchange)) {
+				return;
+			}
+			String report = exchange.getRequestURI().getPath().substring("/reports/".length());
+			Map<String, String> parameters = PunchServer.parseQuery(exchange);
+			String employeeID = parameters.get("employee");
+			if(report.equals("employee")) {
+				if(employeeID == null) {
+					PunchServer.send(exchange, 400, "employee is required.");
+					return;
+				}
+				forward(exchange, ring.shardOf(employeeID));
+			} else if(report.equals("hours") && employeeID != null) {
+				forward(exchange, ring.shardOf(employeeID));
+			} else if(report.equals("hours")) {
+				sendHours(exchange);
+			} else if(report.equals("all")) {
+				sendAll(exchange, parameters);
+			} else {
+				PunchServer.send(exchange, 404, "Unknown report: " + report);
+			}
+		}
+	}
+
+	/**
+	 * Splits bulk uploads of punches by shard and imports each shard's part at once. The results are added
+	 * up, so the answer reads as if one time clock had imported them all.
+	 */
+
+	private class ImportHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				PunchServer.send(exchange, 405, "Use POST.");
+				return;
+			}
+			if(!namesAdmin(exchange)) {
+				return;
+			}
+			//Each line goes to the shard of the employee ID before its first comma
+			ByteArrayOutputStream[] parts = new ByteArrayOutputStream[shards.length];
+			Writer[] writers = new Writer[shards.length];
+			for(int shard = 0; shard < shards.length; shard++) {
+				parts[shard] = new ByteArrayOutputStream();
+				writers[shard] = new BufferedWriter(new OutputStreamWriter(parts[shard], StandardCharsets.UTF_8), REPORT_BUFFER);
+			}
+			BufferedReader lines = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), REPORT_BUFFER);
+			String line;
+			while((line = lines.readLine()) != null) {
+				int comma = line.indexOf(',');
+				//A line without a comma is sent to the first shard, which counts it as unreadable
+				Writer out = writers[comma < 0 ? 0 : ring.shardOf(line.substring(0, comma))];
+				out.write(line);
+				out.write('\n');
+			}
+			for(Writer writer: writers) {
+				writer.close();
+			}
+
+			List<Future<Answer>> answers = new ArrayList<Future<Answer>>();
+			for(int shard = 0; shard < shards.length; shard++) {
+				final int to = shard;
+				final byte[] part = parts[shard].toByteArray();
+				parts[shard] = null;
+				answers.add(part.length == 0 ? null : executor.submit(() -> fetch(exchange, to, "POST", "/import", part)));
+			}
+			ImportResult total = new ImportResult(0, 0, 0, 0, 0, 0);
+			StringBuilder failed = new StringBuilder();
+			for(int shard = 0; shard < shards.length; shard++) {
+				if(answers.get(shard) == null) {
+					continue;
+				}
+				Answer answer = await(answers.get(shard));
+				if(answer != null && answer.status == 403) {
+					//Not an admin, which every shard answers the same
+					PunchServer.send(exchange, answer.status, answer.text());
+					return;
+				}
+				ImportResult result = null;
+				if(answer != null && answer.status == 200) {
+					try {
+						result = ImportResult.parseFields(answer.text());
+					} catch (IllegalArgumentException e) {
+						//An older shard answering with text, its punches are in but cannot be counted
+						failed.append("Shard " + shard + ": " + e.getMessage()).append(' ');
+						continue;
+					}
+				}
+				if(result != null) {
+					total = total.add(result);
+				} else {
+					failed.append(answer == null ? unavailableMessage(shard) : "Shard " + shard + ": " + answer.text()).append(' ');
+				}
+			}
+			if(failed.length() > 0) {
+				//The other shards' punches stand, and sending the whole upload again only adds the missing ones
+				PunchServer.send(exchange, 502, failed + "The other shards:\n" + total.toFields());
+			} else {
+				PunchServer.send(exchange, 200, total.toFields());
+			}
+		}
+	}
+
+	/**
+	 * Send every shard's worked hours. Each employee is on one shard, so their lines are put one after the other.
+	 */
+
+	private void sendHours(HttpExchange exchange) throws IOException {
+		final String path = pathAndQuery(exchange);
+		List<Future<Answer>> answers = new ArrayList<Future<Answer>>();
+		for(int shard = 0; shard < shards.length; shard++) {
+			final int to = shard;
+			answers.add(executor.submit(() -> fetch(exchange, to, "GET", path, null)));
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for(int shard = 0; shard < shards.length; shard++) {
+			Answer answer = await(answers.get(shard));
+			if(answer == null) {
+				PunchServer.send(exchange, 502, unavailableMessage(shard));
+				return;
+			} else if(answer.status != 200) {
+				PunchServer.send(exchange, answer.status, answer.text());
+				return;
+			}
+			body.write(answer.body, 0, answer.body.length);
+		}
+		PunchServer.send(exchange, 200, new String(body.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Stream every shard's activity rows merged in time order. Each shard is asked for its rows in time order,
+	 * those at the same minute by employee ID, so the merge only holds one row from each shard and the rows
+	 * and pages come out the same as order=time on a single time clock holding every shard's punches. Each
+	 * shard is asked for the rows up to the end of the page, and the merge skips to the page.
+	 */
+
+	private void sendAll(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+		long page;
+		long size;
+		try {
+			page = parameters.containsKey("page") ? Integer.parseInt(parameters.get("page")) : 0;
+			size = parameters.containsKey("size") ? Integer.parseInt(parameters.get("size")) : Integer.MAX_VALUE;
+		} catch (NumberFormatException e) {
+			PunchServer.send(exchange, 400, e.getMessage());
+			return;
+		}
+		if(page < 0 || size <= 0) {
+			PunchServer.send(exchange, 400, PunchServer.PAGING_ERROR);
+			return;
+		}
+		long skip = page * size;
+		//Every shard sorts its rows by time, whatever order they were recorded in, for the merge to be in time order
+		StringBuilder path = new StringBuilder("/reports/all?order=time&");
+		for(Map.Entry<String, String> parameter: parameters.entrySet()) {
+			if(!parameter.getKey().equals("page") && !parameter.getKey().equals("size") && !parameter.getKey().equals("order")) {
+				path.append(URLEncoder.encode(parameter.getKey(), "UTF-8")).append('=')
+					.append(URLEncoder.encode(parameter.getValue(), "UTF-8")).append('&');
+			}
+		}
+		path.append("size=").append(Math.min(Integer.MAX_VALUE, skip + size));
+
+		HttpURLConnection[] connections = new HttpURLConnection[shards.length];
+		BufferedReader[] readers = new BufferedReader[shards.length];
+		try {
+			for(int shard = 0; shard < shards.length; shard++) {
+				try {
+					connections[shard] = open(exchange, shard, "GET", path.toString());
+					int status = connections[shard].getResponseCode();
+					if(status != 200) {
+						//e.g. a date the shard could not read, which every shard would answer the same
+						PunchServer.send(exchange, status, new String(readAll(connections[shard].getErrorStream()), StandardCharsets.UTF_8));
+						return;
+					}
+					readers[shard] = new BufferedReader(new InputStreamReader(connections[shard].getInputStream(), StandardCharsets.UTF_8),
+							REPORT_BUFFER);
+				} catch (IOException e) {
+					unavailable[shard].increment();
+					PunchServer.send(exchange, 502, unavailableMessage(shard));
+					return;
+				}
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), REPORT_BUFFER);
+			String[] rows = new String[shards.length];
+			long[] keys = new long[shards.length];
+			try {
+				for(int shard = 0; shard < shards.length; shard++) {
+					rows[shard] = readers[shard].readLine();
+					keys[shard] = rows[shard] == null ? Long.MAX_VALUE : sortKey(rows[shard]);
+				}
+				long written = 0;
+				while(written < size) {
+					//A few shards, so the earliest row is found by looking at each. Rows at the same minute go by
+					//employee ID as on each shard, and an employee's rows all come from one shard.
+					int next = -1;
+					for(int shard = 0; shard < shards.length; shard++) {
+						if(rows[shard] != null && (next < 0 || keys[shard] < keys[next]
+								|| keys[shard] == keys[next] && employee(rows[shard]).compareTo(employee(rows[next])) < 0)) {
+							next = shard;
+						}
+					}
+					if(next < 0) {
+						break;
+					}
+					if(skip > 0) {
+						skip--;
+					} else {
+						out.write(rows[next]);
+						out.write('\n');
+						written++;
+					}
+					rows[next] = readers[next].readLine();
+					keys[next] = rows[next] == null ? Long.MAX_VALUE : sortKey(rows[next]);
+				}
+			} catch (IOException e) {
+				//A shard went away part way through, so the report ends early
+			}
+			out.close();
+			exchange.close();
+		} finally {
+			for(int shard = 0; shard < shards.length; shard++) {
+				if(readers[shard] != null) {
+					readers[shard].close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Order key of an all activity report row, from its date and time, e.g. Date: 03/08/2022 07:50 AM, Employee: ...
+	 */
+
+	static long sortKey(String row) {
+		if(row.length() < 25 || !row.startsWith("Date: ")) {
+			return Long.MAX_VALUE;
+		}
+		int month = digits(row, 6, 2);
+		int day = digits(row, 9, 2);
+		int year = digits(row, 12, 4);
+		int hour = digits(row, 17, 2) % 12 + (row.charAt(23) == 'P' ? 12 : 0);
+		int minute = digits(row, 20, 2);
+		return (((year * 13L + month) * 32 + day) * 24 + hour) * 60 + minute;
+	}
+
+	/**
+	 * Employee ID of an all activity report row, e.g. Date: 03/08/2022 07:50 AM, Employee: abcd, Activity: ...
+	 */
+
+	static String employee(String row) {
+		int start = row.indexOf(", Employee: ");
+		int end = row.indexOf(", Activity: ", start + 1);
+		return start < 0 || end < 0 ? row : row.substring(start + ", Employee: ".length(), end);
+	}
+
+	private static int digits(String text, int start, int length) {
+		int number = 0;
+		for(int i = start; i < start + length; i++) {
+			number = number * 10 + text.charAt(i) - '0';
+		}
+		return number;
+	}
+
+	/**
+	 * Check an admin request names its admin. Whether they are one is for the shards to say.
+	 * @return true if it does, otherwise the request has been answered with 401
+	 */
+
+	private static boolean namesAdmin(HttpExchange exchange) throws IOException {
+		if(exchange.getRequestHeaders().getFirst(PunchServer.EMPLOYEE_HEADER) == null) {
+			PunchServer.send(exchange, 401, PunchServer.EMPLOYEE_HEADER + " naming an admin is required.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Send a request on to a shard as it is and send back the shard's answer.
+	 */
+
+	private void forward(HttpExchange exchange, int shard) throws IOException {
+		byte[] body = exchange.getRequestMethod().equals("POST") ? readAll(exchange.getRequestBody()) : null;
+		Answer answer = fetch(exchange, shard, exchange.getRequestMethod(), pathAndQuery(exchange), body);
+		if(answer == null) {
+			PunchServer.send(exchange, 502, unavailableMessage(shard));
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(answer.status, answer.body.length == 0 ? -1 : answer.body.length);
+		if(answer.body.length > 0) {
+			OutputStream out = exchange.getResponseBody();
+			out.write(answer.body);
+			out.close();
+		}
+		exchange.close();
+	}
+
+	/**
+	 * Make a request of a shard for a request made of the router and read its whole answer.
+	 * @return the answer, or null if the shard could not be reached
+	 */
+
+	private Answer fetch(HttpExchange from, int shard, String method, String path, byte[] body) {
+		try {
+			HttpURLConnection connection = open(from, shard, method, path);
+			if(body != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(body.length);
+				OutputStream out = connection.getOutputStream();
+				out.write(body);
+				out.close();
+			}
+			int status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			//Reading the answer to the end lets the connection be used again
+			return new Answer(status, readAll(in));
+		} catch (IOException e) {
+			unavailable[shard].increment();
+			return null;
+		}
+	}
+
+	private HttpURLConnection open(HttpExchange from, int shard, String method, String path) throws IOException {
+		requests[shard].increment();
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://" + shards[shard] + path).openConnection();
+		connection.setRequestMethod(method);
+		//Admin requests are checked by the shards, which every admin is copied to by the split
+		String admin = from.getRequestHeaders().getFirst(PunchServer.EMPLOYEE_HEADER);
+		if(admin != null) {
+			connection.setRequestProperty(PunchServer.EMPLOYEE_HEADER, admin);
+		}
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		return connection;
+	}
+
+	private static Answer await(Future<Answer> answer) throws IOException {
+		try {
+			return answer.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for the shards", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static String pathAndQuery(HttpExchange exchange) {
+		String query = exchange.getRequestURI().getRawQuery();
+		return exchange.getRequestURI().getRawPath() + (query == null ? "" : "?" + query);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if(in == null) {
+			return bytes.toByteArray();
+		}
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+		in.close();
+		return bytes.toByteArray();
+	}
+
+	private String unavailableMessage(int shard) {
+		return "Shard " + shard + " (" + shards[shard] + ") is unavailable.";
+	}
+
+	private String metricsText() {
+		StringBuilder text = new StringBuilder();
+		text.append("# HELP timeclock_router_requests_total Requests sent to each shard.\n");
+		text.append("# TYPE timeclock_router_requests_total counter\n");
+		for(int shard = 0; shard < shards.length; shard++) {
+			text.append("timeclock_router_requests_total{shard=\"").append(shard).append("\",address=\"").append(shards[shard])
+				.append("\"} ").append(requests[shard].sum()).append('\n');
+		}
+		text.append("# HELP timeclock_router_unavailable_total Requests each shard could not be reached for.\n");
+		text.append("# TYPE timeclock_router_unavailable_total counter\n");
+		for(int shard = 0; shard < shards.length; shard++) {
+			text.append("timeclock_router_unavailable_total{shard=\"").append(shard).append("\",address=\"").append(shards[shard])
+				.append("\"} ").append(unavailable[shard].sum()).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * A shard's answer, read in full.
+	 */
+
+	private static class Answer {
+		private int status;		//HTTP status
+		private byte[] body;	//Response body
+
+		private Answer(int status, byte[] body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		private String text() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+	}//Answer
+}//ShardRouter
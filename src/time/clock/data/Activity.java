@@ -1,16 +1,16 @@
 package time.clock.data;
 
-import java.util.Date;
+import java.time.LocalDateTime;
 
 public class Activity {
-	private String employeeID;	//Employee ID associated with the activity
-	private String activity;	//The type of activity
-	private Date date;			//The date in which the activity was performed.
-	
-	public Activity(String employeeID, String activity, Date date) {
+	private String employeeID;		//Employee ID associated with the activity
+	private ActivityType activity;	//The type of activity
+	private LocalDateTime dateTime;	//The date in which the activity was performed.
+
+	public Activity(String employeeID, ActivityType activity, LocalDateTime dateTime) {
 		this.employeeID = employeeID;
 		this.activity = activity;
-		this.date = date;
+		this.dateTime = dateTime;
 	}
 
 	public String getEmployeeID() {
@@ -21,19 +21,19 @@ public class Activity {
 		this.employeeID = employeeID;
 	}
 
-	public String getActivity() {
+	public ActivityType getActivity() {
 		return activity;
 	}
 
-	public void setActivity(String activity) {
+	public void setActivity(ActivityType activity) {
 		this.activity = activity;
 	}
 
-	public Date getDate() {
-		return date;
+	public LocalDateTime getDateTime() {
+		return dateTime;
 	}
 
-	public void setDate(Date date) {
-		this.date = date;
+	public void setDateTime(LocalDateTime dateTime) {
+		this.dateTime = dateTime;
 	}
 }//Activity
@@ -0,0 +1,332 @@
+package time.clock.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar activity store. Each activity is a row spread over parallel primitive arrays of
+ * employee ordinal, activity code and epoch minute, so no object is kept per activity.
+ * Each employee also has a time ordered list of their row numbers. Rows can be added while other
+ * threads read, under a read/write lock.
+ */
+
+public class ActivityStore {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private EmployeeIds ids;			//Dictionary of employee ordinals
+	private int[] employees;			//Employee ordinal of each row
+	private byte[] types;				//Activity code of each row
+	private int[] minutes;				//Epoch minute of each row
+	private int size;					//Number of rows
+	private int[][] rowsByEmployee;		//Row numbers of each employee ordinal, ordered by time
+	private int[] rowCounts;			//Number of rows of each employee ordinal
+	private boolean sorted;				//If every row was added in time order
+	private ReadWriteLock lock;			//Guards the arrays, which are replaced as they grow
+
+	/**
+	 * Set up an empty activity store.
+	 * @param ids Dictionary used to turn employee IDs into ordinals
+	 */
+
+	public ActivityStore(EmployeeIds ids) {
+		this.ids = ids;
+		employees = new int[INITIAL_CAPACITY];
+		types = new byte[INITIAL_CAPACITY];
+		minutes = new int[INITIAL_CAPACITY];
+		size = 0;
+		sorted = true;
+		rowsByEmployee = new int[Math.max(16, ids.size())][];
+		rowCounts = new int[rowsByEmployee.length];
+		lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Add an activity to the store.
+	 * @param activity The activity to add
+	 */
+
+	public void add(Activity activity) {
+		add(ids.intern(activity.getEmployeeID()), activity.getActivity().getCode(), TimeFormats.toEpochMinute(activity.getDateTime()));
+	}
+
+	/**
+	 * Add an activity row to the store and to its employee's time ordered rows.
+	 * @param employee		The employee ordinal
+	 * @param type			The activity code
+	 * @param epochMinute	When the activity was made
+	 */
+
+	public void add(int employee, byte type, int epochMinute) {
+		lock.writeLock().lock();
+		try {
+			addRow(employee, type, epochMinute);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void addRow(int employee, byte type, int epochMinute) {
+		if(size == employees.length) {
+			int capacity = size * 2;
+			employees = Arrays.copyOf(employees, capacity);
+			types = Arrays.copyOf(types, capacity);
+			minutes = Arrays.copyOf(minutes, capacity);
+		}
+		if(size > 0 && epochMinute < minutes[size - 1]) {
+			sorted = false;
+		}
+		int row = size++;
+		employees[row] = employee;
+		types[row] = type;
+		minutes[row] = epochMinute;
+
+		if(employee >= rowsByEmployee.length) {
+			int capacity = Math.max(employee + 1, rowsByEmployee.length * 2);
+			rowsByEmployee = Arrays.copyOf(rowsByEmployee, capacity);
+			rowCounts = Arrays.copyOf(rowCounts, capacity);
+		}
+		int[] rows = rowsByEmployee[employee];
+		int count = rowCounts[employee];
+		if(rows == null) {
+			rows = new int[4];
+			rowsByEmployee[employee] = rows;
+		} else if(count == rows.length) {
+			rows = Arrays.copyOf(rows, count * 2);
+			rowsByEmployee[employee] = rows;
+		}
+
+		//Activities almost always arrive in order, only search for a slot when one is out of order.
+		int slot = count;
+		while(slot > 0 && epochMinute < minutes[rows[slot - 1]]) {
+			rows[slot] = rows[slot - 1];
+			slot--;
+		}
+		rows[slot] = row;
+		rowCounts[employee] = count + 1;
+	}
+
+	/**
+	 * Add the rows of another store made in a range of minutes, in the order they were added there.
+	 * @param source		The store to copy from
+	 * @param fromMinute	First minute to include
+	 * @param toMinute		First minute past the range
+	 */
+
+	public void addRange(ActivityStore source, int fromMinute, int toMinute) {
+		source.lock.readLock().lock();
+		try {
+			lock.writeLock().lock();
+			try {
+				for(int row = 0; row < source.size; row++) {
+					if(source.minutes[row] >= fromMinute && source.minutes[row] < toMinute) {
+						addRow(source.employees[row], source.types[row], source.minutes[row]);
+					}
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			source.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the ordinal of each employee with rows in the store, in ordinal order. Takes time in proportion
+	 * to the rows, not to every employee ever seen.
+	 */
+
+	public int[] getEmployeeOrdinals() {
+		int[] ordinals;
+		lock.readLock().lock();
+		try {
+			ordinals = Arrays.copyOf(employees, size);
+		} finally {
+			lock.readLock().unlock();
+		}
+		Arrays.sort(ordinals);
+		int count = 0;
+		for(int i = 0; i < ordinals.length; i++) {
+			if(count == 0 || ordinals[i] != ordinals[count - 1]) {
+				ordinals[count++] = ordinals[i];
+			}
+		}
+		return Arrays.copyOf(ordinals, count);
+	}
+
+	/**
+	 * Get a single employee's row numbers.
+	 * @param employeeID The employee ID
+	 * @return the employee's row numbers ordered by time, empty if there are none
+	 */
+
+	public int[] getRows(String employeeID) {
+		int employee = ids.find(employeeID);
+		lock.readLock().lock();
+		try {
+			if(employee < 0 || employee >= rowsByEmployee.length || rowsByEmployee[employee] == null) {
+				return new int[0];
+			}
+			return Arrays.copyOf(rowsByEmployee[employee], rowCounts[employee]);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if rows were added in time order, so row numbers can be searched by time
+	 */
+
+	public boolean isSorted() {
+		lock.readLock().lock();
+		try {
+			return sorted;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the first row at or after a time. Only meaningful when the store is sorted.
+	 * @param epochMinute The time
+	 * @return the first row at or after the time, or the size if there is none
+	 */
+
+	public int firstRowAtOrAfter(int epochMinute) {
+		lock.readLock().lock();
+		try {
+			int low = 0;
+			int high = size;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(minutes[middle] < epochMinute) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get a single employee's activities.
+	 * @param employeeID The employee ID
+	 * @return the employee's activities ordered by date, empty if there are none
+	 */
+
+	public List<Activity> getActivities(String employeeID) {
+		final int[] rows = getRows(employeeID);
+		return new AbstractList<Activity>() {
+			@Override
+			public Activity get(int index) {
+				return getActivity(rows[index]);
+			}
+
+			@Override
+			public int size() {
+				return rows.length;
+			}
+		};
+	}
+
+	/**
+	 * @return every activity in the order it was recorded, built as each one is read
+	 */
+
+	public List<Activity> getAll() {
+		final int rows = size();
+		return Collections.unmodifiableList(new AbstractList<Activity>() {
+			@Override
+			public Activity get(int index) {
+				return getActivity(index);
+			}
+
+			@Override
+			public int size() {
+				return rows;
+			}
+		});
+	}
+
+	/**
+	 * Build the activity for a row.
+	 * @param row The row number
+	 * @return the activity
+	 */
+
+	public Activity getActivity(int row) {
+		lock.readLock().lock();
+		try {
+			return new Activity(ids.get(employees[row]), ActivityType.fromCode(types[row]), TimeFormats.fromEpochMinute(minutes[row]));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Read the activity code and epoch minute of many rows under one read lock, e.g. an employee's rows from
+	 * {@link #getRows(String)}, for readers that go through every punch, such as a timesheet recompute.
+	 * @param rows		The row numbers
+	 * @param codes		Receives the activity code of each row
+	 * @param minutes	Receives the epoch minute of each row
+	 * @param offset	Index in codes and minutes of the first row's values
+	 */
+
+	public void getPunches(int[] rows, byte[] codes, int[] minutes, int offset) {
+		lock.readLock().lock();
+		try {
+			for(int i = 0; i < rows.length; i++) {
+				codes[offset + i] = types[rows[i]];
+				minutes[offset + i] = this.minutes[rows[i]];
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getEmployee(int row) {
+		lock.readLock().lock();
+		try {
+			return employees[row];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public byte getCode(int row) {
+		lock.readLock().lock();
+		try {
+			return types[row];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getEpochMinute(int row) {
+		lock.readLock().lock();
+		try {
+			return minutes[row];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of activities in the store
+	 */
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}//ActivityStore
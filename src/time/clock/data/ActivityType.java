@@ -0,0 +1,80 @@
+package time.clock.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Types of activity an employee can record. The code is what gets stored in the journal and activity store.
+ */
+
+public enum ActivityType {
+	CLOCK_IN("clock-in", "Shift started."),
+	CLOCK_OUT("clock-out", "Shift ended."),
+	BREAK_START("break-start", "Break started."),
+	BREAK_END("break-end", "Break ended."),
+	LUNCH_START("lunch-start", "Lunch started."),
+	LUNCH_END("lunch-end", "Lunch ended.");
+
+	private static final ActivityType[] BY_CODE = values();
+	private static final Map<String, ActivityType> BY_NAME = new HashMap<String, ActivityType>();
+
+	static {
+		for(ActivityType type: BY_CODE) {
+			BY_NAME.put(type.name, type);
+		}
+	}
+
+	private String name;		//Name used in the calendar file, e.g. clock-in
+	private String description;	//Description used in reports, e.g. Shift started.
+
+	ActivityType(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	/**
+	 * @return the single byte code stored for this type
+	 */
+
+	public byte getCode() {
+		return (byte) ordinal();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Get a type from its stored code.
+	 * @param code The code
+	 * @return the matching type
+	 */
+
+	public static ActivityType fromCode(byte code) {
+		return BY_CODE[code];
+	}
+
+	/**
+	 * Get a type from its calendar file name.
+	 * @param name The name, e.g. clock-in
+	 * @return the matching type
+	 * @throws IllegalArgumentException if the name is not an activity type
+	 */
+
+	public static ActivityType fromName(String name) {
+		ActivityType type = BY_NAME.get(name);
+		if(type == null) {
+			throw new IllegalArgumentException("Unknown activity: " + name);
+		}
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}//ActivityType
@@ -0,0 +1,442 @@
+package time.clock.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Byte level parser for calendar.txt and employees.txt. The input is read through one reused buffer and each
+ * line is decoded in place: activities are matched as bytes, dates are read digit by digit, and each distinct
+ * employee ID is only turned into a String the first time it is seen. Reading punches allocates nothing per line.
+ * Lines that cannot be read are counted and skipped, and the first few are kept with their line numbers.
+ */
+
+public class CsvParser {
+
+	/**
+	 * Receives each employee read from an employees file.
+	 */
+
+	public interface EmployeeHandler {
+		void onEmployee(String employeeID, String role);
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_PROBLEMS = 10;		//Malformed lines kept with their line numbers
+	private static final int BAD_TIME = Integer.MIN_VALUE;
+	private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+	private static final byte[][] ACTIVITY_NAMES = new byte[ActivityType.values().length][];
+
+	static {
+		for(ActivityType type: ActivityType.values()) {
+			ACTIVITY_NAMES[type.getCode()] = type.getName().getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private ReadableByteChannel input;	//Where the lines come from
+	private Charset charset;			//Character set of the employee IDs and roles
+	private byte[] bytes;				//Read buffer, grown only for a line longer than it
+	private ByteBuffer buffer;			//The read buffer as the channel fills it
+	private int position;				//Start of the next line in the buffer
+	private int scanned;				//Bytes of the next line already checked for its end
+	private int limit;					//End of the bytes read into the buffer
+	private boolean ended;				//If the input has no more bytes
+	private int lineStart;				//Start of the current line
+	private int lineEnd;				//End of the current line, before any \r
+	private long lines;					//Lines read
+	private long malformed;				//Lines that could not be read
+	private List<String> problems;		//The first malformed lines, e.g. "line 12: unknown activity"
+	private int day = -1;				//Key of the date the cached minutes are for
+	private int midnight;				//Epoch minute of that date's midnight
+	private boolean regularDay;			//If that date has 24 hours, i.e. no daylight saving change
+
+	/**
+	 * Set up a parser. Nothing is read until a read method is called.
+	 * @param input		The file or upload, positioned where reading starts
+	 * @param charset	Character set of the employee IDs and roles
+	 */
+
+	public CsvParser(ReadableByteChannel input, Charset charset) {
+		this.input = input;
+		this.charset = charset;
+		bytes = new byte[BUFFER_SIZE];
+		buffer = ByteBuffer.wrap(bytes);
+		problems = new ArrayList<String>();
+	}
+
+	/**
+	 * Read punches in the employeeID,activity,MM/dd/yyyy h:mm AM layout of calendar.txt.
+	 * @param ordinals	Gives the ordinal of an employee ID, called once per distinct ID
+	 * @param handler	Handler called for each punch in file order
+	 * @return the number of lines read
+	 * @throws IOException if the input fails
+	 */
+
+	public long readCalendar(ToIntFunction<String> ordinals, PunchJournal.PunchHandler handler) throws IOException {
+		ByteKeys employees = new ByteKeys(ordinals);
+		while(nextLine()) {
+			if(lineStart == lineEnd) {
+				continue;
+			}
+			int firstComma = indexOf(',', lineStart, lineEnd);
+			int secondComma = firstComma < 0 ? -1 : indexOf(',', firstComma + 1, lineEnd);
+			if(secondComma < 0) {
+				malformed("expected employeeID,activity,date");
+				continue;
+			}
+			int code = activityCode(firstComma + 1, secondComma);
+			if(code < 0) {
+				malformed("unknown activity " + new String(bytes, firstComma + 1, secondComma - firstComma - 1, charset));
+				continue;
+			}
+			int epochMinute = epochMinute(secondComma + 1, lineEnd);
+			if(epochMinute == BAD_TIME) {
+				malformed("expected a date like 03/08/2022 7:45 AM");
+				continue;
+			}
+			handler.onPunch(employees.get(lineStart, firstComma), (byte) code, epochMinute);
+		}
+		return lines;
+	}
+
+	/**
+	 * Read employees in the employeeID,role layout of employees.txt. Each distinct role is a single String.
+	 * @param handler Handler called for each employee in file order
+	 * @return the number of lines read
+	 * @throws IOException if the input fails
+	 */
+
+	public long readEmployees(EmployeeHandler handler) throws IOException {
+		final List<String> roles = new ArrayList<String>();
+		ByteKeys roleKeys = new ByteKeys(role -> {
+			roles.add(role);
+			return roles.size() - 1;
+		});
+		while(nextLine()) {
+			if(lineStart == lineEnd) {
+				continue;
+			}
+			int comma = indexOf(',', lineStart, lineEnd);
+			if(comma <= lineStart) {
+				malformed("expected employeeID,role");
+				continue;
+			}
+			int roleEnd = indexOf(',', comma + 1, lineEnd);
+			if(roleEnd < 0) {
+				roleEnd = lineEnd;
+			}
+			String employeeID = new String(bytes, lineStart, comma - lineStart, charset);
+			handler.onEmployee(employeeID, roles.get(roleKeys.get(comma + 1, roleEnd)));
+		}
+		return lines;
+	}
+
+	/**
+	 * Find the next line, reading more of the input when the buffer holds no complete line.
+	 */
+
+	private boolean nextLine() throws IOException {
+		while(true) {
+			byte[] b = bytes;
+			for(int i = scanned; i < limit; i++) {
+				if(b[i] == '\n') {
+					setLine(position, i);
+					position = i + 1;
+					scanned = position;
+					return true;
+				}
+			}
+			scanned = limit;
+			if(ended) {
+				if(position == limit) {
+					return false;
+				}
+				//The last line has no line break
+				setLine(position, limit);
+				position = limit;
+				return true;
+			}
+			fill();
+		}
+	}
+
+	private void setLine(int start, int end) {
+		lines++;
+		lineStart = start;
+		lineEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+	}
+
+	/**
+	 * Move the unread bytes to the front of the buffer and read more after them.
+	 */
+
+	private void fill() throws IOException {
+		if(position > 0) {
+			System.arraycopy(bytes, position, bytes, 0, limit - position);
+			limit -= position;
+			scanned -= position;
+			position = 0;
+		}
+		if(limit == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			buffer = ByteBuffer.wrap(bytes);
+		}
+		buffer.limit(bytes.length);
+		buffer.position(limit);
+		int read = input.read(buffer);
+		if(read < 0) {
+			ended = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private int indexOf(char c, int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(bytes[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the code of the activity named by the bytes, or -1 if none is
+	 */
+
+	private int activityCode(int start, int end) {
+		int length = end - start;
+		for(int code = 0; code < ACTIVITY_NAMES.length; code++) {
+			byte[] name = ACTIVITY_NAMES[code];
+			if(name.length != length) {
+				continue;
+			}
+			int i = 0;
+			while(i < length && bytes[start + i] == name[i]) {
+				i++;
+			}
+			if(i == length) {
+				return code;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Read a date and time like 03/08/2022 7:45 AM or 03/08/2022 07:45 AM, surrounded by any spaces.
+	 * @return the epoch minute in the local zone, or BAD_TIME if the bytes are not a date and time
+	 */
+
+	private int epochMinute(int start, int end) {
+		while(start < end && bytes[start] == ' ') {
+			start++;
+		}
+		while(end > start && bytes[end - 1] == ' ') {
+			end--;
+		}
+		int hourDigits = end - start - 17;
+		if(hourDigits != 1 && hourDigits != 2) {
+			return BAD_TIME;
+		}
+		int month = digits(start, 2);
+		int dayOfMonth = digits(start + 3, 2);
+		int year = digits(start + 6, 4);
+		int hour = digits(start + 11, hourDigits);
+		int at = start + 11 + hourDigits;
+		int minute = digits(at + 1, 2);
+		if(bytes[start + 2] != '/' || bytes[start + 5] != '/' || bytes[start + 10] != ' ' || bytes[at] != ':' || bytes[at + 3] != ' '
+				|| bytes[at + 5] != 'M' || (bytes[at + 4] != 'A' && bytes[at + 4] != 'P')) {
+			return BAD_TIME;
+		}
+		if(month < 1 || month > 12 || dayOfMonth < 1 || year < 0 || hour < 1 || hour > 12 || minute < 0 || minute > 59
+				|| dayOfMonth > (month == 2 && isLeap(year) ? 29 : DAYS_IN_MONTH[month - 1])) {
+			return BAD_TIME;
+		}
+		int hourOfDay = hour % 12 + (bytes[at + 4] == 'P' ? 12 : 0);
+
+		//Exports are in time order, so the date rarely changes from one line to the next
+		int key = (year * 16 + month) * 32 + dayOfMonth;
+		if(key != day) {
+			LocalDate date = LocalDate.of(year, month, dayOfMonth);
+			midnight = TimeFormats.toEpochMinute(date.atStartOfDay());
+			regularDay = TimeFormats.toEpochMinute(date.plusDays(1).atStartOfDay()) - midnight == 24 * 60;
+			day = key;
+		}
+		if(!regularDay) {
+			//Daylight saving changes that day, so the zone works out the minute
+			return TimeFormats.toEpochMinute(LocalDateTime.of(year, month, dayOfMonth, hourOfDay, minute));
+		}
+		return midnight + hourOfDay * 60 + minute;
+	}
+
+	/**
+	 * @return the value of count decimal digits, or -1 if any byte is not a digit
+	 */
+
+	private int digits(int start, int count) {
+		int value = 0;
+		for(int i = start; i < start + count; i++) {
+			int digit = bytes[i] - '0';
+			if(digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static boolean isLeap(int year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private void malformed(String problem) {
+		malformed++;
+		if(problems.size() < MAX_PROBLEMS) {
+			problems.add("line " + lines + ": " + problem);
+		}
+	}
+
+	/**
+	 * @return the number of lines read
+	 */
+
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the number of lines that could not be read
+	 */
+
+	public long getMalformed() {
+		return malformed;
+	}
+
+	/**
+	 * @return the first malformed lines, e.g. "line 12: unknown activity clock-on"
+	 */
+
+	public List<String> getProblems() {
+		return problems;
+	}
+
+	/**
+	 * Print the malformed lines, if there were any.
+	 * @param source Name of what was read, e.g. calendar.txt
+	 */
+
+	public void reportMalformed(String source) {
+		for(String problem: problems) {
+			System.err.println("Skipped " + source + " " + problem);
+		}
+		if(malformed > problems.size()) {
+			System.err.println("Skipped " + (malformed - problems.size()) + " more malformed lines of " + source);
+		}
+	}
+
+	/**
+	 * Open addressing table from byte strings in the buffer to ints. A string not seen before is decoded once
+	 * and its value asked for, after that it is found without allocating.
+	 */
+
+	private class ByteKeys {
+		private ToIntFunction<String> values;	//Gives the value of a new key
+		private int[] slots;					//Entry + 1 of each key at its hash, 0 if empty, kept at most half full
+		private int[] hashes;					//Hash of each entry
+		private int[] starts;					//Start of each entry's key in keyBytes
+		private int[] lengths;					//Length of each entry's key
+		private int[] entryValues;				//Value of each entry
+		private byte[] keyBytes;				//Bytes of every key back to back
+		private int keyBytesUsed;
+		private int entries;
+
+		private ByteKeys(ToIntFunction<String> values) {
+			this.values = values;
+			slots = new int[64];
+			hashes = new int[32];
+			starts = new int[32];
+			lengths = new int[32];
+			entryValues = new int[32];
+			keyBytes = new byte[1024];
+		}
+
+		private int get(int start, int end) {
+			int hash = 0;
+			for(int i = start; i < end; i++) {
+				hash = 31 * hash + bytes[i];
+			}
+			int mask = slots.length - 1;
+			int slot = spread(hash) & mask;
+			int length = end - start;
+			while(slots[slot] != 0) {
+				int entry = slots[slot] - 1;
+				if(hashes[entry] == hash && lengths[entry] == length && matches(entry, start)) {
+					return entryValues[entry];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return add(hash, start, length);
+		}
+
+		private boolean matches(int entry, int start) {
+			int keyStart = starts[entry];
+			for(int i = 0; i < lengths[entry]; i++) {
+				if(keyBytes[keyStart + i] != bytes[start + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int add(int hash, int start, int length) {
+			int value = values.applyAsInt(new String(bytes, start, length, charset));
+			if(entries == hashes.length) {
+				hashes = Arrays.copyOf(hashes, entries * 2);
+				starts = Arrays.copyOf(starts, entries * 2);
+				lengths = Arrays.copyOf(lengths, entries * 2);
+				entryValues = Arrays.copyOf(entryValues, entries * 2);
+			}
+			if(keyBytesUsed + length > keyBytes.length) {
+				keyBytes = Arrays.copyOf(keyBytes, Math.max(keyBytesUsed + length, keyBytes.length * 2));
+			}
+			System.arraycopy(bytes, start, keyBytes, keyBytesUsed, length);
+			hashes[entries] = hash;
+			starts[entries] = keyBytesUsed;
+			lengths[entries] = length;
+			entryValues[entries] = value;
+			keyBytesUsed += length;
+			entries++;
+			if(entries * 2 > slots.length) {
+				slots = new int[slots.length * 2];
+				for(int entry = 0; entry < entries; entry++) {
+					put(entry);
+				}
+			} else {
+				put(entries - 1);
+			}
+			return value;
+		}
+
+		private void put(int entry) {
+			int mask = slots.length - 1;
+			int slot = spread(hashes[entry]) & mask;
+			while(slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry + 1;
+		}
+
+		private int spread(int hash) {
+			hash *= 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+	}//ByteKeys
+}//CsvParser
@@ -0,0 +1,103 @@
+package time.clock.data;
+
+/**
+ * When the journal writer forces written punches to disk.
+ */
+
+public class DurabilityPolicy {
+
+	public enum Mode {
+		EVERY_BATCH,	//Force after every batch, so every punch is durable before it is acknowledged
+		INTERVAL,		//Force at most once every value milliseconds
+		RECORDS			//Force once value records have been written since the last force, or maxDelayMillis after the first
+	}
+
+	public static final String PROPERTY = "timeclock.fsync";
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 100;	//Longest a records policy holds a punch back on a quiet clock
+
+	private Mode mode;				//The durability mode
+	private long value;				//Milliseconds or record count, depending on the mode
+	private long maxDelayMillis;	//Longest the records mode waits for its count before forcing anyway
+
+	public DurabilityPolicy(Mode mode, long value) {
+		this(mode, value, DEFAULT_MAX_DELAY_MILLIS);
+	}
+
+	public DurabilityPolicy(Mode mode, long value, long maxDelayMillis) {
+		if(mode == Mode.INTERVAL && value < 1) {
+			throw new IllegalArgumentException(PROPERTY + " interval must be at least 1 ms, got " + value);
+		}
+		if(mode == Mode.RECORDS && value < 1) {
+			throw new IllegalArgumentException(PROPERTY + " records must be at least 1, got " + value);
+		}
+		if(mode == Mode.RECORDS && maxDelayMillis < 0) {
+			throw new IllegalArgumentException(PROPERTY + " max delay must be 0 ms or more, got " + maxDelayMillis);
+		}
+		this.mode = mode;
+		this.value = value;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Read the policy for this deployment from the timeclock.fsync system property.
+	 * Accepted values are "punch", "interval:&lt;ms&gt;" and "records:&lt;count&gt;[:&lt;max delay ms&gt;]". Defaults to "punch".
+	 * @return the configured policy
+	 */
+
+	public static DurabilityPolicy fromSystemProperty() {
+		return parse(System.getProperty(PROPERTY, "punch"));
+	}
+
+	/**
+	 * Parse a policy setting.
+	 * @param setting "punch", "interval:&lt;ms&gt;" or "records:&lt;count&gt;[:&lt;max delay ms&gt;]"
+	 * @return the matching policy
+	 * @throws IllegalArgumentException if the setting is not one of those, or an interval or count is below 1
+	 */
+
+	public static DurabilityPolicy parse(String setting) {
+		String[] parts = setting.trim().split(":");
+		try {
+			if(parts[0].equals("punch")) {
+				return new DurabilityPolicy(Mode.EVERY_BATCH, 0);
+			} else if(parts[0].equals("interval") && parts.length == 2) {
+				return new DurabilityPolicy(Mode.INTERVAL, Long.parseLong(parts[1]));
+			} else if(parts[0].equals("records") && parts.length == 2) {
+				return new DurabilityPolicy(Mode.RECORDS, Long.parseLong(parts[1]));
+			} else if(parts[0].equals("records") && parts.length == 3) {
+				return new DurabilityPolicy(Mode.RECORDS, Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+			}
+		} catch (NumberFormatException e) {
+			//Fall through to the error below
+		}
+		throw new IllegalArgumentException("Invalid " + PROPERTY + " setting: " + setting);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public long getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the longest the records mode holds written records back waiting for its count, in milliseconds
+	 */
+
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+	@Override
+	public String toString() {
+		switch(mode) {
+		case INTERVAL:
+			return "interval:" + value;
+		case RECORDS:
+			return "records:" + value + (maxDelayMillis == DEFAULT_MAX_DELAY_MILLIS ? "" : ":" + maxDelayMillis);
+		default:
+			return "punch";
+		}
+	}
+}//DurabilityPolicy
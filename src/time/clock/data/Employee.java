@@ -1,30 +1,32 @@
 package time.clock.data;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Employee {
+	public static final int ON_SHIFT = 1;	//State bit for being on shift
+	public static final int ON_BREAK = 2;	//State bit for being on break
+	public static final int ON_LUNCH = 4;	//State bit for being on lunch
+
 	private String uniqueID;	//Employee ID
 	private String role;		//Employee role
-	private boolean onShift;	//If they are on shift
-	private boolean onBreak;	//If they are on break
-	private boolean onLunch;	//If they are on lunch
-	
+	private AtomicInteger state;	//Shift, break and lunch flags as state bits, changed atomically
+
 	/**
 	 * Set up an employee, setting values for shift, break and lunch to false.
 	 * @param uniqueID Employee ID
 	 * @param role	   Assigned role.
 	 */
-	
+
 	public Employee(String uniqueID, String role) {
 		this.uniqueID = uniqueID;
 		this.role = role;
-		onShift = false;
-		onBreak = false;
-		onLunch = false;
+		state = new AtomicInteger(0);
 	}
 
 	public String getUniqueID() {
 		return uniqueID;
 	}
-	
+
 	public void setUniqueID(String uniqueID) {
 		this.uniqueID = uniqueID;
 	}
@@ -38,26 +40,66 @@ public class Employee {
 	}
 
 	public boolean isOnShift() {
-		return onShift;
+		return (state.get() & ON_SHIFT) != 0;
 	}
 
 	public void setOnShift(boolean onShift) {
-		this.onShift = onShift;
+		setFlag(ON_SHIFT, onShift);
 	}
 
 	public boolean isOnBreak() {
-		return onBreak;
+		return (state.get() & ON_BREAK) != 0;
 	}
 
 	public void setOnBreak(boolean onBreak) {
-		this.onBreak = onBreak;
+		setFlag(ON_BREAK, onBreak);
 	}
 
 	public boolean isOnLunch() {
-		return onLunch;
+		return (state.get() & ON_LUNCH) != 0;
 	}
 
 	public void setOnLunch(boolean onLunch) {
-		this.onLunch = onLunch;
+		setFlag(ON_LUNCH, onLunch);
+	}
+
+	/**
+	 * @return the shift, break and lunch state bits
+	 */
+
+	public int getState() {
+		return state.get();
+	}
+
+	public void setState(int state) {
+		this.state.set(state);
+	}
+
+	/**
+	 * Set the state bits, returning the ones they replaced.
+	 * @param state The new state
+	 * @return the state before
+	 */
+
+	public int getAndSetState(int state) {
+		return this.state.getAndSet(state);
+	}
+
+	/**
+	 * Atomically move from one state to another.
+	 * @param expect The state the employee must be in
+	 * @param update The new state
+	 * @return true if the state was changed, false if another thread changed it first
+	 */
+
+	public boolean compareAndSetState(int expect, int update) {
+		return state.compareAndSet(expect, update);
+	}
+
+	private void setFlag(int flag, boolean value) {
+		int current;
+		do {
+			current = state.get();
+		} while(!state.compareAndSet(current, value ? current | flag : current & ~flag));
 	}
 }//Employee
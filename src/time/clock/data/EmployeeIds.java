@@ -0,0 +1,244 @@
+package time.clock.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Dictionary of employee IDs and the dense int ordinals the journal, activity store, registry and worked hours
+ * refer to employees by. IDs are found through an open addressing table of ints and a packed array of the IDs'
+ * characters, so there is no boxed ordinal or map entry per employee, and a lookup touches two arrays rather
+ * than a chain of objects.
+ */
+
+public class EmployeeIds {
+	private static final int INITIAL_SLOTS = 64;	//Slots in an empty table, a power of two
+	private static final int SLOT_INTS = 4;		//Ordinal + 1 (0 if empty), hash code, start and length of the characters
+
+	private File idFile;							//File holding one employee ID per line, line number is the ordinal
+	private volatile String[] idsByOrdinal;			//Employee ID for each ordinal, replaced when it grows
+	private volatile int size;						//Number of interned IDs
+	private volatile AtomicIntegerArray slots;		//SLOT_INTS per slot for each ID at its hash, kept at most half full
+	private volatile char[] characters;				//Characters of every ID back to back, replaced when it grows
+	private int charactersUsed;						//Characters filled in
+
+	/**
+	 * Set up the dictionary, reading any IDs already stored in the file.
+	 * @param idFile File holding the interned employee IDs
+	 */
+
+	public EmployeeIds(File idFile) {
+		this.idFile = idFile;
+		idsByOrdinal = new String[16];
+		size = 0;
+		slots = new AtomicIntegerArray(INITIAL_SLOTS * SLOT_INTS);
+		characters = new char[256];
+		charactersUsed = 0;
+
+		if(idFile.exists()) {
+			try {
+				BufferedReader input = new BufferedReader(new FileReader(idFile));
+				String line;
+				while((line = input.readLine()) != null) {
+					add(line);
+				}
+				input.close();
+			} catch (IOException e) {
+				//File is assumed to be readable, no error handling here
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Get the ordinal for an employee ID, adding it to the dictionary and file if it is new.
+	 * Lookups of known IDs do not lock, new IDs are added one at a time.
+	 * @param employeeID The employee ID
+	 * @return the employee's ordinal
+	 */
+
+	public int intern(String employeeID) {
+		int ordinal = find(employeeID);
+		if(ordinal >= 0) {
+			return ordinal;
+		}
+		return internNew(employeeID);
+	}
+
+	private synchronized int internNew(String employeeID) {
+		//Another thread may have added the ID while this one waited
+		int ordinal = find(employeeID);
+		if(ordinal >= 0) {
+			return ordinal;
+		}
+
+		//Write the new ID before it is used so the journal never refers to an unknown ordinal.
+		try {
+			FileWriter fw = new FileWriter(idFile, true);
+			fw.write(employeeID + "\n");
+			fw.close();
+		} catch (IOException e) {
+			//File is assumed to be here, no error handling here
+			e.printStackTrace();
+		}
+
+		return add(employeeID);
+	}
+
+	/**
+	 * Get the ordinals of many employee IDs, adding the new ones to the dictionary and the file with a single write,
+	 * e.g. when the registry is loaded.
+	 * @param employeeIDs The employee IDs
+	 */
+
+	public synchronized void internAll(Collection<String> employeeIDs) {
+		List<String> added = new ArrayList<String>();
+		StringBuilder lines = new StringBuilder();
+		for(String employeeID: employeeIDs) {
+			if(find(employeeID) < 0) {
+				add(employeeID);
+				added.add(employeeID);
+				lines.append(employeeID).append('\n');
+			}
+		}
+		if(added.isEmpty()) {
+			return;
+		}
+		try {
+			FileWriter fw = new FileWriter(idFile, true);
+			fw.write(lines.toString());
+			fw.close();
+		} catch (IOException e) {
+			//File is assumed to be here, no error handling here
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Add an ID in memory. The ID array, characters and size are filled in before the ordinal's slot publishes it.
+	 */
+
+	private int add(String employeeID) {
+		int ordinal = size;
+		if(ordinal == idsByOrdinal.length) {
+			idsByOrdinal = Arrays.copyOf(idsByOrdinal, ordinal * 2);
+		}
+		idsByOrdinal[ordinal] = employeeID;
+		int start = charactersUsed;
+		int length = employeeID.length();
+		char[] packed = characters;
+		if(start + length > packed.length) {
+			packed = Arrays.copyOf(packed, Math.max(start + length, packed.length * 2));
+		}
+		employeeID.getChars(0, length, packed, start);
+		characters = packed;
+		charactersUsed = start + length;
+
+		AtomicIntegerArray table = slots;
+		if((ordinal + 1) * 2 * SLOT_INTS > table.length()) {
+			//Readers keep using the old table until the new one holds every earlier ID
+			AtomicIntegerArray grown = new AtomicIntegerArray(table.length() * 2);
+			for(int slot = 0; slot < table.length(); slot += SLOT_INTS) {
+				if(table.get(slot) != 0) {
+					put(grown, table.get(slot) - 1, table.get(slot + 1), table.get(slot + 2), table.get(slot + 3));
+				}
+			}
+			slots = grown;
+			table = grown;
+		}
+		size = ordinal + 1;
+		put(table, ordinal, employeeID.hashCode(), start, length);
+		return ordinal;
+	}
+
+	/**
+	 * Put an ID in the first free slot from its hash. The rest of the slot is set before the ordinal publishes it.
+	 */
+
+	private static void put(AtomicIntegerArray table, int ordinal, int hash, int start, int length) {
+		int mask = table.length() / SLOT_INTS - 1;
+		int slot = spread(hash) & mask;
+		while(table.get(slot * SLOT_INTS) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table.set(slot * SLOT_INTS + 1, hash);
+		table.set(slot * SLOT_INTS + 2, start);
+		table.set(slot * SLOT_INTS + 3, length);
+		table.set(slot * SLOT_INTS, ordinal + 1);
+	}
+
+	/**
+	 * Spread the bits of a hash code so IDs that differ only at the end, e.g. emp1 and emp2, land apart.
+	 */
+
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Look up the ordinal of an employee ID without adding it. Does not lock.
+	 * @param employeeID The employee ID
+	 * @return the employee's ordinal, or -1 if the ID has not been interned
+	 */
+
+	public int find(String employeeID) {
+		AtomicIntegerArray table = slots;
+		int hash = employeeID.hashCode();
+		int mask = table.length() / SLOT_INTS - 1;
+		int slot = spread(hash) & mask;
+		while(true) {
+			int entry = table.get(slot * SLOT_INTS);
+			if(entry == 0) {
+				return -1;
+			}
+			//The hash is compared first so probing past other IDs does not touch their characters
+			if(table.get(slot * SLOT_INTS + 1) == hash
+					&& matches(employeeID, table.get(slot * SLOT_INTS + 2), table.get(slot * SLOT_INTS + 3))) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(String employeeID, int start, int length) {
+		if(employeeID.length() != length) {
+			return false;
+		}
+		char[] packed = characters;
+		for(int i = 0; i < length; i++) {
+			if(packed[start + i] != employeeID.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the employee ID for an ordinal.
+	 * @param ordinal The ordinal
+	 * @return the employee ID
+	 */
+
+	public String get(int ordinal) {
+		if(ordinal >= size) {
+			throw new IndexOutOfBoundsException("Unknown employee ordinal: " + ordinal);
+		}
+		return idsByOrdinal[ordinal];
+	}
+
+	/**
+	 * @return the number of interned IDs
+	 */
+
+	public int size() {
+		return size;
+	}
+}//EmployeeIds
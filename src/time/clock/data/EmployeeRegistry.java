@@ -0,0 +1,174 @@
+package time.clock.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registered employees, indexed by the ordinals of their IDs in the engine's {@link EmployeeIds}. Lookups read
+ * the arrays without locking, registering locks the registry.
+ */
+
+public class EmployeeRegistry {
+	private EmployeeIds ids;					//Dictionary of employee IDs and ordinals
+	private volatile AtomicReferenceArray<Employee> byOrdinal;	//Employee for each ID ordinal, null if not registered, replaced when it grows
+	private volatile Employee[] registered;		//Employees in the order they were registered, replaced when it grows
+	private volatile int size;					//Number of registered employees
+	private Map<String, String> roles;			//One copy of each role, shared by the employees that have it
+
+	/**
+	 * Set up an empty registry.
+	 * @param ids The dictionary the employee IDs are interned in
+	 */
+
+	public EmployeeRegistry(EmployeeIds ids) {
+		this.ids = ids;
+		byOrdinal = new AtomicReferenceArray<Employee>(Math.max(16, ids.size()));
+		registered = new Employee[16];
+		size = 0;
+		roles = new HashMap<String, String>();
+	}
+
+	/**
+	 * Register a single employee. Duplicate IDs are rejected and the existing employee is kept,
+	 * even when two threads register the same ID at once.
+	 * @param employee The employee to register
+	 * @return true if the employee was added, false if the ID was already registered
+	 */
+
+	public boolean register(Employee employee) {
+		return add(employee, ids.intern(employee.getUniqueID()));
+	}
+
+	/**
+	 * Bulk load a group of employees, interning the new IDs with one write and sizing the arrays once up front.
+	 * @param employees The employees to register
+	 * @return the number of employees skipped because of a duplicate ID
+	 */
+
+	public synchronized int registerAll(Collection<Employee> employees) {
+		List<String> employeeIDs = new ArrayList<String>(employees.size());
+		for(Employee employee: employees) {
+			employeeIDs.add(employee.getUniqueID());
+		}
+		ids.internAll(employeeIDs);
+		grow(ids.size());
+		if(registered.length < size + employees.size()) {
+			registered = Arrays.copyOf(registered, size + employees.size());
+		}
+
+		int duplicates = 0;
+		for(Employee employee: employees) {
+			if(!add(employee, ids.find(employee.getUniqueID()))) {
+				System.err.println("Duplicate employee ID skipped: " + employee.getUniqueID());
+				duplicates++;
+			}
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Add an employee under its ordinal. The employee is put in the order array before the size publishes it.
+	 */
+
+	private synchronized boolean add(Employee employee, int ordinal) {
+		grow(ordinal + 1);
+		if(byOrdinal.get(ordinal) != null) {
+			return false;
+		}
+		if(size == registered.length) {
+			registered = Arrays.copyOf(registered, size * 2);
+		}
+		//Share the dictionary's copy of the ID and one copy of the role instead of keeping one per loaded line
+		employee.setUniqueID(ids.get(ordinal));
+		String role = roles.putIfAbsent(employee.getRole(), employee.getRole());
+		if(role != null) {
+			employee.setRole(role);
+		}
+		byOrdinal.set(ordinal, employee);
+		registered[size] = employee;
+		size = size + 1;
+		return true;
+	}
+
+	/**
+	 * Make room for ordinals below a length. Readers keep using the old array until the new one holds every employee.
+	 */
+
+	private void grow(int length) {
+		AtomicReferenceArray<Employee> employees = byOrdinal;
+		if(length <= employees.length()) {
+			return;
+		}
+		AtomicReferenceArray<Employee> grown = new AtomicReferenceArray<Employee>(Math.max(length, employees.length() * 2));
+		for(int i = 0; i < employees.length(); i++) {
+			grown.set(i, employees.get(i));
+		}
+		byOrdinal = grown;
+	}
+
+	/**
+	 * Check if an employee ID is registered.
+	 * @param employeeID employee ID
+	 * @return true if registered, false otherwise
+	 */
+
+	public boolean contains(String employeeID) {
+		return get(employeeID) != null;
+	}
+
+	/**
+	 * Get an employee based on the employee ID
+	 * @param employeeID employee ID
+	 * @return the matching Employee object, or null if not registered
+	 */
+
+	public Employee get(String employeeID) {
+		int ordinal = ids.find(employeeID);
+		return ordinal < 0 ? null : get(ordinal);
+	}
+
+	/**
+	 * Get an employee based on the ordinal of the employee ID, without looking the ID up.
+	 * @param ordinal ordinal of the employee ID in the dictionary
+	 * @return the matching Employee object, or null if not registered
+	 */
+
+	public Employee get(int ordinal) {
+		AtomicReferenceArray<Employee> employees = byOrdinal;
+		return ordinal < employees.length() ? employees.get(ordinal) : null;
+	}
+
+	/**
+	 * @return all registered employees, as of the call
+	 */
+
+	public Collection<Employee> getAll() {
+		final int count = size;
+		final Employee[] employees = registered;
+		return new AbstractList<Employee>() {
+			@Override
+			public Employee get(int index) {
+				return employees[index];
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * @return the number of registered employees
+	 */
+
+	public int size() {
+		return size;
+	}
+}//EmployeeRegistry
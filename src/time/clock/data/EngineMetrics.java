@@ -0,0 +1,296 @@
+package time.clock.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Built in metrics of a {@link PunchEngine}: punch, report and journal latencies, punch rate, errors and
+ * memory use. Counters are LongAdders and latencies {@link LatencyHistogram}s, so recording never takes a
+ * lock. Read through JMX or as plain text in the Prometheus format.
+ */
+
+public class EngineMetrics implements EngineMetricsMBean {
+
+	private static final int RATE_SECONDS = 60;	//Punch rate is averaged over the last minute
+
+	private LatencyHistogram punchLatency;		//Time to check, record and make a punch durable
+	private LatencyHistogram reportLatency;		//Time to read and write a report, not counting user input
+	private LatencyHistogram journalWrites;		//Time to write a batch of journal records
+	private LatencyHistogram journalForces;		//Time to force the journal to disk
+	private LongAdder punches;					//Punches recorded
+	private LongAdder rejected;					//Punches rejected by the rules
+	private LongAdder errors;					//Failures, e.g. journal writes
+	private AtomicLongArray slotSecond;			//Second each rate slot counts
+	private AtomicLongArray slotPunches;		//Punches recorded in each rate slot's second
+	private volatile long startupMillis;		//Time taken to load the engine
+	private LongSupplier todayRecords;			//Today's activities in memory
+	private LongSupplier historyRecords;		//Older activities in memory
+	private LongSupplier employeeCount;			//Registered employees
+	private ObjectName registeredName;			//Name registered with JMX, null if not registered
+
+	/**
+	 * @param todayRecords		Reads the number of today's activities in memory
+	 * @param historyRecords	Reads the number of older activities in memory
+	 * @param employeeCount		Reads the number of registered employees
+	 */
+
+	public EngineMetrics(LongSupplier todayRecords, LongSupplier historyRecords, LongSupplier employeeCount) {
+		punchLatency = new LatencyHistogram();
+		reportLatency = new LatencyHistogram();
+		journalWrites = new LatencyHistogram();
+		journalForces = new LatencyHistogram();
+		punches = new LongAdder();
+		rejected = new LongAdder();
+		errors = new LongAdder();
+		slotSecond = new AtomicLongArray(RATE_SECONDS + 1);
+		slotPunches = new AtomicLongArray(RATE_SECONDS + 1);
+		this.todayRecords = todayRecords;
+		this.historyRecords = historyRecords;
+		this.employeeCount = employeeCount;
+	}
+
+	/**
+	 * Count a recorded punch and its latency.
+	 * @param startNanos When the punch started, from System.nanoTime()
+	 */
+
+	public void punchRecorded(long startNanos) {
+		punchLatency.recordSince(startNanos);
+		punches.increment();
+		long second = System.currentTimeMillis() / 1000;
+		int slot = (int) (second % slotSecond.length());
+		long stamp = slotSecond.get(slot);
+		//The first punch of a second takes the slot over. A punch racing the reset may go uncounted in the rate.
+		if(stamp != second && slotSecond.compareAndSet(slot, stamp, second)) {
+			slotPunches.set(slot, 0);
+		}
+		slotPunches.incrementAndGet(slot);
+	}
+
+	public void punchRejected() {
+		rejected.increment();
+	}
+
+	/**
+	 * Count a failure and print it.
+	 * @param e The failure
+	 */
+
+	public void failed(Throwable e) {
+		errors.increment();
+		e.printStackTrace();
+	}
+
+	public LatencyHistogram getReportHistogram() {
+		return reportLatency;
+	}
+
+	public LatencyHistogram getJournalWriteHistogram() {
+		return journalWrites;
+	}
+
+	public LatencyHistogram getJournalForceHistogram() {
+		return journalForces;
+	}
+
+	public LatencyHistogram getPunchHistogram() {
+		return punchLatency;
+	}
+
+	public void setStartupMillis(long startupMillis) {
+		this.startupMillis = startupMillis;
+	}
+
+	@Override
+	public long getPunches() {
+		return punches.sum();
+	}
+
+	@Override
+	public long getRejectedPunches() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return punches per second averaged over the last full minute
+	 */
+
+	@Override
+	public double getPunchesPerSecond() {
+		long now = System.currentTimeMillis() / 1000;
+		long total = 0;
+		for(int slot = 0; slot < slotSecond.length(); slot++) {
+			long second = slotSecond.get(slot);
+			if(second < now && second >= now - RATE_SECONDS) {
+				total += slotPunches.get(slot);
+			}
+		}
+		return (double) total / RATE_SECONDS;
+	}
+
+	@Override
+	public long getPunchMeanMicros() {
+		return punchLatency.getMeanNanos() / 1000;
+	}
+
+	@Override
+	public long getPunchP99Micros() {
+		return punchLatency.getPercentileNanos(99) / 1000;
+	}
+
+	@Override
+	public long getPunchMaxMicros() {
+		return punchLatency.getMaxNanos() / 1000;
+	}
+
+	@Override
+	public long getReports() {
+		return reportLatency.getCount();
+	}
+
+	@Override
+	public long getReportMeanMicros() {
+		return reportLatency.getMeanNanos() / 1000;
+	}
+
+	@Override
+	public long getReportP99Micros() {
+		return reportLatency.getPercentileNanos(99) / 1000;
+	}
+
+	@Override
+	public long getJournalWriteP99Micros() {
+		return journalWrites.getPercentileNanos(99) / 1000;
+	}
+
+	@Override
+	public long getJournalForceP99Micros() {
+		return journalForces.getPercentileNanos(99) / 1000;
+	}
+
+	@Override
+	public long getJournalForces() {
+		return journalForces.getCount();
+	}
+
+	@Override
+	public long getStartupMillis() {
+		return startupMillis;
+	}
+
+	@Override
+	public long getTodayRecords() {
+		return todayRecords.getAsLong();
+	}
+
+	@Override
+	public long getHistoryRecords() {
+		return historyRecords.getAsLong();
+	}
+
+	@Override
+	public long getEmployees() {
+		return employeeCount.getAsLong();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getHeapUsedBytes() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Register with the platform MBean server. Only the first engine on a data directory is registered.
+	 * @param dataDirectory The engine's data directory
+	 */
+
+	public void register(String dataDirectory) {
+		try {
+			ObjectName name = new ObjectName("time.clock:type=PunchEngine,directory=" + ObjectName.quote(dataDirectory));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			registeredName = name;
+		} catch (InstanceAlreadyExistsException e) {
+			//Another engine on the same directory in this process keeps the name
+		} catch (JMException e) {
+			failed(e);
+		}
+	}
+
+	public void unregister() {
+		if(registeredName == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(registeredName);
+		} catch (JMException e) {
+			failed(e);
+		}
+		registeredName = null;
+	}
+
+	/**
+	 * Write every metric in the Prometheus text format.
+	 * @return the metrics text
+	 */
+
+	public String toText() {
+		StringBuilder out = new StringBuilder(4096);
+		histogram(out, "timeclock_punch_seconds", "Time to check, record and make a punch durable.", punchLatency);
+		histogram(out, "timeclock_report_seconds", "Time to read and write a report.", reportLatency);
+		histogram(out, "timeclock_journal_write_seconds", "Time to write a batch of journal records.", journalWrites);
+		histogram(out, "timeclock_journal_force_seconds", "Time to force the journal to disk.", journalForces);
+		metric(out, "timeclock_punches_total", "counter", "Punches recorded.", getPunches());
+		metric(out, "timeclock_rejected_punches_total", "counter", "Punches rejected by the shift, break and lunch rules.", getRejectedPunches());
+		metric(out, "timeclock_errors_total", "counter", "Failures, e.g. journal writes.", getErrors());
+		metric(out, "timeclock_punches_per_second", "gauge", "Punches per second over the last minute.", getPunchesPerSecond());
+		metric(out, "timeclock_startup_seconds", "gauge", "Time taken to load the engine.", startupMillis / 1000.0);
+		metric(out, "timeclock_today_records", "gauge", "Today's activities in memory.", getTodayRecords());
+		metric(out, "timeclock_history_records", "gauge", "Older activities in memory.", getHistoryRecords());
+		metric(out, "timeclock_employees", "gauge", "Registered employees.", getEmployees());
+		metric(out, "timeclock_heap_used_bytes", "gauge", "Heap in use.", getHeapUsedBytes());
+		return out.toString();
+	}
+
+	private static void metric(StringBuilder out, String name, String type, String help, double value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		out.append(name).append(' ').append(format(value)).append('\n');
+	}
+
+	/**
+	 * Write a histogram with cumulative buckets from a microsecond up. Shorter buckets are folded into the first.
+	 */
+
+	private static void histogram(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		long cumulative = 0;
+		for(int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+			cumulative += histogram.getBucketCount(bucket);
+			if(bucket >= 10) {
+				out.append(name).append("_bucket{le=\"").append(format(LatencyHistogram.getBucketLimit(bucket) / 1e9)).append("\"} ")
+					.append(cumulative).append('\n');
+			}
+		}
+		cumulative += histogram.getBucketCount(LatencyHistogram.BUCKETS - 1);
+		out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+		out.append(name).append("_sum ").append(format(histogram.getTotalNanos() / 1e9)).append('\n');
+		out.append(name).append("_count ").append(cumulative).append('\n');
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+	}
+}//EngineMetrics
@@ -0,0 +1,45 @@
+package time.clock.data;
+
+/**
+ * JMX view of a {@link PunchEngine}'s metrics, registered as time.clock:type=PunchEngine with the quoted data
+ * directory as its directory key. Latencies are in microseconds.
+ */
+
+public interface EngineMetricsMBean {
+
+	long getPunches();
+
+	long getRejectedPunches();
+
+	double getPunchesPerSecond();
+
+	long getPunchMeanMicros();
+
+	long getPunchP99Micros();
+
+	long getPunchMaxMicros();
+
+	long getReports();
+
+	long getReportMeanMicros();
+
+	long getReportP99Micros();
+
+	long getJournalWriteP99Micros();
+
+	long getJournalForceP99Micros();
+
+	long getJournalForces();
+
+	long getStartupMillis();
+
+	long getTodayRecords();
+
+	long getHistoryRecords();
+
+	long getEmployees();
+
+	long getErrors();
+
+	long getHeapUsedBytes();
+}//EngineMetricsMBean
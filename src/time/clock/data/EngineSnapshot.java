@@ -0,0 +1,196 @@
+package time.clock.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checkpoint of a {@link PunchEngine}'s in-memory state: the employee registry and flags, the worked hours
+ * timesheets and the journal position they include. A restart loads the snapshot and replays only the
+ * journal written after the position. The file is written to a temporary file and renamed over the last
+ * snapshot, so a crash part way through leaves the previous one in place.
+ */
+
+public class EngineSnapshot {
+
+	public static final String PROPERTY = "timeclock.snapshot";
+
+	private static final int MAGIC = 0x54434B53;	//"TCKS"
+	private static final int VERSION = 4;	//4 once breaks and lunches off shift stopped counting, so older hours are replayed
+
+	private LocalDate day;					//Day the flags belong to
+	private long employeesLength;			//Bytes of employees.txt the registry was loaded from
+	private List<Employee> employees;		//Registered employees and their flags
+	private JournalPosition position;		//Journal records included in the state
+	private String payPeriod;				//Pay period the timesheets use
+	private String payRules;				//Pay rules the timesheets use
+	private Timesheet[] timesheets;			//Timesheets indexed by employee ordinal, null if they were not worked out
+
+	public EngineSnapshot(LocalDate day, long employeesLength, List<Employee> employees, JournalPosition position,
+			PayPeriod payPeriod, PayRules payRules, Timesheet[] timesheets) {
+		this.day = day;
+		this.employeesLength = employeesLength;
+		this.employees = employees;
+		this.position = position;
+		this.payPeriod = payPeriod.toString();
+		this.payRules = payRules.toString();
+		this.timesheets = timesheets;
+	}
+
+	private EngineSnapshot() {
+	}
+
+	/**
+	 * Read the snapshot interval from the timeclock.snapshot system property.
+	 * @return minutes between snapshots, 0 if snapshots are off. Defaults to 15.
+	 */
+
+	public static int intervalFromSystemProperty() {
+		String setting = System.getProperty(PROPERTY, "15");
+		return setting.equals("off") ? 0 : Integer.parseInt(setting);
+	}
+
+	/**
+	 * Write the snapshot to a temporary file and rename it over the file.
+	 * @param file The snapshot file
+	 * @throws IOException if the snapshot cannot be written
+	 */
+
+	public void write(File file) throws IOException {
+		File written = new File(file.getParentFile(), file.getName() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(written);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(day.toEpochDay());
+		out.writeLong(employeesLength);
+		out.writeInt(employees.size());
+		for(Employee employee: employees) {
+			out.writeUTF(employee.getUniqueID());
+			out.writeUTF(employee.getRole());
+			out.writeByte(employee.getState());
+		}
+		position.writeTo(out);
+		out.writeUTF(payPeriod);
+		out.writeUTF(payRules);
+		if(timesheets == null) {
+			//The hours were never needed, so they are left to be worked out the first time they are
+			out.writeInt(-1);
+		} else {
+			int count = 0;
+			for(Timesheet timesheet: timesheets) {
+				if(timesheet != null) {
+					count++;
+				}
+			}
+			out.writeInt(timesheets.length);
+			out.writeInt(count);
+			for(int ordinal = 0; ordinal < timesheets.length; ordinal++) {
+				if(timesheets[ordinal] != null) {
+					out.writeInt(ordinal);
+					timesheets[ordinal].writeTo(out);
+				}
+			}
+		}
+		out.flush();
+		stream.getFD().sync();
+		out.close();
+		//Replaced in one step, so a crash leaves either the old snapshot or the new one
+		Files.move(written.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Read a snapshot file.
+	 * @param file The snapshot file
+	 * @return the snapshot, or null if there is none or it cannot be read
+	 */
+
+	public static EngineSnapshot read(File file) {
+		if(!file.exists()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+					System.err.println("Ignoring snapshot " + file + " written by another version.");
+					return null;
+				}
+				EngineSnapshot snapshot = new EngineSnapshot();
+				snapshot.day = LocalDate.ofEpochDay(in.readLong());
+				snapshot.employeesLength = in.readLong();
+				int count = in.readInt();
+				snapshot.employees = new ArrayList<Employee>(count);
+				for(int i = 0; i < count; i++) {
+					Employee employee = new Employee(in.readUTF(), in.readUTF());
+					employee.setState(in.readByte());
+					snapshot.employees.add(employee);
+				}
+				snapshot.position = JournalPosition.readFrom(in);
+				snapshot.payPeriod = in.readUTF();
+				snapshot.payRules = in.readUTF();
+				PayPeriod period = PayPeriod.parse(snapshot.payPeriod);
+				PayRules rules = PayRules.parse(snapshot.payRules);
+				int length = in.readInt();
+				if(length >= 0) {
+					snapshot.timesheets = new Timesheet[length];
+					count = in.readInt();
+					for(int i = 0; i < count; i++) {
+						int ordinal = in.readInt();
+						snapshot.timesheets[ordinal] = Timesheet.readFrom(in, period, rules);
+					}
+				}
+				return snapshot;
+			} finally {
+				in.close();
+			}
+		} catch (EOFException e) {
+			System.err.println("Ignoring truncated snapshot " + file + ".");
+			return null;
+		} catch (IOException | RuntimeException e) {
+			//A snapshot that cannot be read is ignored, the full journal is read instead
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public LocalDate getDay() {
+		return day;
+	}
+
+	public long getEmployeesLength() {
+		return employeesLength;
+	}
+
+	public List<Employee> getEmployees() {
+		return employees;
+	}
+
+	public JournalPosition getPosition() {
+		return position;
+	}
+
+	/**
+	 * @param period	The pay period in use
+	 * @param rules		The pay rules in use
+	 * @return the timesheets, or null if they were not worked out or were worked out for a different pay period or rules
+	 */
+
+	public Timesheet[] getTimesheets(PayPeriod period, PayRules rules) {
+		if(timesheets == null || !payPeriod.equals(period.toString()) || !payRules.equals(rules.toString())) {
+			return null;
+		}
+		return timesheets;
+	}
+}//EngineSnapshot
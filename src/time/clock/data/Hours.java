@@ -0,0 +1,40 @@
+package time.clock.data;
+
+/**
+ * Worked time totals for an employee over a day or pay period, in minutes.
+ */
+
+public class Hours {
+	private long shiftMinutes;	//Minutes between clock-in and clock-out
+	private long breakMinutes;	//Minutes on break
+	private long lunchMinutes;	//Minutes on lunch
+	private long paidMinutes;	//Minutes paid under the pay rules
+
+	public Hours(long shiftMinutes, long breakMinutes, long lunchMinutes, long paidMinutes) {
+		this.shiftMinutes = shiftMinutes;
+		this.breakMinutes = breakMinutes;
+		this.lunchMinutes = lunchMinutes;
+		this.paidMinutes = paidMinutes;
+	}
+
+	public long getShiftMinutes() {
+		return shiftMinutes;
+	}
+
+	public long getBreakMinutes() {
+		return breakMinutes;
+	}
+
+	public long getLunchMinutes() {
+		return lunchMinutes;
+	}
+
+	public long getPaidMinutes() {
+		return paidMinutes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Paid: %.2f h, Breaks: %d min, Lunch: %d min", paidMinutes / 60.0, breakMinutes, lunchMinutes);
+	}
+}//Hours
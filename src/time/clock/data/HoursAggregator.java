@@ -0,0 +1,210 @@
+package time.clock.data;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running totals of shift, break and lunch minutes per employee, per day and per pay period.
+ * Each punch pairs with the open interval it closes as it is applied, so a pay period summary is read
+ * straight from the employees' {@link Timesheet}s instead of replaying history.
+ */
+
+public class HoursAggregator {
+
+	private EmployeeIds ids;						//Dictionary of employee ordinals
+	private PayPeriod payPeriod;					//How days are grouped into pay periods
+	private PayRules rules;							//Rounding and paid time rules
+	private volatile Timesheet[] byOrdinal;			//Timesheets indexed by employee ordinal
+
+	public HoursAggregator(EmployeeIds ids, PayPeriod payPeriod, PayRules rules) {
+		this(ids, payPeriod, rules, new Timesheet[Math.max(16, ids.size())]);
+	}
+
+	/**
+	 * Set up the totals from timesheets already worked out, e.g. by a {@link TimesheetRecompute}.
+	 * @param ids		Dictionary of employee ordinals
+	 * @param payPeriod	How days are grouped into pay periods
+	 * @param rules		Rounding and paid time rules the timesheets were worked out with
+	 * @param byOrdinal	Timesheets indexed by employee ordinal, null for employees without punches
+	 */
+
+	public HoursAggregator(EmployeeIds ids, PayPeriod payPeriod, PayRules rules, Timesheet[] byOrdinal) {
+		this.ids = ids;
+		this.payPeriod = payPeriod;
+		this.rules = rules;
+		this.byOrdinal = byOrdinal;
+	}
+
+	/**
+	 * Apply an activity to its employee's totals.
+	 * @param activity The activity
+	 */
+
+	public void apply(Activity activity) {
+		apply(ids.intern(activity.getEmployeeID()), activity.getActivity().getCode(), TimeFormats.toEpochMinute(activity.getDateTime()));
+	}
+
+	/**
+	 * Apply a punch to its employee's totals. Punches for one employee must be applied in the order they were made.
+	 * @param employee		Employee ordinal
+	 * @param type			Activity code
+	 * @param epochMinute	Minutes since the epoch
+	 */
+
+	public void apply(int employee, byte type, int epochMinute) {
+		timesheetFor(employee).apply(type, epochMinute);
+	}
+
+	/**
+	 * Apply a punch to its employee's totals unless it is older than a punch already applied, e.g. one
+	 * imported from an offline kiosk.
+	 * @param employee		Employee ordinal
+	 * @param type			Activity code
+	 * @param epochMinute	Minutes since the epoch
+	 * @return false if the punch was left out, and the employee's timesheet has to be worked out again
+	 */
+
+	public boolean applyInOrder(int employee, byte type, int epochMinute) {
+		Timesheet timesheet = timesheetFor(employee);
+		synchronized(timesheet) {
+			if(epochMinute < timesheet.getLastMinute()) {
+				return false;
+			}
+			timesheet.apply(type, epochMinute);
+			return true;
+		}
+	}
+
+	/**
+	 * Close whatever an employee still has open at midnight when a day starts, as their first punch on it would.
+	 * @param employee	Employee ordinal
+	 * @param next		The day that started
+	 */
+
+	public void closeDayBefore(int employee, LocalDate next) {
+		Timesheet[] all = byOrdinal;
+		if(employee < all.length && all[employee] != null) {
+			all[employee].closeDayBefore(next);
+		}
+	}
+
+	/**
+	 * Close whatever every employee still has open from a day before a day, e.g. once the hours are worked out
+	 * from the history, where an employee's last punch may have left a shift open.
+	 * @param next The current day
+	 */
+
+	public void closeDaysBefore(LocalDate next) {
+		for(Timesheet timesheet: byOrdinal) {
+			if(timesheet != null) {
+				timesheet.closeDayBefore(next);
+			}
+		}
+	}
+
+	/**
+	 * Replace an employee's timesheet with one worked out again.
+	 * @param employee	Employee ordinal
+	 * @param timesheet	The new timesheet, null if the employee has no punches
+	 */
+
+	public synchronized void replace(int employee, Timesheet timesheet) {
+		Timesheet[] all = byOrdinal;
+		if(employee >= all.length) {
+			Timesheet[] grown = new Timesheet[Math.max(employee + 1, all.length * 2)];
+			System.arraycopy(all, 0, grown, 0, all.length);
+			all = grown;
+		}
+		all[employee] = timesheet;
+		byOrdinal = all;
+	}
+
+	/**
+	 * @param employeeID	The employee ID
+	 * @param day			The day
+	 * @return the employee's closed intervals on the day
+	 */
+
+	public Hours getDay(String employeeID, LocalDate day) {
+		Timesheet timesheet = find(employeeID);
+		return timesheet == null ? new Hours(0, 0, 0, 0) : timesheet.getDay(day);
+	}
+
+	/**
+	 * @param employeeID	The employee ID
+	 * @param day			Any day in the pay period
+	 * @return the employee's closed intervals in the pay period
+	 */
+
+	public Hours getPeriod(String employeeID, LocalDate day) {
+		Timesheet timesheet = find(employeeID);
+		return timesheet == null ? new Hours(0, 0, 0, 0) : timesheet.getPeriod(day);
+	}
+
+	/**
+	 * Read a pay period's totals for every employee with punches, one lookup per employee.
+	 * @param day Any day in the pay period
+	 * @return the totals by employee ID, in the order employees first punched
+	 */
+
+	public Map<String, Hours> getPeriodSummary(LocalDate day) {
+		Timesheet[] all = byOrdinal;
+		Map<String, Hours> summary = new LinkedHashMap<String, Hours>();
+		for(int ordinal = 0; ordinal < all.length; ordinal++) {
+			if(all[ordinal] != null) {
+				summary.put(ids.get(ordinal), all[ordinal].getPeriod(day));
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * @return a copy of every timesheet indexed by employee ordinal, null for employees without punches
+	 */
+
+	public Timesheet[] copyTimesheets() {
+		Timesheet[] all = byOrdinal;
+		Timesheet[] copies = new Timesheet[all.length];
+		for(int ordinal = 0; ordinal < all.length; ordinal++) {
+			if(all[ordinal] != null) {
+				copies[ordinal] = all[ordinal].copy();
+			}
+		}
+		return copies;
+	}
+
+	public PayPeriod getPayPeriod() {
+		return payPeriod;
+	}
+
+	public PayRules getRules() {
+		return rules;
+	}
+
+	private Timesheet find(String employeeID) {
+		int ordinal = ids.find(employeeID);
+		Timesheet[] all = byOrdinal;
+		return ordinal < 0 || ordinal >= all.length ? null : all[ordinal];
+	}
+
+	private Timesheet timesheetFor(int employee) {
+		Timesheet[] all = byOrdinal;
+		if(employee < all.length && all[employee] != null) {
+			return all[employee];
+		}
+		synchronized(this) {
+			all = byOrdinal;
+			if(employee >= all.length) {
+				Timesheet[] grown = new Timesheet[Math.max(employee + 1, all.length * 2)];
+				System.arraycopy(all, 0, grown, 0, all.length);
+				all = grown;
+			}
+			if(all[employee] == null) {
+				all[employee] = new Timesheet(payPeriod, rules);
+			}
+			byOrdinal = all;
+			return all[employee];
+		}
+	}
+}//HoursAggregator
@@ -0,0 +1,107 @@
+package time.clock.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a bulk punch import: how many punches were recorded and why the others were not.
+ */
+
+public class ImportResult {
+	private long accepted;		//Punches recorded
+	private long duplicates;	//Punches already recorded, or repeated in the import
+	private long rejected;		//Punches breaking the shift, break and lunch rules, or in the future
+	private long unknown;		//Punches of employees that are not registered
+	private long malformed;		//Lines or records that could not be read
+	private long elapsedMillis;	//Time taken to check and journal the punches
+
+	public ImportResult(long accepted, long duplicates, long rejected, long unknown, long malformed, long elapsedMillis) {
+		this.accepted = accepted;
+		this.duplicates = duplicates;
+		this.rejected = rejected;
+		this.unknown = unknown;
+		this.malformed = malformed;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public long getAccepted() {
+		return accepted;
+	}
+
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getUnknown() {
+		return unknown;
+	}
+
+	public long getMalformed() {
+		return malformed;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Add another import's counts, e.g. a shard's part of an import made on every shard at once.
+	 * @param other The other import
+	 * @return the totals, taking the longer of the two times as the imports ran side by side
+	 */
+
+	public ImportResult add(ImportResult other) {
+		return new ImportResult(accepted + other.accepted, duplicates + other.duplicates, rejected + other.rejected,
+				unknown + other.unknown, malformed + other.malformed, Math.max(elapsedMillis, other.elapsedMillis));
+	}
+
+	/**
+	 * @return the counts as name=value lines, e.g. accepted=12, for programs such as a router adding up shards
+	 */
+
+	public String toFields() {
+		return "accepted=" + accepted + "\nduplicates=" + duplicates + "\nrejected=" + rejected + "\nunknown=" + unknown
+				+ "\nmalformed=" + malformed + "\nelapsedMillis=" + elapsedMillis + "\n";
+	}
+
+	/**
+	 * Read a result back from its {@link #toFields()} lines. Lines are found by name, so their order does not matter.
+	 * @param fields The name=value lines
+	 * @return the result
+	 * @throws IllegalArgumentException if a count is missing or not a number
+	 */
+
+	public static ImportResult parseFields(String fields) {
+		Map<String, Long> values = new HashMap<String, Long>();
+		for(String line: fields.split("\n")) {
+			int equals = line.indexOf('=');
+			if(equals > 0) {
+				try {
+					values.put(line.substring(0, equals).trim(), Long.parseLong(line.substring(equals + 1).trim()));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Not an import count: " + line);
+				}
+			}
+		}
+		return new ImportResult(field(values, "accepted"), field(values, "duplicates"), field(values, "rejected"),
+				field(values, "unknown"), field(values, "malformed"), field(values, "elapsedMillis"));
+	}
+
+	private static long field(Map<String, Long> values, String name) {
+		Long value = values.get(name);
+		if(value == null) {
+			throw new IllegalArgumentException("Import result is missing " + name);
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "Imported " + accepted + " punches in " + elapsedMillis + " ms. Duplicates: " + duplicates + ", rejected: " + rejected
+				+ ", unknown employees: " + unknown + ", unreadable: " + malformed + ".";
+	}
+}//ImportResult
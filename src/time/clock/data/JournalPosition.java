@@ -0,0 +1,94 @@
+package time.clock.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A point in the punch journal: the number of records in each monthly segment. Everything after it is the
+ * journal tail a restart replays on top of a snapshot.
+ */
+
+public class JournalPosition {
+
+	private TreeMap<YearMonth, Long> records;	//Records in each segment
+
+	public JournalPosition(Map<YearMonth, Long> records) {
+		this.records = new TreeMap<YearMonth, Long>(records);
+	}
+
+	/**
+	 * @param month A segment's month
+	 * @return the records of the segment before this position
+	 */
+
+	public long getRecords(YearMonth month) {
+		Long count = records.get(month);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return a copy of the records of each segment before this position
+	 */
+
+	public TreeMap<YearMonth, Long> getRecords() {
+		return new TreeMap<YearMonth, Long>(records);
+	}
+
+	/**
+	 * @param other Another position
+	 * @return true if any segment has more records before this position than before the other
+	 */
+
+	public boolean isAhead(JournalPosition other) {
+		for(Map.Entry<YearMonth, Long> entry: records.entrySet()) {
+			if(entry.getValue() > other.getRecords(entry.getKey())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the records of every segment before this position
+	 */
+
+	public long getTotalRecords() {
+		long total = 0;
+		for(long count: records.values()) {
+			total += count;
+		}
+		return total;
+	}
+
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(records.size());
+		for(Map.Entry<YearMonth, Long> entry: records.entrySet()) {
+			out.writeInt(entry.getKey().getYear());
+			out.writeByte(entry.getKey().getMonthValue());
+			out.writeLong(entry.getValue());
+		}
+	}
+
+	public static JournalPosition readFrom(DataInput in) throws IOException {
+		Map<YearMonth, Long> records = new TreeMap<YearMonth, Long>();
+		int segments = in.readInt();
+		for(int i = 0; i < segments; i++) {
+			records.put(YearMonth.of(in.readInt(), in.readByte()), in.readLong());
+		}
+		return new JournalPosition(records);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof JournalPosition && records.equals(((JournalPosition) other).records);
+	}
+
+	@Override
+	public int hashCode() {
+		return records.hashCode();
+	}
+}//JournalPosition
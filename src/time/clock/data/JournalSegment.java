@@ -0,0 +1,317 @@
+package time.clock.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * One month of the punch journal, calendar-yyyy-MM.dat, with a sparse index in calendar-yyyy-MM.idx.
+ * The index holds the earliest and latest minute of each full block of records, so a range read skips
+ * blocks outside the range. Blocks are indexed the first time they are read in full, and records added
+ * out of order, e.g. by an import, only widen their block's range.
+ */
+
+public class JournalSegment {
+
+	public static final int BLOCK_RECORDS = 1024;	//Records covered by each index entry
+
+	private static final long BLOCK_BYTES = (long) BLOCK_RECORDS * PunchJournal.RECORD_SIZE;
+	private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+	private static final String PREFIX = "calendar-";
+
+	private YearMonth month;		//Month of every punch in the segment
+	private File dataFile;			//The records
+	private File indexFile;			//Earliest and latest minute of each full block
+	private int[] blockMin;			//Earliest minute of each indexed block
+	private int[] blockMax;			//Latest minute of each indexed block
+	private int indexedBlocks;		//Number of indexed blocks, -1 until the index file is loaded
+
+	/**
+	 * Set up a segment. The files are created by the first write.
+	 * @param directory	Directory holding the segments
+	 * @param month		Month of the punches in the segment
+	 */
+
+	public JournalSegment(File directory, YearMonth month) {
+		this.month = month;
+		dataFile = new File(directory, PREFIX + MONTH.format(month) + ".dat");
+		indexFile = new File(directory, PREFIX + MONTH.format(month) + ".idx");
+		indexedBlocks = -1;
+	}
+
+	/**
+	 * @param fileName A file name
+	 * @return the month of a segment data file name, or null if it is not one
+	 */
+
+	public static YearMonth parseMonth(String fileName) {
+		if(!fileName.startsWith(PREFIX) || !fileName.endsWith(".dat") || fileName.length() != PREFIX.length() + 11) {
+			return null;
+		}
+		try {
+			return YearMonth.parse(fileName.substring(PREFIX.length(), PREFIX.length() + 7), MONTH);
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param epochMinute Minutes since the epoch
+	 * @return the month holding the minute in the local zone
+	 */
+
+	public static YearMonth monthOf(int epochMinute) {
+		return YearMonth.from(TimeFormats.fromEpochMinute(epochMinute));
+	}
+
+	public YearMonth getMonth() {
+		return month;
+	}
+
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * @return the first minute of the month
+	 */
+
+	public int getStartMinute() {
+		return TimeFormats.toEpochMinute(month.atDay(1).atStartOfDay());
+	}
+
+	/**
+	 * @return the first minute of the next month
+	 */
+
+	public int getEndMinute() {
+		return TimeFormats.toEpochMinute(month.plusMonths(1).atDay(1).atStartOfDay());
+	}
+
+	/**
+	 * Read the segment's punches in a range of minutes, in the order they were written.
+	 * A segment holds one month, so it is expected to stay well under the 2 GB a single mapping can cover.
+	 * @param fromMinute	First minute to include
+	 * @param toMinute		First minute past the range
+	 * @param handler		Handler called for each punch in the range
+	 * @return the number of records looked at
+	 */
+
+	public long read(int fromMinute, int toMinute, PunchJournal.PunchHandler handler) {
+		if(!dataFile.exists()) {
+			return 0;
+		}
+		long scanned = 0;
+		try {
+			RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+			FileChannel channel = file.getChannel();
+			//A partly written record at the end is ignored.
+			long length = channel.size() - channel.size() % PunchJournal.RECORD_SIZE;
+			int fullBlocks = (int) (length / BLOCK_BYTES);
+			int[] min;
+			int[] max;
+			int indexed;
+			synchronized(this) {
+				loadIndex(fullBlocks);
+				min = blockMin;
+				max = blockMax;
+				indexed = indexedBlocks;
+			}
+
+			int[] newMin = new int[Math.max(0, fullBlocks - indexed)];
+			int[] newMax = new int[newMin.length];
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			for(int block = 0; (long) block * BLOCK_BYTES < length; block++) {
+				if(block < indexed && (max[block] < fromMinute || min[block] >= toMinute)) {
+					continue;
+				}
+				buffer.position((int) (block * BLOCK_BYTES));
+				int end = (int) Math.min(length, (block + 1) * BLOCK_BYTES);
+				int low = Integer.MAX_VALUE;
+				int high = Integer.MIN_VALUE;
+				while(buffer.position() < end) {
+					int ordinal = buffer.getInt();
+					byte code = buffer.get();
+					int epochMinute = buffer.getInt();
+					low = Math.min(low, epochMinute);
+					high = Math.max(high, epochMinute);
+					if(epochMinute >= fromMinute && epochMinute < toMinute) {
+						handler.onPunch(ordinal, code, epochMinute);
+					}
+					scanned++;
+				}
+				if(block >= indexed && block < fullBlocks) {
+					newMin[block - indexed] = low;
+					newMax[block - indexed] = high;
+				}
+			}
+			file.close();
+			extendIndex(indexed, newMin, newMax);
+		} catch (IOException e) {
+			//File is assumed to be readable, no error handling here
+			e.printStackTrace();
+		}
+		return scanned;
+	}
+
+	/**
+	 * @return the number of whole records in the segment
+	 */
+
+	public long getRecordCount() {
+		return dataFile.length() / PunchJournal.RECORD_SIZE;
+	}
+
+	/**
+	 * Read the segment's punches from a record on, in the order they were written.
+	 * @param firstRecord	First record to read
+	 * @param handler		Handler called for each punch
+	 * @return the number of records read
+	 */
+
+	public long readFrom(long firstRecord, PunchJournal.PunchHandler handler) {
+		long length = getRecordCount() * PunchJournal.RECORD_SIZE;
+		long offset = firstRecord * PunchJournal.RECORD_SIZE;
+		if(offset >= length) {
+			return 0;
+		}
+		long read = 0;
+		try {
+			RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length - offset);
+			while(buffer.hasRemaining()) {
+				handler.onPunch(buffer.getInt(), buffer.get(), buffer.getInt());
+				read++;
+			}
+			file.close();
+		} catch (IOException e) {
+			//File is assumed to be readable, no error handling here
+			e.printStackTrace();
+		}
+		return read;
+	}
+
+	/**
+	 * Load the index file the first time it is needed. An index longer than the data, e.g. after the data
+	 * file was replaced, is thrown away and built again.
+	 */
+
+	private void loadIndex(int fullBlocks) throws IOException {
+		if(indexedBlocks >= 0 && indexedBlocks <= fullBlocks) {
+			return;
+		}
+		int entries = indexFile.exists() ? (int) (indexFile.length() / 8) : 0;
+		if(entries > fullBlocks) {
+			indexFile.delete();
+			entries = 0;
+		}
+		blockMin = new int[entries];
+		blockMax = new int[entries];
+		if(entries > 0) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			for(int i = 0; i < entries; i++) {
+				blockMin[i] = in.readInt();
+				blockMax[i] = in.readInt();
+			}
+			in.close();
+		}
+		indexedBlocks = entries;
+	}
+
+	/**
+	 * Add the blocks a read indexed on the way, unless another read already did.
+	 */
+
+	private synchronized void extendIndex(int from, int[] newMin, int[] newMax) throws IOException {
+		if(newMin.length == 0 || indexedBlocks != from) {
+			return;
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+		for(int i = 0; i < newMin.length; i++) {
+			out.writeInt(newMin[i]);
+			out.writeInt(newMax[i]);
+		}
+		out.close();
+		blockMin = concat(blockMin, newMin);
+		blockMax = concat(blockMax, newMax);
+		indexedBlocks += newMin.length;
+	}
+
+	private static int[] concat(int[] first, int[] second) {
+		int[] joined = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, joined, first.length, second.length);
+		return joined;
+	}
+
+	/**
+	 * Rewrite the segment in time order so every block covers a narrow range, and rebuild its index.
+	 * Only for segments no longer written to. The rewrite is made durable and then moved over the segment in
+	 * one step, so a crash leaves either the old segment or the new one.
+	 * @throws IOException if the rewrite cannot be written or moved into place, when the segment is unchanged
+	 */
+
+	public synchronized void compact() throws IOException {
+		if(!dataFile.exists()) {
+			return;
+		}
+		long records = dataFile.length() / PunchJournal.RECORD_SIZE;
+		final int[] ordinals = new int[(int) records];
+		final byte[] codes = new byte[ordinals.length];
+		final int[] minutes = new int[ordinals.length];
+		final int[] count = new int[1];
+		read(Integer.MIN_VALUE, Integer.MAX_VALUE, (ordinal, type, epochMinute) -> {
+			ordinals[count[0]] = ordinal;
+			codes[count[0]] = type;
+			minutes[count[0]] = epochMinute;
+			count[0]++;
+		});
+
+		//Sort row numbers by time, keeping the written order for punches in the same minute
+		Integer[] order = new Integer[count[0]];
+		for(int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(minutes[a], minutes[b]));
+
+		File compacted = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+		try {
+			FileOutputStream file = new FileOutputStream(compacted);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+			try {
+				for(int row: order) {
+					out.writeInt(ordinals[row]);
+					out.writeByte(codes[row]);
+					out.writeInt(minutes[row]);
+				}
+				out.flush();
+				file.getFD().sync();
+			} finally {
+				out.close();
+			}
+			Files.move(compacted.toPath(), dataFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			compacted.delete();
+			throw e;
+		}
+		indexFile.delete();
+		indexedBlocks = -1;
+	}
+}//JournalSegment
@@ -0,0 +1,263 @@
+package time.clock.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background writer that appends queued journal records in batches and forces them to disk
+ * following a {@link DurabilityPolicy}. A record's future completes once it is durable.
+ */
+
+public class JournalWriter implements Runnable {
+
+	public static final int BUFFER_SIZE = 1 << 16;		//Bytes of records written at a time, and the largest record
+
+	private static final int MAX_BATCH = 4096;			//Most records written by a single batch
+	private static final long IDLE_POLL_MILLIS = 100;	//How often an idle writer checks if it was closed
+
+	/**
+	 * A record waiting to be written or forced.
+	 */
+
+	private static class PendingRecord {
+		private byte[] record;
+		private CompletableFuture<Void> durable;
+
+		private PendingRecord(byte[] record) {
+			this.record = record;
+			this.durable = new CompletableFuture<Void>();
+		}
+	}
+
+	//Empty record queued by close() to wake the writer up
+	private static final PendingRecord WAKE_UP = new PendingRecord(new byte[0]);
+
+	private FileChannel channel;					//Journal file opened for append
+	private DurabilityPolicy policy;				//When to force the journal to disk
+	private EngineMetrics metrics;					//Where write and force times are recorded
+	private BlockingQueue<PendingRecord> queue;		//Records waiting to be written
+	private List<PendingRecord> unforced;			//Records written but not yet forced
+	private long unforcedRecords;					//Journal records in them, as one entry can hold many
+	private long firstUnforced;						//When the oldest of them was written
+	private ByteBuffer buffer;						//Batch buffer
+	private long lastForce;							//When the journal was last forced
+	private volatile boolean closed;				//If no more records are accepted
+	private Thread thread;							//The writer thread
+
+	/**
+	 * Open the journal for append and start the writer thread.
+	 * @param journalFile	The journal file
+	 * @param policy		When to force written records to disk
+	 * @param metrics		Where write and force times are recorded
+	 * @throws IOException if the journal cannot be opened
+	 */
+
+	public JournalWriter(File journalFile, DurabilityPolicy policy, EngineMetrics metrics) throws IOException {
+		this.channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		//A crash mid write can leave part of a record, which every record appended after it would be misaligned by
+		long size = channel.size();
+		if(size % PunchJournal.RECORD_SIZE != 0) {
+			channel.truncate(size - size % PunchJournal.RECORD_SIZE);
+		}
+		this.policy = policy;
+		this.metrics = metrics;
+		queue = new LinkedBlockingQueue<PendingRecord>();
+		unforced = new ArrayList<PendingRecord>();
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		lastForce = System.currentTimeMillis();
+		closed = false;
+		thread = new Thread(this, "journal-writer-" + journalFile.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queue a record to be appended to the journal.
+	 * @param record The encoded record, or several records to be written together
+	 * @return a future completed once the record is durable under the policy
+	 */
+
+	public CompletableFuture<Void> submit(byte[] record) {
+		if(closed) {
+			throw new IllegalStateException("Journal writer is closed");
+		}
+		PendingRecord pending = new PendingRecord(record);
+		queue.add(pending);
+		return pending.durable;
+	}
+
+	/**
+	 * Writer loop. Takes everything waiting in the queue as one batch, writes it and forces it when the policy says so.
+	 */
+
+	@Override
+	public void run() {
+		List<PendingRecord> batch = new ArrayList<PendingRecord>();
+		while(!closed || !queue.isEmpty()) {
+			try {
+				PendingRecord first = queue.poll(pollMillis(), TimeUnit.MILLISECONDS);
+				if(first != null) {
+					batch.add(first);
+					queue.drainTo(batch, MAX_BATCH - 1);
+					write(batch);
+					addUnforced(batch);
+					batch.clear();
+				}
+				if(forceDue()) {
+					force();
+				}
+			} catch (InterruptedException e) {
+				//Not interrupted by this class, the loop carries on until closed
+			} catch (IOException e) {
+				fail(batch, e);
+				fail(unforced, e);
+			}
+		}
+
+		//Anything submitted while closing is still written, and everything is forced on close whatever the policy.
+		try {
+			queue.drainTo(batch);
+			write(batch);
+			addUnforced(batch);
+			force();
+			channel.close();
+		} catch (IOException e) {
+			fail(unforced, e);
+		}
+	}
+
+	private void addUnforced(List<PendingRecord> batch) {
+		if(unforced.isEmpty() && !batch.isEmpty()) {
+			firstUnforced = System.currentTimeMillis();
+		}
+		for(PendingRecord pending: batch) {
+			unforcedRecords += pending.record.length / PunchJournal.RECORD_SIZE;
+		}
+		unforced.addAll(batch);
+	}
+
+	/**
+	 * How long to wait for the next record. A policy with unforced records only waits until its deadline.
+	 */
+
+	private long pollMillis() {
+		if(policy.getMode() == DurabilityPolicy.Mode.INTERVAL && !unforced.isEmpty()) {
+			return Math.max(0, lastForce + policy.getValue() - System.currentTimeMillis());
+		}
+		if(policy.getMode() == DurabilityPolicy.Mode.RECORDS && !unforced.isEmpty()) {
+			return Math.max(0, firstUnforced + policy.getMaxDelayMillis() - System.currentTimeMillis());
+		}
+		return IDLE_POLL_MILLIS;
+	}
+
+	/**
+	 * @return true if the unforced records should be forced now
+	 */
+
+	private boolean forceDue() {
+		if(unforced.isEmpty()) {
+			return false;
+		}
+		switch(policy.getMode()) {
+		case INTERVAL:
+			return System.currentTimeMillis() - lastForce >= policy.getValue();
+		case RECORDS:
+			//A quiet clock still forces, as punches wait until they are durable
+			return unforcedRecords >= policy.getValue() || System.currentTimeMillis() - firstUnforced >= policy.getMaxDelayMillis();
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Write a batch of records with as few channel writes as the buffer allows. If a write fails, the journal
+	 * is cut back to where the batch started, so no part of a record is left for the next batch to follow.
+	 */
+
+	private void write(List<PendingRecord> batch) throws IOException {
+		if(batch.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+		long size = channel.size();
+		buffer.clear();
+		try {
+			for(PendingRecord pending: batch) {
+				if(buffer.remaining() < pending.record.length) {
+					drain();
+				}
+				buffer.put(pending.record);
+			}
+			drain();
+		} catch (IOException e) {
+			try {
+				channel.truncate(size);
+			} catch (IOException truncateFailed) {
+				e.addSuppressed(truncateFailed);
+			}
+			throw e;
+		}
+		metrics.getJournalWriteHistogram().recordSince(start);
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Force written records to disk and let their callers know they are durable.
+	 */
+
+	private void force() throws IOException {
+		if(unforced.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+		channel.force(false);
+		metrics.getJournalForceHistogram().recordSince(start);
+		lastForce = System.currentTimeMillis();
+		for(PendingRecord pending: unforced) {
+			pending.durable.complete(null);
+		}
+		unforced.clear();
+		unforcedRecords = 0;
+	}
+
+	private void fail(List<PendingRecord> records, IOException e) {
+		for(PendingRecord pending: records) {
+			pending.durable.completeExceptionally(e);
+		}
+		if(records == unforced) {
+			unforcedRecords = 0;
+		}
+		records.clear();
+	}
+
+	/**
+	 * Stop accepting records, write and force everything queued, then close the journal.
+	 */
+
+	public void close() {
+		closed = true;
+		//Interrupting would close the channel mid write, so wake the writer with an empty record instead.
+		queue.add(WAKE_UP);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}//JournalWriter
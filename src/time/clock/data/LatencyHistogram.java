@@ -0,0 +1,114 @@
+package time.clock.data;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with one bucket per power of two nanoseconds. Recording is two adds and a
+ * max, cheap enough to leave on for every punch. Percentiles are read to within a factor of two.
+ */
+
+public class LatencyHistogram {
+
+	public static final int BUCKETS = 40;	//Bucket i holds latencies below 2^i ns, the last one everything longer
+
+	private LongAdder[] buckets;		//Count of each bucket
+	private LongAdder count;			//Latencies recorded
+	private LongAdder totalNanos;		//Sum of every latency recorded
+	private LongAccumulator maxNanos;	//Longest latency recorded
+
+	public LatencyHistogram() {
+		buckets = new LongAdder[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+		count = new LongAdder();
+		totalNanos = new LongAdder();
+		maxNanos = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * Record a latency.
+	 * @param nanos Nanoseconds taken
+	 */
+
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	/**
+	 * Record the time since a start taken with System.nanoTime().
+	 * @param startNanos When the timed work started
+	 */
+
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		long recorded = count.sum();
+		return recorded == 0 ? 0 : totalNanos.sum() / recorded;
+	}
+
+	/**
+	 * @param bucket A bucket index
+	 * @return the latencies recorded in the bucket
+	 */
+
+	public long getBucketCount(int bucket) {
+		return buckets[bucket].sum();
+	}
+
+	/**
+	 * @param bucket A bucket index
+	 * @return the nanoseconds every latency in the bucket is below, Long.MAX_VALUE for the last bucket
+	 */
+
+	public static long getBucketLimit(int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	/**
+	 * @param percentile The percentile, e.g. 99.0
+	 * @return the upper limit of the bucket holding the percentile, capped at the longest latency recorded
+	 */
+
+	public long getPercentileNanos(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long recorded = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			recorded += counts[i];
+		}
+		if(recorded == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(recorded * percentile / 100);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= rank) {
+				return Math.min(getBucketLimit(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+}//LatencyHistogram
@@ -0,0 +1,86 @@
+package time.clock.data;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Fixed length pay periods counted from an anchor date.
+ */
+
+public class PayPeriod {
+
+	public static final String PROPERTY = "timeclock.payperiod";
+
+	private LocalDate anchor;	//First day of some pay period
+	private int lengthDays;		//Days in each pay period
+
+	public PayPeriod(LocalDate anchor, int lengthDays) {
+		if(lengthDays < 1) {
+			throw new IllegalArgumentException(PROPERTY + " length must be at least 1 day, got " + lengthDays);
+		}
+		this.anchor = anchor;
+		this.lengthDays = lengthDays;
+	}
+
+	/**
+	 * Read the pay period from the timeclock.payperiod system property, "&lt;days&gt;:&lt;MM/dd/yyyy of a period start&gt;".
+	 * Defaults to weekly periods starting on Monday.
+	 * @return the configured pay period
+	 */
+
+	public static PayPeriod fromSystemProperty() {
+		String setting = System.getProperty(PROPERTY);
+		if(setting == null) {
+			//05 January 1970 was a Monday
+			return new PayPeriod(LocalDate.of(1970, 1, 5), 7);
+		}
+		return parse(setting);
+	}
+
+	/**
+	 * @param setting A pay period in &lt;days&gt;:&lt;MM/dd/yyyy&gt; form, as written by {@link #toString()}
+	 * @return the pay period
+	 * @throws IllegalArgumentException if the setting is not in that form or the length is below 1 day
+	 */
+
+	public static PayPeriod parse(String setting) {
+		String[] parts = setting.split(":");
+		if(parts.length != 2) {
+			throw new IllegalArgumentException("Invalid " + PROPERTY + " setting: " + setting);
+		}
+		try {
+			return new PayPeriod(LocalDate.parse(parts[1], TimeFormats.DATE), Integer.parseInt(parts[0]));
+		} catch (DateTimeParseException | NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + PROPERTY + " setting: " + setting, e);
+		}
+	}
+
+	/**
+	 * @param day Any day
+	 * @return the first day of the pay period holding the day
+	 */
+
+	public LocalDate startOf(LocalDate day) {
+		long offset = Math.floorMod(ChronoUnit.DAYS.between(anchor, day), (long) lengthDays);
+		return day.minusDays(offset);
+	}
+
+	/**
+	 * @param day Any day
+	 * @return the last day of the pay period holding the day
+	 */
+
+	public LocalDate endOf(LocalDate day) {
+		return startOf(day).plusDays(lengthDays - 1);
+	}
+
+	public int getLengthDays() {
+		return lengthDays;
+	}
+
+	@Override
+	public String toString() {
+		return lengthDays + ":" + TimeFormats.formatDate(anchor);
+	}
+}//PayPeriod
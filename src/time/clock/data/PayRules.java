@@ -0,0 +1,96 @@
+package time.clock.data;
+
+/**
+ * Rules turning worked time into paid time: punch rounding and whether breaks and lunch are paid.
+ */
+
+public class PayRules {
+
+	public static final String PROPERTY = "timeclock.payrules";
+
+	private int roundingMinutes;	//Punches are rounded to the nearest multiple of this, 1 for no rounding
+	private boolean breaksPaid;		//If break minutes are paid
+	private boolean lunchPaid;		//If lunch minutes are paid
+
+	public PayRules(int roundingMinutes, boolean breaksPaid, boolean lunchPaid) {
+		if(roundingMinutes < 1) {
+			throw new IllegalArgumentException("Rounding must be at least 1 minute: " + roundingMinutes);
+		}
+		this.roundingMinutes = roundingMinutes;
+		this.breaksPaid = breaksPaid;
+		this.lunchPaid = lunchPaid;
+	}
+
+	/**
+	 * @return no rounding, paid breaks and unpaid lunch
+	 */
+
+	public static PayRules standard() {
+		return new PayRules(1, true, false);
+	}
+
+	/**
+	 * Read the rules from the timeclock.payrules system property, the standard rules if it is not set.
+	 * @return the configured rules
+	 */
+
+	public static PayRules fromSystemProperty() {
+		String setting = System.getProperty(PROPERTY);
+		return setting == null ? standard() : parse(setting);
+	}
+
+	/**
+	 * Parse pay rules, a comma separated list of round:&lt;minutes&gt;, unpaid-breaks and paid-lunch.
+	 * Anything not listed keeps the standard rule.
+	 * @param setting The rules, e.g. round:15,paid-lunch
+	 * @return the rules
+	 */
+
+	public static PayRules parse(String setting) {
+		int rounding = 1;
+		boolean breaksPaid = true;
+		boolean lunchPaid = false;
+		for(String rule: setting.split(",")) {
+			rule = rule.trim();
+			if(rule.startsWith("round:")) {
+				rounding = Integer.parseInt(rule.substring("round:".length()));
+			} else if(rule.equals("unpaid-breaks")) {
+				breaksPaid = false;
+			} else if(rule.equals("paid-lunch")) {
+				lunchPaid = true;
+			} else if(!rule.isEmpty()) {
+				throw new IllegalArgumentException("Unknown pay rule: " + rule);
+			}
+		}
+		return new PayRules(rounding, breaksPaid, lunchPaid);
+	}
+
+	/**
+	 * @param epochMinute A punch time in minutes since the epoch
+	 * @return the punch time rounded to the nearest rounding interval, halves rounded up
+	 */
+
+	public int round(int epochMinute) {
+		if(roundingMinutes == 1) {
+			return epochMinute;
+		}
+		return (int) (Math.floorDiv(epochMinute + (long) roundingMinutes / 2, (long) roundingMinutes) * roundingMinutes);
+	}
+
+	/**
+	 * @param shiftMinutes	Minutes between clock-in and clock-out
+	 * @param breakMinutes	Minutes on break
+	 * @param lunchMinutes	Minutes on lunch
+	 * @return the paid minutes
+	 */
+
+	public long paidMinutes(long shiftMinutes, long breakMinutes, long lunchMinutes) {
+		long paid = shiftMinutes - (breaksPaid ? 0 : breakMinutes) - (lunchPaid ? 0 : lunchMinutes);
+		return Math.max(0, paid);
+	}
+
+	@Override
+	public String toString() {
+		return "round:" + roundingMinutes + (breaksPaid ? "" : ",unpaid-breaks") + (lunchPaid ? ",paid-lunch" : "");
+	}
+}//PayRules
@@ -0,0 +1,68 @@
+package time.clock.data;
+
+/**
+ * An employee's shift, break and lunch state changing, as published by the {@link PresenceFeed}.
+ */
+
+public class PresenceEvent {
+	private String employeeID;	//The employee whose state changed
+	private int previousState;	//State bits before the change
+	private int state;			//State bits after the change
+	private long millis;		//When the change was made
+
+	public PresenceEvent(String employeeID, int previousState, int state, long millis) {
+		this.employeeID = employeeID;
+		this.previousState = previousState;
+		this.state = state;
+		this.millis = millis;
+	}
+
+	public String getEmployeeID() {
+		return employeeID;
+	}
+
+	/**
+	 * @return the shift, break and lunch state bits before the change
+	 */
+
+	public int getPreviousState() {
+		return previousState;
+	}
+
+	/**
+	 * @return the shift, break and lunch state bits after the change
+	 */
+
+	public int getState() {
+		return state;
+	}
+
+	public boolean isOnShift() {
+		return (state & Employee.ON_SHIFT) != 0;
+	}
+
+	public boolean isOnBreak() {
+		return (state & Employee.ON_BREAK) != 0;
+	}
+
+	public boolean isOnLunch() {
+		return (state & Employee.ON_LUNCH) != 0;
+	}
+
+	/**
+	 * @return when the change was made, in epoch milliseconds
+	 */
+
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * @return the event as employeeID,onShift,onBreak,onLunch, the layout of GET /employees/ID without the role
+	 */
+
+	@Override
+	public String toString() {
+		return employeeID + "," + isOnShift() + "," + isOnBreak() + "," + isOnLunch();
+	}
+}//PresenceEvent
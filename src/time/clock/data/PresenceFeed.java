@@ -0,0 +1,391 @@
+package time.clock.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Live feed of who is on shift, on break and on lunch. The engine reports every state change, which
+ * updates the live counts and is published to subscribers. Subscribers follow the publish and subscribe
+ * protocol of java.util.concurrent.Flow: they ask for events with {@link Subscription#request(long)} and
+ * are never sent more than they asked for. Punches only hand each change to a dispatcher thread, which
+ * gathers the changes of a few milliseconds and copies them to every subscriber's buffer at once. Each
+ * subscriber belongs to one of a few delivery threads, which go round their subscribers delivering what
+ * each has asked for, so a slow subscriber never holds up a punch. A subscriber that lets its buffer fill
+ * is sent onError and dropped, and can subscribe again and start from the current state.
+ */
+
+public class PresenceFeed {
+
+	/**
+	 * Receives the feed's events, as java.util.concurrent.Flow.Subscriber does. Calls are never concurrent.
+	 */
+
+	public interface Subscriber {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(PresenceEvent event);
+
+		void onError(Throwable failure);
+
+		void onComplete();
+	}
+
+	/**
+	 * A subscriber's demand for events, as java.util.concurrent.Flow.Subscription is.
+	 */
+
+	public interface Subscription {
+		void request(long events);
+
+		void cancel();
+	}
+
+	public static final int BUFFER_EVENTS = 1024;	//Events held for a subscriber that has not asked for them, a power of two
+
+	private static final long BATCH_MILLIS = 2;		//How long the dispatcher gathers changes before copying them out
+
+	private static final int SHIFT = 0;				//Count indexes
+	private static final int BREAK = 1;
+	private static final int LUNCH = 2;
+	private static final PresenceEvent CLOSED = new PresenceEvent(null, 0, 0, 0);
+
+	private AtomicIntegerArray counts;				//Employees on shift, on break and on lunch
+	private List<Link> links;						//Current subscribers
+	private BlockingQueue<PresenceEvent> published;	//Changes waiting for the dispatcher
+	private Thread dispatcher;						//Copies the changes to every subscriber
+	private Worker[] workers;						//Deliver to the subscribers
+	private AtomicLong subscriptions;				//Subscriptions made, to share them out between the workers
+	private AtomicLong eventsPublished;				//Changes published since startup
+	private AtomicLong subscribersDropped;			//Subscribers dropped for letting their buffer fill
+	private volatile boolean closed;
+
+	/**
+	 * Set up the feed with nobody on shift.
+	 */
+
+	public PresenceFeed() {
+		counts = new AtomicIntegerArray(3);
+		links = new CopyOnWriteArrayList<Link>();
+		published = new LinkedBlockingQueue<PresenceEvent>();
+		subscriptions = new AtomicLong();
+		eventsPublished = new AtomicLong();
+		subscribersDropped = new AtomicLong();
+		workers = new Worker[Math.max(1, Runtime.getRuntime().availableProcessors() / 2)];
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker("presence-delivery-" + i);
+			workers[i].start();
+		}
+		dispatcher = new Thread(this::dispatch, "presence-dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Count the employees' current states again, e.g. once they are set at startup.
+	 * @param employees Every registered employee
+	 */
+
+	void recount(Collection<Employee> employees) {
+		int[] counted = new int[3];
+		for(Employee employee: employees) {
+			int state = employee.getState();
+			counted[SHIFT] += state & Employee.ON_SHIFT;
+			counted[BREAK] += (state & Employee.ON_BREAK) >> 1;
+			counted[LUNCH] += (state & Employee.ON_LUNCH) >> 2;
+		}
+		for(int i = 0; i < counted.length; i++) {
+			counts.set(i, counted[i]);
+		}
+	}
+
+	/**
+	 * Record an employee's state change. Called under the employee's lock, so each employee's changes
+	 * are published in the order they were made.
+	 * @param employeeID	The employee
+	 * @param previous		State bits before the change
+	 * @param state			State bits after the change
+	 */
+
+	void changed(String employeeID, int previous, int state) {
+		if(previous == state) {
+			return;
+		}
+		int changedBits = previous ^ state;
+		if((changedBits & Employee.ON_SHIFT) != 0) {
+			counts.addAndGet(SHIFT, (state & Employee.ON_SHIFT) != 0 ? 1 : -1);
+		}
+		if((changedBits & Employee.ON_BREAK) != 0) {
+			counts.addAndGet(BREAK, (state & Employee.ON_BREAK) != 0 ? 1 : -1);
+		}
+		if((changedBits & Employee.ON_LUNCH) != 0) {
+			counts.addAndGet(LUNCH, (state & Employee.ON_LUNCH) != 0 ? 1 : -1);
+		}
+		eventsPublished.incrementAndGet();
+		//Nothing is allocated for a change nobody is listening to
+		if(!links.isEmpty() && !closed) {
+			published.add(new PresenceEvent(employeeID, previous, state, System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Subscribe to the feed. onSubscribe is called before this returns, and events made from then on are
+	 * buffered until the subscriber asks for them.
+	 * @param subscriber The subscriber
+	 */
+
+	public void subscribe(Subscriber subscriber) {
+		Worker worker = workers[(int) (subscriptions.getAndIncrement() % workers.length)];
+		Link link = new Link(subscriber, worker);
+		subscriber.onSubscribe(link);
+		if(closed) {
+			link.complete();
+		}
+		links.add(link);
+		worker.links.add(link);
+	}
+
+	private void dispatch() {
+		List<PresenceEvent> batch = new ArrayList<PresenceEvent>();
+		boolean closing = false;
+		try {
+			while(!closing) {
+				//Wake the workers once for the changes of a few milliseconds rather than once for each change
+				batch.add(published.take());
+				Thread.sleep(BATCH_MILLIS);
+				published.drainTo(batch);
+				int end = batch.indexOf(CLOSED);
+				if(end >= 0) {
+					batch.subList(end, batch.size()).clear();
+					closing = true;
+				}
+				for(Link link: links) {
+					link.offer(batch);
+				}
+				batch.clear();
+				for(Worker worker: workers) {
+					LockSupport.unpark(worker);
+				}
+			}
+		} catch (InterruptedException e) {
+			//Closing
+		}
+		for(Link link: links) {
+			link.complete();
+		}
+	}
+
+	/**
+	 * @return the number of employees on shift, including those on break or lunch
+	 */
+
+	public int getOnShift() {
+		return counts.get(SHIFT);
+	}
+
+	public int getOnBreak() {
+		return counts.get(BREAK);
+	}
+
+	public int getOnLunch() {
+		return counts.get(LUNCH);
+	}
+
+	/**
+	 * @return the number of current subscribers
+	 */
+
+	public int getSubscribers() {
+		return links.size();
+	}
+
+	/**
+	 * @return the live counts and subscribers in the Prometheus text format
+	 */
+
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		text.append("# TYPE timeclock_presence_employees gauge\n");
+		text.append("timeclock_presence_employees{state=\"shift\"} ").append(getOnShift()).append('\n');
+		text.append("timeclock_presence_employees{state=\"break\"} ").append(getOnBreak()).append('\n');
+		text.append("timeclock_presence_employees{state=\"lunch\"} ").append(getOnLunch()).append('\n');
+		text.append("# TYPE timeclock_presence_subscribers gauge\n");
+		text.append("timeclock_presence_subscribers ").append(getSubscribers()).append('\n');
+		text.append("# TYPE timeclock_presence_events_total counter\n");
+		text.append("timeclock_presence_events_total ").append(eventsPublished.get()).append('\n');
+		text.append("# TYPE timeclock_presence_dropped_subscribers_total counter\n");
+		text.append("timeclock_presence_dropped_subscribers_total ").append(subscribersDropped.get()).append('\n');
+		return text.toString();
+	}
+
+	/**
+	 * Complete every subscriber once the changes already published are delivered, and stop the threads.
+	 */
+
+	void close() {
+		closed = true;
+		published.add(CLOSED);
+		try {
+			dispatcher.join(1000);
+			for(Worker worker: workers) {
+				worker.stopping = true;
+				LockSupport.unpark(worker);
+				worker.join(1000);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Goes round its subscribers delivering what each has buffered and asked for, and waits when none has
+	 * anything to deliver.
+	 */
+
+	private class Worker extends Thread {
+		private List<Link> links;				//The worker's subscribers
+		private volatile boolean stopping;		//If the feed closed
+
+		private Worker(String name) {
+			super(name);
+			setDaemon(true);
+			links = new CopyOnWriteArrayList<Link>();
+		}
+
+		@Override
+		public void run() {
+			while(true) {
+				boolean delivered = false;
+				for(Link link: links) {
+					delivered |= link.deliver();
+				}
+				if(!delivered) {
+					if(stopping) {
+						return;
+					}
+					//Woken by new events, more demand, or closing
+					LockSupport.park(this);
+				}
+			}
+		}
+	}//Worker
+
+	/**
+	 * One subscriber's buffer and demand. Only the subscriber's worker delivers to it, so calls to the
+	 * subscriber are never concurrent. The buffer is a ring with one writer, the dispatcher, and one reader,
+	 * the worker.
+	 */
+
+	private class Link implements Subscription {
+		private Subscriber subscriber;				//Who the events go to
+		private Worker worker;						//Delivers to the subscriber
+		private PresenceEvent[] buffer;				//Events not yet delivered, at head to tail
+		private volatile long head;					//Events taken from the buffer
+		private volatile long tail;					//Events put in the buffer
+		private AtomicLong demand;					//Events asked for and not yet delivered
+		private volatile Throwable failure;			//Error to deliver, e.g. the buffer filled
+		private volatile boolean completed;			//If the feed closed
+		private volatile boolean cancelled;			//If the subscription is over
+
+		private Link(Subscriber subscriber, Worker worker) {
+			this.subscriber = subscriber;
+			this.worker = worker;
+			buffer = new PresenceEvent[BUFFER_EVENTS];
+			demand = new AtomicLong();
+		}
+
+		@Override
+		public void request(long events) {
+			if(events <= 0) {
+				failure = new IllegalArgumentException("Requested " + events + " events, must be positive");
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					//Demand that overflows stays at Long.MAX_VALUE, which means unbounded, as Flow asks
+					next = current + events < 0 ? Long.MAX_VALUE : current + events;
+				} while(!demand.compareAndSet(current, next));
+			}
+			LockSupport.unpark(worker);
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			links.remove(this);
+			worker.links.remove(this);
+		}
+
+		private void offer(List<PresenceEvent> events) {
+			if(cancelled || failure != null) {
+				return;
+			}
+			long end = tail;
+			for(PresenceEvent event: events) {
+				if(end - head == BUFFER_EVENTS) {
+					failure = new IllegalStateException("Presence subscriber fell " + BUFFER_EVENTS + " events behind");
+					subscribersDropped.incrementAndGet();
+					break;
+				}
+				buffer[(int) end & (BUFFER_EVENTS - 1)] = event;
+				end++;
+			}
+			tail = end;
+		}
+
+		private void complete() {
+			completed = true;
+			LockSupport.unpark(worker);
+		}
+
+		/**
+		 * Deliver whatever is buffered and asked for.
+		 * @return true if anything was delivered
+		 */
+
+		private boolean deliver() {
+			if(cancelled) {
+				return false;
+			}
+			Throwable failed = failure;
+			if(failed != null) {
+				cancel();
+				subscriber.onError(failed);
+				return true;
+			}
+			long start = head;
+			long end = tail;
+			long next = start;
+			try {
+				while(next < end && demand.get() > 0 && !cancelled) {
+					int slot = (int) next & (BUFFER_EVENTS - 1);
+					PresenceEvent event = buffer[slot];
+					buffer[slot] = null;
+					next++;
+					head = next;
+					if(demand.get() != Long.MAX_VALUE) {
+						demand.decrementAndGet();
+					}
+					subscriber.onNext(event);
+				}
+			} catch (RuntimeException e) {
+				//A subscriber that throws is cancelled, as Flow asks
+				cancel();
+				return true;
+			}
+			if(completed && head == tail && !cancelled) {
+				cancel();
+				subscriber.onComplete();
+				return true;
+			}
+			return next != start;
+		}
+	}//Link
+}//PresenceFeed
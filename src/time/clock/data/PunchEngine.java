@@ -0,0 +1,1015 @@
+package time.clock.data;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread safe core of the time clock, shared by every terminal session. Owns the employee registry,
+ * activity store and punch journal, and applies the shift, break and lunch rules to each punch.
+ */
+
+public class PunchEngine {
+
+	private static final int LOCK_STRIPES = 64;					//Number of locks punches are spread over by employee ID
+	private static final int REPORT_CACHE_ENTRIES = 1024;		//Most rendered reports cached
+	private static final long REPORT_CACHE_CHARS = 16L << 20;	//Most characters of rendered reports cached
+	private static final int REPORT_CHUNK = 1000;				//Rows read at a time when rendering a report
+	private static final long ROLLOVER_CHECK_SECONDS = 60;		//How often the scheduler checks if the day is over
+
+	private File dataDirectory;				//Directory holding the employee, calendar and journal files
+	private volatile LocalDate today;		//Today's date, moved on at midnight by the rollover
+	private volatile long tomorrowMillis;	//When today ends
+	private EmployeeRegistry employees;		//Registry of Employees indexed by ID
+	private EmployeeIds ids;				//Dictionary of employee ordinals used by the journal and store
+	private volatile ActivityStore listActivities;	//Today's activities, indexed by employee
+	private volatile ActivityStore history;	//Activities before today, loaded the first time a report needs them
+	private PunchJournal journal;			//Binary journal of every punch
+	private PayPeriod payPeriod;			//How days are grouped into pay periods
+	private volatile HoursAggregator hours;	//Running worked hours totals, worked out the first time they are needed
+	private volatile Queue<Activity> recomputing;	//Activities recorded while the hours are recomputed
+	private Object[] stripes;				//Locks that make each employee's state change and journal append atomic
+	private File snapshotFile;				//Checkpoint of the in-memory state
+	private JournalPosition lastSnapshot;	//Journal position of the last snapshot written or loaded
+	private int lastSnapshotEmployees;		//Employees in the last snapshot written or loaded
+	private ScheduledExecutorService snapshots;	//Writes a snapshot every interval, null if snapshots are off
+	private ScheduledExecutorService rollovers;	//Moves on to the next day after midnight
+	private EngineMetrics metrics;			//Latencies, counters and memory use, also registered with JMX
+	private ReportCache reportCache;		//Rendered single employee reports, dropped when the employee punches
+	private PresenceFeed presence;			//Live counts and changes of who is on shift, break or lunch
+	private volatile Throwable journalFailure;	//First failed journal write, punches are refused from then on
+
+	/**
+	 * Load the engine from the files in a data directory. If there is a snapshot, it is loaded and only
+	 * the journal written after it is replayed.
+	 * @param dataDirectory	Directory holding employees.txt and the punch journal
+	 * @param policy		When punches are forced to disk
+	 */
+
+	public PunchEngine(File dataDirectory, DurabilityPolicy policy) {
+		long start = System.nanoTime();
+		this.dataDirectory = dataDirectory;
+		today = LocalDate.now(TimeFormats.ZONE);
+		tomorrowMillis = TimeFormats.toEpochMinute(today.plusDays(1).atStartOfDay()) * 60000L;
+		ids = new EmployeeIds(new File(dataDirectory, "calendar.ids"));
+		listActivities = new ActivityStore(ids);
+		employees = new EmployeeRegistry(ids);
+		history = null;
+		payPeriod = PayPeriod.fromSystemProperty();
+		hours = null;
+		metrics = new EngineMetrics(() -> listActivities.size(), () -> {
+			ActivityStore older = history;
+			return older == null ? 0 : older.size();
+		}, employees::size);
+		journal = new PunchJournal(dataDirectory, ids, policy, metrics);
+		reportCache = new ReportCache(REPORT_CACHE_ENTRIES, REPORT_CACHE_CHARS);
+		presence = new PresenceFeed();
+		stripes = new Object[LOCK_STRIPES];
+		for(int i = 0; i < LOCK_STRIPES; i++) {
+			stripes[i] = new Object();
+		}
+		snapshotFile = new File(dataDirectory, "timeclock.snapshot");
+		int interval = EngineSnapshot.intervalFromSystemProperty();
+		EngineSnapshot snapshot = interval > 0 && journal.exists() ? EngineSnapshot.read(snapshotFile) : null;
+		if(snapshot != null) {
+			restore(snapshot);
+		} else {
+			initializeEmployees(0);
+			initializeCalendar();
+		}
+		if(interval > 0) {
+			snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "snapshot-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshots.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MINUTES);
+		}
+		rollovers = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "day-rollover");
+			thread.setDaemon(true);
+			return thread;
+		});
+		rollovers.scheduleAtFixedRate(() -> {
+			try {
+				rollOverIfDue();
+			} catch (RuntimeException e) {
+				//Keep checking, the next punch or check tries again
+				metrics.failed(e);
+			}
+		}, ROLLOVER_CHECK_SECONDS, ROLLOVER_CHECK_SECONDS, TimeUnit.SECONDS);
+		metrics.setStartupMillis((System.nanoTime() - start) / 1000000);
+		metrics.register(dataDirectory.getAbsolutePath());
+	}
+
+	/**
+	 * Initialize employee list from external file.
+	 * @param offset Bytes of the file already loaded, e.g. from a snapshot
+	 */
+
+	private void initializeEmployees(long offset) {
+		//File location
+		File f = new File(dataDirectory, "employees.txt");
+		final List<Employee> loaded = new ArrayList<Employee>();
+		try {
+			//Read the lines past the offset in CSV format and set up each employee
+			FileChannel input = FileChannel.open(f.toPath());
+			try {
+				input.position(offset);
+				CsvParser parser = new CsvParser(input, Charset.defaultCharset());
+				parser.readEmployees((employeeID, role) -> loaded.add(new Employee(employeeID, role)));
+				parser.reportMalformed(offset == 0 ? f.getName() : f.getName() + " past the snapshot");
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			//File is assumed to be here, no error handling here
+			e.printStackTrace();
+		}
+
+		//Bulk load the registry once the whole file is read
+		employees.registerAll(loaded);
+	}
+
+	/**
+	 * Initialize today's activities and employee flags from today's part of the journal only.
+	 * Older history is loaded once a report or the worked hours need it.
+	 */
+
+	private void initializeCalendar() {
+		//The first start after an upgrade splits the single file journal into months, or converts the old CSV calendar.
+		File singleJournal = new File(dataDirectory, "calendar.dat");
+		File calendarFile = new File(dataDirectory, "calendar.txt");
+		if(!journal.exists() && singleJournal.exists()) {
+			long moved = journal.split(singleJournal);
+			System.out.println("Split " + moved + " punches into monthly journal segments.");
+		} else if(!journal.exists() && calendarFile.exists()) {
+			long converted = journal.convert(calendarFile);
+			System.out.println("Converted " + converted + " calendar lines into the punch journal.");
+		}
+
+		final int todayStart = TimeFormats.toEpochMinute(today.atStartOfDay());
+		final int tomorrowStart = TimeFormats.toEpochMinute(today.plusDays(1).atStartOfDay());
+		long start = System.nanoTime();
+		long loaded = journal.read(todayStart, tomorrowStart, (ordinal, type, epochMinute) -> {
+			listActivities.add(ordinal, type, epochMinute);
+		});
+		//Only set the flags for today in case if the user logs out today. History is forgotten past the current day.
+		setStatesFromToday();
+		System.out.println("Loaded " + loaded + " punches in " + (System.nanoTime() - start) / 1000000 + " ms.");
+	}
+
+	/**
+	 * Restore the registry and worked hours from a snapshot and replay the journal written after it.
+	 * The flags are set from today's punches, as they are when the journal is read in full. If the tail
+	 * holds a punch older than one already in an employee's hours, e.g. from an import, the hours are
+	 * worked out again the first time they are needed.
+	 */
+
+	private void restore(EngineSnapshot snapshot) {
+		long start = System.nanoTime();
+		employees.registerAll(snapshot.getEmployees());
+		initializeEmployees(snapshot.getEmployeesLength());
+
+		PayRules rules = PayRules.fromSystemProperty();
+		Timesheet[] timesheets = snapshot.getTimesheets(payPeriod, rules);
+		final HoursAggregator restored = timesheets == null ? null : new HoursAggregator(ids, payPeriod, rules, timesheets);
+		final boolean[] inOrder = {true};
+		long replayed = journal.readAfter(snapshot.getPosition(), (ordinal, type, epochMinute) -> {
+			if(restored != null && inOrder[0]) {
+				inOrder[0] = restored.applyInOrder(ordinal, type, epochMinute);
+			}
+		});
+
+		final int todayStart = TimeFormats.toEpochMinute(today.atStartOfDay());
+		final int tomorrowStart = TimeFormats.toEpochMinute(today.plusDays(1).atStartOfDay());
+		journal.read(todayStart, tomorrowStart, (ordinal, type, epochMinute) -> {
+			listActivities.add(ordinal, type, epochMinute);
+		});
+		setStatesFromToday();
+		if(restored != null && inOrder[0]) {
+			restored.closeDaysBefore(today);
+		}
+		hours = inOrder[0] ? restored : null;
+		lastSnapshot = snapshot.getPosition();
+		lastSnapshotEmployees = snapshot.getEmployees().size();
+		System.out.println("Restored a snapshot of " + snapshot.getEmployees().size() + " employees and replayed " + replayed
+				+ " punches in " + (System.nanoTime() - start) / 1000000 + " ms.");
+	}
+
+	/**
+	 * Set every employee's flags from their punches today, in time order.
+	 */
+
+	private void setStatesFromToday() {
+		for(Employee employee: employees.getAll()) {
+			employee.setState(stateFromToday(employee.getUniqueID()));
+		}
+		presence.recount(employees.getAll());
+	}
+
+	/**
+	 * Set an employee's flags outside a punch, e.g. from replicated or imported punches, and publish the change.
+	 */
+
+	private void changeState(Employee employee, int state) {
+		presence.changed(employee.getUniqueID(), employee.getAndSetState(state), state);
+	}
+
+	private int stateFromToday(String employeeID) {
+		int state = 0;
+		for(int row: listActivities.getRows(employeeID)) {
+			state = ShiftStates.next(state, listActivities.getCode(row));
+		}
+		return state;
+	}
+
+	/**
+	 * Write a snapshot of the registry, flags and worked hours if anything changed since the last one.
+	 * The state is copied holding every employee lock so it matches the journal position exactly, and the
+	 * snapshot is only written once every punch it includes is durable. Worked hours are only included if
+	 * they are already worked out, so a snapshot never loads the history.
+	 * @return true if a snapshot was written
+	 */
+
+	public synchronized boolean checkpoint() {
+		if(journalFailure != null) {
+			//The state holds punches the journal does not, so the last snapshot is kept
+			return false;
+		}
+		if(journal.position().equals(lastSnapshot) && employees.size() == lastSnapshotEmployees) {
+			return false;
+		}
+		final HoursAggregator totals = hours;
+		final List<Employee> copies = new ArrayList<Employee>();
+		final long[] employeesLength = new long[1];
+		final JournalPosition[] position = new JournalPosition[1];
+		final Timesheet[][] timesheets = new Timesheet[1][];
+		lockAll(0, () -> {
+			synchronized(employees) {
+				employeesLength[0] = new File(dataDirectory, "employees.txt").length();
+				for(Employee employee: employees.getAll()) {
+					Employee copy = new Employee(employee.getUniqueID(), employee.getRole());
+					copy.setState(employee.getState());
+					copies.add(copy);
+				}
+			}
+			position[0] = journal.position();
+			timesheets[0] = totals == null ? null : totals.copyTimesheets();
+		});
+		journal.flush();
+		try {
+			new EngineSnapshot(today, employeesLength[0], copies, position[0], payPeriod,
+					totals == null ? PayRules.fromSystemProperty() : totals.getRules(), timesheets[0]).write(snapshotFile);
+		} catch (IOException e) {
+			//File is assumed to be writable, no error handling here
+			metrics.failed(e);
+			return false;
+		}
+		lastSnapshot = position[0];
+		lastSnapshotEmployees = copies.size();
+		return true;
+	}
+
+	/**
+	 * Roll over to the new day if today is over, e.g. before the first punch after midnight.
+	 */
+
+	private void rollOverIfDue() {
+		if(System.currentTimeMillis() >= tomorrowMillis) {
+			rollOver(LocalDate.now(TimeFormats.ZONE));
+		}
+	}
+
+	/**
+	 * Move on to a new day without reloading anything. Only the employees who punched on the day that ended
+	 * are touched: whatever they still have open is closed at midnight in their worked hours, their totals
+	 * for the day are archived, and their flags start again from their punches on the new day. The day's
+	 * punches move into the history if it is loaded, otherwise the history is read from the journal as usual.
+	 * @param day The new day
+	 * @return the number of employees whose day was closed
+	 */
+
+	public synchronized int rollOver(final LocalDate day) {
+		if(!day.isAfter(today)) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		final LocalDate endedDay = today;
+		final int dayStart = TimeFormats.toEpochMinute(day.atStartOfDay());
+		final HoursAggregator totals = hours;
+		final int[][] active = new int[1][];
+		final ActivityStore[] ended = new ActivityStore[1];
+		lockAll(0, () -> {
+			ActivityStore ending = listActivities;
+			ended[0] = ending;
+			ActivityStore next = new ActivityStore(ids);
+			//Punches already made on the new day, by a terminal that got there before the rollover, stay live
+			next.addRange(ending, dayStart, Integer.MAX_VALUE);
+			ActivityStore older = history;
+			if(older != null) {
+				older.addRange(ending, Integer.MIN_VALUE, dayStart);
+			}
+			active[0] = ending.getEmployeeOrdinals();
+			listActivities = next;
+			today = day;
+			tomorrowMillis = TimeFormats.toEpochMinute(day.plusDays(1).atStartOfDay()) * 60000L;
+			for(int ordinal: active[0]) {
+				if(totals != null) {
+					totals.closeDayBefore(ordinal, day);
+				}
+				Employee employee = employees.get(ordinal);
+				if(employee != null) {
+					changeState(employee, stateFromToday(employee.getUniqueID()));
+				}
+			}
+		});
+		//Worked out from the day's own punches if the hours were never needed, as open shifts end at midnight anyway
+		archiveHours(endedDay, active[0], totals != null ? totals : dayHours(ended[0], active[0], endedDay, day));
+		System.out.println("Rolled over to " + TimeFormats.DATE.format(day) + ", closed the day of " + active[0].length + " employees in "
+				+ (System.nanoTime() - start) / 1000 + " us.");
+		return active[0].length;
+	}
+
+	/**
+	 * Work out the worked hours of a day from its punches alone, for employees who punched on it.
+	 * @param store		Store holding the day's punches
+	 * @param ordinals	The employees who punched on the day
+	 * @param day		The day
+	 * @param next		The day after, whose start closes anything still open
+	 * @return totals holding the day for each of the employees
+	 */
+
+	private HoursAggregator dayHours(ActivityStore store, int[] ordinals, LocalDate day, LocalDate next) {
+		HoursAggregator totals = new HoursAggregator(ids, payPeriod, PayRules.fromSystemProperty());
+		int dayStart = TimeFormats.toEpochMinute(day.atStartOfDay());
+		int dayEnd = TimeFormats.toEpochMinute(next.atStartOfDay());
+		for(int ordinal: ordinals) {
+			for(int row: store.getRows(ids.get(ordinal))) {
+				int minute = store.getEpochMinute(row);
+				if(minute >= dayStart && minute < dayEnd) {
+					totals.apply(ordinal, store.getCode(row), minute);
+				}
+			}
+			totals.closeDayBefore(ordinal, next);
+		}
+		return totals;
+	}
+
+	/**
+	 * Write the worked hours of the employees who punched on a day to archive/hours-yyyy-MM-dd.csv, as
+	 * employee,paidMinutes,breakMinutes,lunchMinutes lines.
+	 */
+
+	private void archiveHours(LocalDate day, int[] ordinals, HoursAggregator totals) {
+		File archive = new File(dataDirectory, "archive");
+		archive.mkdirs();
+		try {
+			FileWriter out = new FileWriter(new File(archive, "hours-" + day + ".csv"));
+			StringBuilder line = new StringBuilder();
+			for(int ordinal: ordinals) {
+				String employeeID = ids.get(ordinal);
+				Hours worked = totals.getDay(employeeID, day);
+				line.setLength(0);
+				line.append(employeeID).append(',').append(worked.getPaidMinutes()).append(',').append(worked.getBreakMinutes())
+					.append(',').append(worked.getLunchMinutes()).append('\n');
+				out.write(line.toString());
+			}
+			out.close();
+		} catch (IOException e) {
+			//File is assumed to be writable, no error handling here
+			metrics.failed(e);
+		}
+	}
+
+	/**
+	 * @return the day the engine is on, moved on at midnight
+	 */
+
+	public LocalDate getToday() {
+		return today;
+	}
+
+	/**
+	 * Load the activities before today for reports. Only done once, today's activities stay in their own store.
+	 * @return the history store
+	 */
+
+	private ActivityStore loadHistory() {
+		ActivityStore loaded = history;
+		if(loaded != null) {
+			return loaded;
+		}
+		synchronized(this) {
+			if(history == null) {
+				final ActivityStore older = new ActivityStore(ids);
+				final int todayStart = TimeFormats.toEpochMinute(today.atStartOfDay());
+				journal.read(Integer.MIN_VALUE, todayStart, (ordinal, type, epochMinute) -> {
+					older.add(ordinal, type, epochMinute);
+				});
+				history = older;
+			}
+			return history;
+		}
+	}
+
+	/**
+	 * Register a new employee and write it to the employees file.
+	 * @param employeeID	The employee ID
+	 * @param role			The role of the employee
+	 * @return true if the employee was added, false if the ID was already registered
+	 */
+
+	public boolean register(String employeeID, String role) {
+		//Format is: employeeID,role
+		String writeToFile = employeeID + "," + role + "\n";
+		synchronized(employees) {
+			//Register first so a duplicate ID is never written to the file, even if two terminals race.
+			//Both happen under the lock so a snapshot always sees the registry and file agree.
+			if(!employees.register(new Employee(employeeID, role))) {
+				return false;
+			}
+			try {
+				FileWriter fw = new FileWriter(new File(dataDirectory, "employees.txt"), true);
+				fw.write(writeToFile);
+				fw.close();
+			} catch (IOException e) {
+				//File is assumed to be here, no error handling here
+				e.printStackTrace();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Function to check if employee ID entered is an employee
+	 * @param employeeID employee ID
+	 * @return true if employee is registered, false otherwise
+	 */
+
+	public boolean isEmployee(String employeeID) {
+		return employees.contains(employeeID);
+	}
+
+	/**
+	 * Get an employee based on the employee ID
+	 * @param employeeID employee ID
+	 * @return the matching Employee object, or null if not registered
+	 */
+
+	public Employee getEmployee(String employeeID) {
+		return employees.get(employeeID);
+	}
+
+	/**
+	 * Make a punch for an employee. The rules are checked and the employee's state changed under the
+	 * employee's lock, so two terminals can never both clock in the same employee. Admins may make any punch.
+	 * Waits until the punch is durable. If the journal fails the punch is not acknowledged, and as today's
+	 * activities and hours already hold it, no more punches are taken until the engine is started again.
+	 * @param employeeID	The employee making the punch
+	 * @param action		Type of action the employee made.
+	 * @return the recorded activity, or why the punch was rejected or not saved
+	 */
+
+	public PunchResult punch(String employeeID, ActivityType action) {
+		long start = System.nanoTime();
+		rollOverIfDue();
+		Employee employee = employees.get(employeeID);
+		if(employee == null) {
+			return new PunchResult(PunchResult.Status.NOT_AN_EMPLOYEE, null);
+		}
+		if(journalFailure != null) {
+			return new PunchResult(PunchResult.Status.NOT_SAVED, null);
+		}
+		boolean isAdmin = employee.getRole().equals("admin");
+
+		Object stripe = stripes[(employeeID.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+		Activity activity;
+		CompletableFuture<Void> durable;
+		int state;
+		int transition;
+		synchronized(stripe) {
+			do {
+				state = employee.getState();
+				transition = ShiftStates.transition(state, action.getCode());
+				if(!isAdmin && !ShiftStates.isAllowed(transition)) {
+					metrics.punchRejected();
+					return new PunchResult(ShiftStates.status(transition), null);
+				}
+			} while(!employee.compareAndSetState(state, ShiftStates.next(transition)));
+
+			activity = new Activity(employeeID, action, LocalDateTime.now(TimeFormats.ZONE).truncatedTo(ChronoUnit.MINUTES));
+			durable = recordActivity(activity);
+			presence.changed(employeeID, state, ShiftStates.next(transition));
+		}
+
+		//Wait for the journal outside the lock so other punches for this stripe can be queued meanwhile.
+		try {
+			durable.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if(journalFailure == null) {
+				journalFailure = e.getCause();
+			}
+			metrics.failed(e);
+			//Put the employee back as they were, unless they punched again meanwhile
+			synchronized(stripe) {
+				if(employee.compareAndSetState(ShiftStates.next(transition), state)) {
+					presence.changed(employeeID, ShiftStates.next(transition), state);
+				}
+			}
+			return new PunchResult(PunchResult.Status.NOT_SAVED, null);
+		}
+		metrics.punchRecorded(start);
+		return new PunchResult(PunchResult.Status.RECORDED, activity);
+	}
+
+	/**
+	 * Record the activity in the list of activities and worked hours and queue it for the journal.
+	 * @param activity The activity made by the employee
+	 * @return a future completed once the activity is durable
+	 */
+
+	private CompletableFuture<Void> recordActivity(Activity activity) {
+		listActivities.add(activity);
+		//After the add, so a report rendered from here on includes the punch
+		reportCache.invalidate(activity.getEmployeeID());
+		HoursAggregator totals = hours;
+		if(totals != null) {
+			totals.apply(activity);
+		}
+		Queue<Activity> pending = recomputing;
+		if(pending != null) {
+			pending.add(activity);
+		}
+		return journal.append(activity.getEmployeeID(), activity.getActivity(), activity.getDateTime());
+	}
+
+	/**
+	 * Set up an empty bulk import for this engine's registered employees.
+	 * @return the import, to read punches into and pass to {@link #importPunches(PunchImport)}
+	 */
+
+	public PunchImport newImport() {
+		return new PunchImport(employeeID -> employees.contains(employeeID) ? ids.intern(employeeID) : -1);
+	}
+
+	/**
+	 * Record punches made elsewhere, e.g. on a kiosk that was offline. Each employee's punches are checked
+	 * against the shift, break and lunch rules in time order together with the punches already recorded,
+	 * and repeats of a recorded punch are skipped. Accepted punches are journaled in large batches.
+	 * Live punches carry on meanwhile, each employee is only locked while their own punches are checked.
+	 * @param punches The punches read for the import
+	 * @return how many punches were recorded, and why the others were not
+	 */
+
+	public synchronized ImportResult importPunches(PunchImport punches) {
+		long start = System.nanoTime();
+		punches.group();
+		ActivityStore older = loadHistory();
+		HoursAggregator totals = hours;
+		int now = TimeFormats.toEpochMinute(LocalDateTime.now(TimeFormats.ZONE));
+		int todayStart = TimeFormats.toEpochMinute(today.atStartOfDay());
+		int[] ordinals = new int[punches.size()];
+		byte[] codes = new byte[punches.size()];
+		int[] minutes = new int[punches.size()];
+		int accepted = 0;
+		long duplicates = 0;
+		long rejected = 0;
+
+		for(int group = 0; group < punches.getGroupCount(); group++) {
+			int first = punches.getGroupStart(group);
+			int last = punches.getGroupEnd(group);
+			int ordinal = punches.getEmployee(first);
+			String employeeID = ids.get(ordinal);
+			Employee employee = employees.get(ordinal);
+			boolean isAdmin = employee.getRole().equals("admin");
+			synchronized(stripes[(employeeID.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+				//The employee's recorded punches in time order: history first, then today's
+				int[] olderRows = older.getRows(employeeID);
+				int[] todayRows = listActivities.getRows(employeeID);
+				int recorded = olderRows.length + todayRows.length;
+				int acceptedBefore = accepted;
+				boolean acceptedToday = false;
+
+				int next = 0;
+				int state = 0;
+				int dayEnd = Integer.MIN_VALUE;
+				int minuteSeen = Integer.MIN_VALUE;
+				int typesSeen = 0;	//Bit per activity code recorded or accepted in minuteSeen
+				int position = first;
+				while(position < last) {
+					ActivityStore store = next < olderRows.length ? older : listActivities;
+					int row = next < olderRows.length ? olderRows[next] : next < recorded ? todayRows[next - olderRows.length] : -1;
+					int recordedMinute = row >= 0 ? store.getEpochMinute(row) : Integer.MAX_VALUE;
+					boolean isRecorded = recordedMinute <= punches.getEpochMinute(position);
+					int minute = isRecorded ? recordedMinute : punches.getEpochMinute(position);
+					byte code = isRecorded ? store.getCode(row) : punches.getType(position);
+					if(minute >= dayEnd) {
+						//History is forgotten past each day, as it is for the flags
+						state = 0;
+						dayEnd = TimeFormats.toEpochMinute(TimeFormats.fromEpochMinute(minute).toLocalDate().plusDays(1).atStartOfDay());
+					}
+					if(minute != minuteSeen) {
+						minuteSeen = minute;
+						typesSeen = 0;
+					}
+					if(isRecorded) {
+						next++;
+					} else {
+						position++;
+						if((typesSeen & (1 << code)) != 0) {
+							duplicates++;
+							continue;
+						}
+						if(minute > now || (!isAdmin && !ShiftStates.isAllowed(ShiftStates.transition(state, code)))) {
+							rejected++;
+							continue;
+						}
+						ordinals[accepted] = ordinal;
+						codes[accepted] = code;
+						minutes[accepted] = minute;
+						accepted++;
+						acceptedToday |= minute >= todayStart;
+					}
+					state = ShiftStates.next(state, code);
+					typesSeen |= 1 << code;
+				}
+
+				for(int i = acceptedBefore; i < accepted; i++) {
+					(minutes[i] >= todayStart ? listActivities : older).add(ordinal, codes[i], minutes[i]);
+				}
+				if(totals != null && accepted > acceptedBefore) {
+					boolean inOrder = true;
+					for(int i = acceptedBefore; i < accepted && inOrder; i++) {
+						inOrder = totals.applyInOrder(ordinal, codes[i], minutes[i]);
+					}
+					if(!inOrder) {
+						//Punches went in between recorded ones, so the employee's hours are worked out again
+						List<ActivityStore> stores = Arrays.asList(older, listActivities);
+						totals.replace(ordinal, new TimesheetRecompute(ids, stores, new int[] {older.size(), listActivities.size()},
+								payPeriod, totals.getRules(), null, null).computeEmployee(ordinal));
+					}
+				}
+				if(acceptedToday) {
+					changeState(employee, stateFromToday(employeeID));
+				}
+				if(accepted > acceptedBefore) {
+					reportCache.invalidate(employeeID);
+				}
+			}
+		}
+
+		journal.appendAll(ordinals, codes, minutes, accepted);
+		return new ImportResult(accepted, duplicates, rejected, punches.getUnknown(), punches.getMalformed(),
+				(System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Record punches streamed from a leader's journal, in the order the leader wrote them. They were checked
+	 * against the rules on the leader, so they are recorded as they are and the flags follow from them.
+	 * Returns once they are durable, with the journal's months holding the same number of records as the
+	 * leader's did after them.
+	 * @param ordinals	Employee ordinal of each punch in this engine's dictionary
+	 * @param codes		Activity code of each punch
+	 * @param minutes	Epoch minute of each punch
+	 * @param count		Number of punches
+	 */
+
+	public synchronized void replicate(int[] ordinals, byte[] codes, int[] minutes, int count) {
+		ActivityStore older = loadHistory();
+		HoursAggregator totals = hours;
+		int todayStart = TimeFormats.toEpochMinute(today.atStartOfDay());
+		BitSet recompute = new BitSet();
+		for(int i = 0; i < count; i++) {
+			String employeeID = ids.get(ordinals[i]);
+			synchronized(stripes[(employeeID.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+				(minutes[i] >= todayStart ? listActivities : older).add(ordinals[i], codes[i], minutes[i]);
+				if(totals != null && !recompute.get(ordinals[i]) && !totals.applyInOrder(ordinals[i], codes[i], minutes[i])) {
+					recompute.set(ordinals[i]);
+				}
+				Employee employee = employees.get(ordinals[i]);
+				if(employee != null && minutes[i] >= todayStart) {
+					changeState(employee, stateFromToday(employeeID));
+				}
+			}
+			reportCache.invalidate(employeeID);
+		}
+		//Punches older than ones already in an employee's hours, e.g. imported on the leader, work the hours out again
+		for(int ordinal = recompute.nextSetBit(0); ordinal >= 0; ordinal = recompute.nextSetBit(ordinal + 1)) {
+			synchronized(stripes[(ids.get(ordinal).hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+				List<ActivityStore> stores = Arrays.asList(older, listActivities);
+				totals.replace(ordinal, new TimesheetRecompute(ids, stores, new int[] {older.size(), listActivities.size()},
+						payPeriod, totals.getRules(), null, null).computeEmployee(ordinal));
+			}
+		}
+		journal.appendAll(ordinals, codes, minutes, count);
+	}
+
+	/**
+	 * Get a single employee's activities, history first and then today's.
+	 * @param employeeID The employee ID
+	 * @return the employee's activities ordered by date
+	 */
+
+	public List<Activity> getActivities(String employeeID) {
+		return concat(loadHistory().getActivities(employeeID), listActivities.getActivities(employeeID));
+	}
+
+	/**
+	 * @return every activity, history first and then today's in the order they were recorded
+	 */
+
+	public List<Activity> getAllActivities() {
+		return concat(loadHistory().getAll(), listActivities.getAll());
+	}
+
+	/**
+	 * Start a report. Activities are read lazily as the cursor moves, history first and then today's.
+	 * A date range report before the history is loaded only reads the journal months in the range.
+	 * @param query Filters for the report
+	 * @return a cursor over the matching activities
+	 */
+
+	public ReportCursor query(ReportQuery query) {
+		return query(query, false);
+	}
+
+	/**
+	 * Start a report, optionally in time order rather than the order the activities were recorded, e.g. for
+	 * a router merging the reports of several shards.
+	 * @param query		Filters for the report
+	 * @param byTime	True for the activities in time order
+	 * @return a cursor over the matching activities
+	 */
+
+	public ReportCursor query(ReportQuery query, boolean byTime) {
+		ActivityStore older = history;
+		if(older == null && (query.getFrom() != null || query.getTo() != null)) {
+			older = readRange(query.getFromMinute(), Math.min(query.getToMinute(), TimeFormats.toEpochMinute(today.atStartOfDay())));
+		} else if(older == null) {
+			older = loadHistory();
+		}
+		return new ReportCursor(Arrays.asList(older, listActivities), query, byTime);
+	}
+
+	/**
+	 * Get a single employee's report rendered in the single employee format, from the report cache if it
+	 * was rendered since the employee last punched.
+	 * @param query Filters for the report, with an employee ID
+	 * @return the rendered report
+	 */
+
+	public RenderedReport getEmployeeReport(final ReportQuery query) {
+		return reportCache.get(query, () -> {
+			StringWriter text = new StringWriter();
+			ReportWriter writer = new ReportWriter(text);
+			ReportCursor cursor = query(query);
+			try {
+				while(cursor.hasNext()) {
+					writer.writeEmployeePage(cursor.nextPage(REPORT_CHUNK));
+				}
+			} catch (IOException e) {
+				//A StringWriter never fails
+				throw new UncheckedIOException(e);
+			}
+			return new RenderedReport(text.toString());
+		});
+	}
+
+	public ReportCache getReportCache() {
+		return reportCache;
+	}
+
+	public PresenceFeed getPresence() {
+		return presence;
+	}
+
+	/**
+	 * Get the employees on shift, break or lunch, e.g. to start a board the {@link PresenceFeed} then keeps up to date.
+	 * @return the employees whose state is not off
+	 */
+
+	public List<Employee> getPresentEmployees() {
+		List<Employee> present = new ArrayList<Employee>();
+		for(Employee employee: employees.getAll()) {
+			if(employee.getState() != 0) {
+				present.add(employee);
+			}
+		}
+		return present;
+	}
+
+	/**
+	 * Read the activities in a range of minutes from the journal into a store of their own.
+	 */
+
+	private ActivityStore readRange(int fromMinute, int toMinute) {
+		final ActivityStore range = new ActivityStore(ids);
+		if(fromMinute < toMinute) {
+			journal.read(fromMinute, toMinute, (ordinal, type, epochMinute) -> {
+				range.add(ordinal, type, epochMinute);
+			});
+		}
+		return range;
+	}
+
+	/**
+	 * @param employeeID	The employee ID
+	 * @param day			Any day in the pay period
+	 * @return the employee's worked hours in the pay period
+	 */
+
+	public Hours getPeriodHours(String employeeID, LocalDate day) {
+		return loadHours().getPeriod(employeeID, day);
+	}
+
+	/**
+	 * @param employeeID	The employee ID
+	 * @param day			The day
+	 * @return the employee's worked hours on the day
+	 */
+
+	public Hours getDayHours(String employeeID, LocalDate day) {
+		return loadHours().getDay(employeeID, day);
+	}
+
+	/**
+	 * @param day Any day in the pay period
+	 * @return every employee's worked hours in the pay period
+	 */
+
+	public Map<String, Hours> getPayPeriodSummary(LocalDate day) {
+		return loadHours().getPeriodSummary(day);
+	}
+
+	public PayPeriod getPayPeriod() {
+		return payPeriod;
+	}
+
+	public PayRules getPayRules() {
+		return loadHours().getRules();
+	}
+
+	/**
+	 * Work out the worked hours from the full history the first time they are needed, on all cores.
+	 * From then on they are kept up to date by each punch.
+	 * @return the worked hours totals
+	 */
+
+	private HoursAggregator loadHours() {
+		HoursAggregator loaded = hours;
+		if(loaded != null) {
+			return loaded;
+		}
+		synchronized(this) {
+			if(hours == null) {
+				recomputeHours(PayRules.fromSystemProperty(), ForkJoinPool.commonPool());
+			}
+			return hours;
+		}
+	}
+
+	/**
+	 * Work out every employee's worked hours again from the full history, e.g. after the pay rules change,
+	 * and switch to them. Punches keep being taken meanwhile and are added to the new totals before the switch.
+	 * @param rules	The pay rules to use from now on
+	 * @param pool	Fork-join pool to spread the work over, or null to work it out on the calling thread
+	 */
+
+	public synchronized void recomputeHours(PayRules rules, ForkJoinPool pool) {
+		final List<ActivityStore> stores = Arrays.asList(loadHistory(), listActivities);
+		final int[] limits = new int[stores.size()];
+		//Take the row counts and start collecting new activities at the same moment
+		lockAll(0, () -> {
+			for(int s = 0; s < limits.length; s++) {
+				limits[s] = stores.get(s).size();
+			}
+			recomputing = new ConcurrentLinkedQueue<Activity>();
+		});
+
+		TimesheetRecompute recompute = new TimesheetRecompute(ids, stores, limits, payPeriod, rules, null, null);
+		Timesheet[] timesheets = pool == null ? recompute.computeSequential() : recompute.computeParallel(pool);
+		final HoursAggregator recomputed = new HoursAggregator(ids, payPeriod, rules, timesheets);
+
+		lockAll(0, () -> {
+			for(Activity activity: recomputing) {
+				recomputed.apply(activity);
+			}
+			//A shift left open on an earlier day ends at its midnight, even if the employee never punched again
+			recomputed.closeDaysBefore(today);
+			hours = recomputed;
+			recomputing = null;
+		});
+	}
+
+	/**
+	 * Run an action holding every employee lock, so no punch is part way through.
+	 */
+
+	private void lockAll(int stripe, Runnable action) {
+		if(stripe == LOCK_STRIPES) {
+			action.run();
+			return;
+		}
+		synchronized(stripes[stripe]) {
+			lockAll(stripe + 1, action);
+		}
+	}
+
+	private static List<Activity> concat(final List<Activity> first, final List<Activity> second) {
+		return new AbstractList<Activity>() {
+			@Override
+			public Activity get(int index) {
+				return index < first.size() ? first.get(index) : second.get(index - first.size());
+			}
+
+			@Override
+			public int size() {
+				return first.size() + second.size();
+			}
+		};
+	}
+
+	/**
+	 * Archive the journal months before a month. Archived punches are left out of reports and worked hours
+	 * the next time they are loaded.
+	 * @param before First month to keep
+	 * @return the number of months archived
+	 */
+
+	public int archive(YearMonth before) {
+		return journal.archive(before);
+	}
+
+	/**
+	 * @return the engine's metrics
+	 */
+
+	public EngineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the current end of the journal, counting punches still being written
+	 */
+
+	public JournalPosition getJournalPosition() {
+		return journal.position();
+	}
+
+	File getDataDirectory() {
+		return dataDirectory;
+	}
+
+	EmployeeIds getIds() {
+		return ids;
+	}
+
+	PunchJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Write a last snapshot, then write and force any queued punches and close the journal.
+	 */
+
+	public void close() {
+		rollovers.shutdownNow();
+		presence.close();
+		if(snapshots != null) {
+			snapshots.shutdown();
+			try {
+				snapshots.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			checkpoint();
+		}
+		journal.close();
+		metrics.unregister();
+	}
+}//PunchEngine
@@ -0,0 +1,238 @@
+package time.clock.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Punches read in bulk for {@link PunchEngine#importPunches(PunchImport)}, e.g. from kiosks that queued
+ * punches while offline or from legacy exports. Punches are kept as parallel primitive arrays and grouped
+ * by employee in time order, so the engine can check each employee's punches in one pass.
+ */
+
+public class PunchImport {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private ToIntFunction<String> ordinals;	//Ordinal of a registered employee ID, -1 if not registered
+	private int[] employees;				//Employee ordinal of each punch
+	private byte[] types;					//Activity code of each punch
+	private int[] minutes;					//Epoch minute of each punch
+	private int size;						//Number of punches
+	private long malformed;					//Lines or records that could not be read
+	private long unknown;					//Punches of employees that are not registered
+	private int[] order;					//Punches grouped by employee in time order, once grouped
+	private int[] groupStarts;				//Position in the order where each employee's punches start
+	private int groups;						//Number of employees with punches
+
+	/**
+	 * Set up an empty import.
+	 * @param ordinals Gives the ordinal of a registered employee ID, or -1 if the ID is not registered
+	 */
+
+	public PunchImport(ToIntFunction<String> ordinals) {
+		this.ordinals = ordinals;
+		employees = new int[INITIAL_CAPACITY];
+		types = new byte[INITIAL_CAPACITY];
+		minutes = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Read punches from a file in the calendar.txt format.
+	 * @param calendarFile The file in employeeID,activity,date CSV format
+	 * @return the number of lines read
+	 * @throws IOException if the file cannot be read
+	 */
+
+	public long readCalendar(File calendarFile) throws IOException {
+		FileChannel input = FileChannel.open(calendarFile.toPath());
+		try {
+			return readCalendar(input, Charset.defaultCharset(), calendarFile.getName());
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Read punches in the calendar.txt format, e.g. from an upload. Lines that cannot be read are counted
+	 * and skipped, and the first few are logged with their line numbers.
+	 * @param input		Lines in employeeID,activity,date CSV format
+	 * @param charset	Character set of the employee IDs
+	 * @param source	Name of the input for the log, e.g. the file name
+	 * @return the number of lines read
+	 * @throws IOException if the input fails
+	 */
+
+	public long readCalendar(ReadableByteChannel input, Charset charset, String source) throws IOException {
+		CsvParser parser = new CsvParser(input, charset);
+		long lines = parser.readCalendar(ordinals, this::add);
+		malformed += parser.getMalformed();
+		parser.reportMalformed(source);
+		return lines;
+	}
+
+	/**
+	 * Read punches from a journal segment written by another time clock, e.g. an offline kiosk.
+	 * @param journalFile	The journal file
+	 * @param idFile		The employee ID dictionary the journal file was written with
+	 * @return the number of records read
+	 */
+
+	public long readJournal(File journalFile, File idFile) {
+		final EmployeeIds journalIds = new EmployeeIds(idFile);
+		final int[] mapped = new int[journalIds.size()];
+		Arrays.fill(mapped, Integer.MIN_VALUE);
+		final int codes = ActivityType.values().length;
+		return PunchJournal.readFile(journalFile, (ordinal, type, epochMinute) -> {
+			if(ordinal < 0 || ordinal >= mapped.length || type < 0 || type >= codes) {
+				malformed++;
+				return;
+			}
+			if(mapped[ordinal] == Integer.MIN_VALUE) {
+				mapped[ordinal] = ordinals.applyAsInt(journalIds.get(ordinal));
+			}
+			add(mapped[ordinal], type, epochMinute);
+		});
+	}
+
+	private void add(int employee, byte type, int epochMinute) {
+		if(employee < 0) {
+			unknown++;
+			return;
+		}
+		if(size == employees.length) {
+			int capacity = size * 2;
+			employees = Arrays.copyOf(employees, capacity);
+			types = Arrays.copyOf(types, capacity);
+			minutes = Arrays.copyOf(minutes, capacity);
+		}
+		employees[size] = employee;
+		types[size] = type;
+		minutes[size] = epochMinute;
+		size++;
+		order = null;
+	}
+
+	/**
+	 * Group the punches by employee and put each employee's punches in time order. Punches in the same
+	 * minute keep the order they were read in, so a clock in and a break in one minute stay valid.
+	 */
+
+	void group() {
+		if(order != null) {
+			return;
+		}
+		//Counting sort by employee keeps the read order within each employee
+		int maxEmployee = -1;
+		for(int i = 0; i < size; i++) {
+			maxEmployee = Math.max(maxEmployee, employees[i]);
+		}
+		int[] starts = new int[maxEmployee + 2];
+		for(int i = 0; i < size; i++) {
+			starts[employees[i] + 1]++;
+		}
+		groups = 0;
+		for(int employee = 0; employee <= maxEmployee; employee++) {
+			if(starts[employee + 1] > 0) {
+				groups++;
+			}
+			starts[employee + 1] += starts[employee];
+		}
+		order = new int[size];
+		int[] next = Arrays.copyOf(starts, starts.length);
+		for(int i = 0; i < size; i++) {
+			order[next[employees[i]]++] = i;
+		}
+
+		groupStarts = new int[groups + 1];
+		int group = 0;
+		long[] keys = new long[0];
+		for(int employee = 0; employee <= maxEmployee; employee++) {
+			int start = starts[employee];
+			int end = starts[employee + 1];
+			if(start == end) {
+				continue;
+			}
+			groupStarts[group++] = start;
+			if(!inTimeOrder(start, end)) {
+				//Sort by minute, then by read order
+				if(keys.length < end - start) {
+					keys = new long[end - start];
+				}
+				for(int i = start; i < end; i++) {
+					keys[i - start] = ((long) minutes[order[i]] << 32) | order[i];
+				}
+				Arrays.sort(keys, 0, end - start);
+				for(int i = start; i < end; i++) {
+					order[i] = (int) keys[i - start];
+				}
+			}
+		}
+		groupStarts[groups] = size;
+	}
+
+	private boolean inTimeOrder(int start, int end) {
+		for(int i = start + 1; i < end; i++) {
+			if(minutes[order[i]] < minutes[order[i - 1]]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of punches of registered employees
+	 */
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of lines or records that could not be read
+	 */
+
+	public long getMalformed() {
+		return malformed;
+	}
+
+	/**
+	 * @return the number of punches of employees that are not registered
+	 */
+
+	public long getUnknown() {
+		return unknown;
+	}
+
+	int getGroupCount() {
+		return groups;
+	}
+
+	int getGroupStart(int group) {
+		return groupStarts[group];
+	}
+
+	int getGroupEnd(int group) {
+		return groupStarts[group + 1];
+	}
+
+	/**
+	 * @param position Position in the grouped order
+	 * @return the employee ordinal of the punch
+	 */
+
+	int getEmployee(int position) {
+		return employees[order[position]];
+	}
+
+	byte getType(int position) {
+		return types[order[position]];
+	}
+
+	int getEpochMinute(int position) {
+		return minutes[order[position]];
+	}
+}//PunchImport
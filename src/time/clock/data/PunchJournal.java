@@ -0,0 +1,476 @@
+package time.clock.data;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Append-only binary punch journal, split into one {@link JournalSegment} per month. Each punch is a fixed
+ * width record of employee ordinal (int), activity code (byte) and epoch minute (int), written to the
+ * segment of the month it was made in.
+ */
+
+public class PunchJournal {
+
+	/**
+	 * Receives each punch read from the journal as primitive fields.
+	 */
+
+	public interface PunchHandler {
+		void onPunch(int employee, byte type, int epochMinute);
+	}
+
+	public static final int RECORD_SIZE = 9;
+
+	//Most records appended by one write of a batch, no more than the batched writer's buffer holds
+	private static final int CHUNK_RECORDS = JournalWriter.BUFFER_SIZE / RECORD_SIZE;
+
+	//Largest mapping that still lines up with record boundaries
+	private static final long MAX_MAPPING = (Integer.MAX_VALUE / RECORD_SIZE) * (long) RECORD_SIZE;
+
+	private File directory;										//Directory holding the segments
+	private EmployeeIds ids;									//Dictionary of employee IDs stored in the journal
+	private DurabilityPolicy policy;							//When appended punches are forced to disk
+	private EngineMetrics metrics;								//Where journal write and force times are recorded
+	private TreeMap<YearMonth, JournalSegment> segments;		//Segments by month
+	private JournalWriter writer;								//Batched writer, opened on the first append
+	private YearMonth writerMonth;								//Month the writer appends to
+	private TreeMap<YearMonth, Long> counts;					//Records written or queued in each segment
+	private CompletableFuture<Void> lastSubmitted;				//Future of the last record queued on the writer
+
+	/**
+	 * Set up a journal over the segments in a directory.
+	 * @param directory	Directory holding the segments
+	 * @param ids		Dictionary of employee IDs for the journal
+	 * @param policy	When appended punches are forced to disk
+	 * @param metrics	Where journal write and force times are recorded
+	 */
+
+	public PunchJournal(File directory, EmployeeIds ids, DurabilityPolicy policy, EngineMetrics metrics) {
+		this.directory = directory;
+		this.ids = ids;
+		this.policy = policy;
+		this.metrics = metrics;
+		segments = new TreeMap<YearMonth, JournalSegment>();
+		counts = new TreeMap<YearMonth, Long>();
+		lastSubmitted = CompletableFuture.completedFuture(null);
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file: files) {
+				YearMonth month = JournalSegment.parseMonth(file.getName());
+				if(month != null) {
+					JournalSegment segment = new JournalSegment(directory, month);
+					segments.put(month, segment);
+					counts.put(month, segment.getRecordCount());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the journal has any segments
+	 */
+
+	public synchronized boolean exists() {
+		return !segments.isEmpty();
+	}
+
+	/**
+	 * One time conversion of a calendar CSV file into this journal.
+	 * @param calendarFile The calendar file in employeeID,activity,date CSV format
+	 * @return the number of lines converted
+	 */
+
+	public long convert(File calendarFile) {
+		final SegmentOutput out = new SegmentOutput();
+		final byte[] record = new byte[RECORD_SIZE];
+		long lines = 0;
+		try {
+			FileChannel input = FileChannel.open(calendarFile.toPath());
+			try {
+				CsvParser parser = new CsvParser(input, Charset.defaultCharset());
+				lines = parser.readCalendar(ids::intern, (ordinal, type, epochMinute) -> {
+					encode(record, ordinal, type, epochMinute);
+					out.write(epochMinute, record);
+				});
+				parser.reportMalformed(calendarFile.getName());
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			//File is assumed to be here, no error handling here
+			e.printStackTrace();
+		}
+		out.close();
+		return lines;
+	}
+
+	/**
+	 * One time split of a single file journal, from before the journal was kept by month, into segments.
+	 * @param journalFile The old journal, renamed to .migrated once it is split
+	 * @return the number of punches moved
+	 */
+
+	public long split(File journalFile) {
+		final SegmentOutput out = new SegmentOutput();
+		final byte[] record = new byte[RECORD_SIZE];
+		long moved = readFile(journalFile, (ordinal, type, epochMinute) -> {
+			encode(record, ordinal, type, epochMinute);
+			out.write(epochMinute, record);
+		});
+		out.close();
+		journalFile.renameTo(new File(journalFile.getParentFile(), journalFile.getName() + ".migrated"));
+		return moved;
+	}
+
+	/**
+	 * Queue a single punch to be appended to its month's segment by the batched writer.
+	 * @param employeeID Employee that made the activity
+	 * @param action	 Type of action the employee made.
+	 * @param dateTime	 When the activity was made
+	 * @return a future completed once the punch is durable under the journal's policy
+	 */
+
+	public CompletableFuture<Void> append(String employeeID, ActivityType action, LocalDateTime dateTime) {
+		byte[] record = new byte[RECORD_SIZE];
+		encode(record, ids.intern(employeeID), action.getCode(), TimeFormats.toEpochMinute(dateTime));
+		try {
+			return submit(YearMonth.from(dateTime), record);
+		} catch (IOException e) {
+			CompletableFuture<Void> failed = new CompletableFuture<Void>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Append a batch of punches, e.g. from an import, in as few writes as possible, and wait until they are durable.
+	 * Punches are written in time order, so each month's segment is opened once. A month the batched writer is on
+	 * gets chunks queued on the writer, other months are appended to directly. Every write is whole records, so
+	 * a live punch appended to the same segment meanwhile never lands inside one.
+	 * @param ordinals	Employee ordinal of each punch
+	 * @param codes		Activity code of each punch
+	 * @param minutes	Epoch minute of each punch
+	 * @param count		Number of punches
+	 */
+
+	public void appendAll(int[] ordinals, byte[] codes, int[] minutes, int count) {
+		long[] keys = new long[count];
+		for(int i = 0; i < count; i++) {
+			keys[i] = ((long) minutes[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		byte[] chunk = new byte[CHUNK_RECORDS * RECORD_SIZE];
+		byte[] record = new byte[RECORD_SIZE];
+		CompletableFuture<Void> queued = CompletableFuture.completedFuture(null);
+		FileOutputStream direct = null;
+		File directFile = null;
+		try {
+			int i = 0;
+			while(i < count) {
+				JournalSegment segment = segment(JournalSegment.monthOf(minutes[(int) keys[i]]));
+				int monthEnd = segment.getEndMinute();
+				int records = 0;
+				while(i < count && records < CHUNK_RECORDS && minutes[(int) keys[i]] < monthEnd) {
+					int row = (int) keys[i++];
+					encode(record, ordinals[row], codes[row], minutes[row]);
+					System.arraycopy(record, 0, chunk, records++ * RECORD_SIZE, RECORD_SIZE);
+				}
+				byte[] written = Arrays.copyOf(chunk, records * RECORD_SIZE);
+				synchronized(this) {
+					if(segment.getMonth().equals(writerMonth)) {
+						queued = submit(writerMonth, written);
+					} else {
+						if(direct == null || !segment.getDataFile().equals(directFile)) {
+							closeDirect(direct);
+							direct = new FileOutputStream(segment.getDataFile(), true);
+							directFile = segment.getDataFile();
+						}
+						direct.write(written);
+						counted(segment.getMonth(), records);
+					}
+				}
+			}
+			closeDirect(direct);
+			queued.get();
+		} catch (IOException | ExecutionException e) {
+			//Journal is assumed to be writable, no error handling here
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void closeDirect(FileOutputStream direct) throws IOException {
+		if(direct != null) {
+			direct.getFD().sync();
+			direct.close();
+		}
+	}
+
+	/**
+	 * Queue a record on the writer for its month. Punches are made as they happen, so the writer only moves
+	 * on to a new segment at the start of a month. The old writer is closed once everything queued on it is durable.
+	 */
+
+	private synchronized CompletableFuture<Void> submit(YearMonth month, byte[] record) throws IOException {
+		if(writer == null || !month.equals(writerMonth)) {
+			if(writer != null) {
+				writer.close();
+			}
+			writer = new JournalWriter(segment(month).getDataFile(), policy, metrics);
+			writerMonth = month;
+		}
+		counted(month, record.length / RECORD_SIZE);
+		lastSubmitted = writer.submit(record);
+		return lastSubmitted;
+	}
+
+	private synchronized void counted(YearMonth month, long records) {
+		Long count = counts.get(month);
+		counts.put(month, (count == null ? 0 : count) + records);
+	}
+
+	/**
+	 * @return the current end of the journal, counting records still queued on the writer
+	 */
+
+	public synchronized JournalPosition position() {
+		return new JournalPosition(counts);
+	}
+
+	/**
+	 * Wait until every record queued so far is durable.
+	 */
+
+	public void flush() {
+		CompletableFuture<Void> last;
+		synchronized(this) {
+			last = lastSubmitted;
+		}
+		try {
+			last.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			//Journal is assumed to be writable, no error handling here
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write and force any queued punches and close the writer.
+	 */
+
+	public synchronized void close() {
+		if(writer != null) {
+			writer.close();
+			writer = null;
+			writerMonth = null;
+		}
+	}
+
+	/**
+	 * Read every punch in the journal, month by month in the order they were written.
+	 * @param handler Handler called for each punch
+	 * @return the number of records read
+	 */
+
+	public long read(PunchHandler handler) {
+		return read(Integer.MIN_VALUE, Integer.MAX_VALUE, handler);
+	}
+
+	/**
+	 * Read the punches in a range of minutes. Only the segments of the months in the range are opened,
+	 * and only the blocks of those segments the index cannot rule out are read.
+	 * @param fromMinute	First minute to include
+	 * @param toMinute		First minute past the range
+	 * @param handler		Handler called for each punch in the range
+	 * @return the number of records read, kept by the caller as reads run side by side
+	 */
+
+	public long read(int fromMinute, int toMinute, PunchHandler handler) {
+		long scanned = 0;
+		for(JournalSegment segment: segmentsBetween(fromMinute, toMinute)) {
+			scanned += segment.read(fromMinute, toMinute, handler);
+		}
+		return scanned;
+	}
+
+	/**
+	 * Read the punches written after a position, segment by segment.
+	 * @param position	Position to read from
+	 * @param handler	Handler called for each punch
+	 * @return the number of records read
+	 */
+
+	public long readAfter(JournalPosition position, PunchHandler handler) {
+		long scanned = 0;
+		for(JournalSegment segment: segmentsBetween(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+			scanned += segment.readFrom(position.getRecords(segment.getMonth()), handler);
+		}
+		return scanned;
+	}
+
+	private synchronized List<JournalSegment> segmentsBetween(int fromMinute, int toMinute) {
+		List<JournalSegment> between = new ArrayList<JournalSegment>();
+		for(JournalSegment segment: segments.values()) {
+			if(segment.getEndMinute() > fromMinute && segment.getStartMinute() < toMinute) {
+				between.add(segment);
+			}
+		}
+		return between;
+	}
+
+	/**
+	 * Compact the segments before a month and move them into the archive directory, where reads no longer see them.
+	 * The month being written to is never archived, and nor is a segment that could not be compacted.
+	 * @param before First month to keep
+	 * @return the number of segments archived
+	 */
+
+	public synchronized int archive(YearMonth before) {
+		File archive = new File(directory, "archive");
+		archive.mkdirs();
+		int archived = 0;
+		for(JournalSegment segment: new ArrayList<JournalSegment>(segments.headMap(before).values())) {
+			if(segment.getMonth().equals(writerMonth)) {
+				continue;
+			}
+			try {
+				segment.compact();
+			} catch (IOException e) {
+				//The segment is left as it was, and archived another time
+				e.printStackTrace();
+				continue;
+			}
+			segment.getIndexFile().delete();
+			if(segment.getDataFile().renameTo(new File(archive, segment.getDataFile().getName()))) {
+				segments.remove(segment.getMonth());
+				counts.remove(segment.getMonth());
+				archived++;
+			}
+		}
+		return archived;
+	}
+
+	private synchronized JournalSegment segment(YearMonth month) {
+		JournalSegment segment = segments.get(month);
+		if(segment == null) {
+			segment = new JournalSegment(directory, month);
+			segments.put(month, segment);
+		}
+		return segment;
+	}
+
+	/**
+	 * Read every record of a single journal file through a memory mapping.
+	 */
+
+	static long readFile(File journalFile, PunchHandler handler) {
+		long read = 0;
+		try {
+			RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+			FileChannel channel = file.getChannel();
+			//A partly written record at the end is ignored.
+			long length = channel.size() - channel.size() % RECORD_SIZE;
+			for(long position = 0; position < length; position += MAX_MAPPING) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPING, length - position));
+				while(buffer.hasRemaining()) {
+					handler.onPunch(buffer.getInt(), buffer.get(), buffer.getInt());
+					read++;
+				}
+			}
+			file.close();
+		} catch (IOException e) {
+			//File is assumed to be readable, no error handling here
+			e.printStackTrace();
+		}
+		return read;
+	}
+
+	/**
+	 * Encode a punch into a record in big endian order, the same order ByteBuffer reads it back in.
+	 */
+
+	private static void encode(byte[] record, int ordinal, byte code, int epochMinute) {
+		record[0] = (byte) (ordinal >>> 24);
+		record[1] = (byte) (ordinal >>> 16);
+		record[2] = (byte) (ordinal >>> 8);
+		record[3] = (byte) ordinal;
+		record[4] = code;
+		record[5] = (byte) (epochMinute >>> 24);
+		record[6] = (byte) (epochMinute >>> 16);
+		record[7] = (byte) (epochMinute >>> 8);
+		record[8] = (byte) epochMinute;
+	}
+
+	/**
+	 * Buffered appends to the segments for bulk writes that do not go through the batched writer. Records
+	 * usually come a month at a time, so the stream is only reopened when the month changes.
+	 */
+
+	private class SegmentOutput {
+		private OutputStream stream;		//Stream of the current month's segment
+		private YearMonth month;			//The current month
+		private long written;				//Records written to the current month
+		private int monthStart = 1;			//First minute of the current month
+		private int monthEnd = 0;			//First minute past the current month
+		private IOException failure;		//First write failure
+
+		void write(int epochMinute, byte[] record) {
+			if(failure != null) {
+				return;
+			}
+			try {
+				if(epochMinute < monthStart || epochMinute >= monthEnd) {
+					closeStream();
+					JournalSegment segment = segment(JournalSegment.monthOf(epochMinute));
+					month = segment.getMonth();
+					monthStart = segment.getStartMinute();
+					monthEnd = segment.getEndMinute();
+					stream = new BufferedOutputStream(new FileOutputStream(segment.getDataFile(), true), 1 << 16);
+				}
+				stream.write(record);
+				written++;
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		private void closeStream() throws IOException {
+			if(stream != null) {
+				stream.close();
+				counted(month, written);
+				written = 0;
+			}
+		}
+
+		void close() {
+			try {
+				closeStream();
+				if(failure != null) {
+					throw failure;
+				}
+			} catch (IOException e) {
+				//File is assumed to be writable, no error handling here
+				e.printStackTrace();
+			}
+		}
+	}//SegmentOutput
+}//PunchJournal
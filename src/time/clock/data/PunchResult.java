@@ -0,0 +1,50 @@
+package time.clock.data;
+
+/**
+ * Outcome of a punch made through the {@link PunchEngine}.
+ */
+
+public class PunchResult {
+
+	public enum Status {
+		RECORDED(null),
+		NOT_AN_EMPLOYEE("is not an employee."),
+		ALREADY_ON_SHIFT("You are already on a shift."),
+		NOT_ON_SHIFT("You are not on a shift."),
+		ALREADY_ON_BREAK("You are already on a break."),
+		NOT_ON_BREAK("You are not on a break."),
+		ALREADY_ON_LUNCH("You are already on a lunch break."),
+		NOT_ON_LUNCH("You are not on a lunch break."),
+		NOT_SAVED("The punch could not be saved. Please tell an administrator.");
+
+		private String message;	//Why the punch was rejected
+
+		Status(String message) {
+			this.message = message;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private Status status;		//Whether the punch was recorded, or why not
+	private Activity activity;	//The recorded activity, null if rejected
+
+	public PunchResult(Status status, Activity activity) {
+		this.status = status;
+		this.activity = activity;
+	}
+
+	public boolean isRecorded() {
+		return status == Status.RECORDED;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Activity getActivity() {
+		return activity;
+	}
+}//PunchResult
@@ -0,0 +1,71 @@
+package time.clock.data;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A report already rendered to text, one line per activity, so it can be paged and sent again without
+ * reading or formatting any activity.
+ */
+
+public class RenderedReport {
+	private String text;		//Every line, each ending in a line break
+	private int[] lineEnds;		//Offset after each line's line break
+
+	/**
+	 * @param text Rendered lines, each ending in a line break
+	 */
+
+	public RenderedReport(String text) {
+		this.text = text;
+		int lines = 0;
+		for(int i = 0; i < text.length(); i++) {
+			if(text.charAt(i) == '\n') {
+				lines++;
+			}
+		}
+		lineEnds = new int[lines];
+		int line = 0;
+		for(int i = 0; i < text.length(); i++) {
+			if(text.charAt(i) == '\n') {
+				lineEnds[line++] = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of lines
+	 */
+
+	public int getLineCount() {
+		return lineEnds.length;
+	}
+
+	/**
+	 * @return the number of characters, used to bound the cache
+	 */
+
+	public int length() {
+		return text.length();
+	}
+
+	/**
+	 * Write a range of lines.
+	 * @param out	Where to write
+	 * @param first	First line to write
+	 * @param count	Most lines to write
+	 * @return the number of lines written
+	 * @throws IOException if the output fails
+	 */
+
+	public int write(Writer out, long first, long count) throws IOException {
+		if(first >= lineEnds.length || count <= 0) {
+			return 0;
+		}
+		int start = first == 0 ? 0 : lineEnds[(int) first - 1];
+		int last = (int) Math.min(lineEnds.length, first + count);
+		out.write(text, start, lineEnds[last - 1] - start);
+		out.flush();
+		return last - (int) first;
+	}
+}//RenderedReport
@@ -0,0 +1,224 @@
+package time.clock.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Keeps an engine a warm standby of a {@link ReplicationLeader}. The leader's journal records and new
+ * employees are applied to the engine as they arrive, and each batch is acknowledged once it is durable.
+ * A lost connection is retried from wherever the engine's own journal got to. Once promoted, the follower
+ * stops following and the engine takes punches of its own.
+ */
+
+public class ReplicationFollower {
+
+	private static final long RETRY_MILLIS = 1000;		//Wait before reconnecting to the leader
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+	private PunchEngine engine;					//Engine kept up to date with the leader
+	private String host;						//Leader's host
+	private int port;							//Leader's replication port
+	private volatile boolean following;			//If the follower has not been promoted
+	private volatile boolean connected;			//If the follower is connected to the leader
+	private volatile Socket socket;				//Connection to the leader
+	private volatile long leaderRecords;		//Records in the leader's journal when it last said
+	private volatile long lastHeard;			//When the leader was last heard from
+	private volatile long lastBatchLagMillis;	//Time from the leader sending the last batch to it being durable here
+	private volatile long replicated;			//Records applied since the follower started
+	private Thread thread;						//Follows the leader until promoted
+
+	/**
+	 * Set up a follower of a leader. Nothing is applied until {@link #start()}.
+	 * @param engine	The engine to keep up to date
+	 * @param leader	The leader's replication address, host:port
+	 */
+
+	public ReplicationFollower(PunchEngine engine, String leader) {
+		this.engine = engine;
+		int colon = leader.lastIndexOf(':');
+		if(colon < 0) {
+			throw new IllegalArgumentException("Expected host:port, got " + leader);
+		}
+		host = leader.substring(0, colon);
+		port = Integer.parseInt(leader.substring(colon + 1));
+		following = true;
+	}
+
+	public void start() {
+		thread = new Thread(() -> {
+			while(following) {
+				try {
+					follow();
+				} catch (IOException e) {
+					//The leader went away, try again from wherever the journal got to
+				} finally {
+					connected = false;
+				}
+				if(following) {
+					try {
+						Thread.sleep(RETRY_MILLIS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "replication-follower");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void follow() throws IOException {
+		Socket connection = new Socket();
+		connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+		socket = connection;
+		if(!following) {
+			connection.close();
+			return;
+		}
+		try {
+			connection.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+			out.writeInt(ReplicationLeader.MAGIC);
+			engine.getJournalPosition().writeTo(out);
+			out.flush();
+			connected = true;
+
+			//Leader's dictionary ordinals mapped to this engine's, -1 until the leader sends the entry
+			EmployeeIds ids = engine.getIds();
+			int[] localOrdinals = new int[0];
+			int[] ordinals = new int[ReplicationLeader.BATCH_RECORDS];
+			byte[] codes = new byte[ReplicationLeader.BATCH_RECORDS];
+			int[] minutes = new int[ReplicationLeader.BATCH_RECORDS];
+			while(following) {
+				byte frame = in.readByte();
+				lastHeard = System.currentTimeMillis();
+				if(frame == ReplicationLeader.EMPLOYEE) {
+					String employeeID = in.readUTF();
+					String role = in.readUTF();
+					engine.register(employeeID, role);
+				} else if(frame == ReplicationLeader.ID) {
+					int ordinal = in.readInt();
+					String employeeID = in.readUTF();
+					if(ordinal >= localOrdinals.length) {
+						int length = localOrdinals.length;
+						localOrdinals = Arrays.copyOf(localOrdinals, Math.max(ordinal + 1, length * 2));
+						Arrays.fill(localOrdinals, length, localOrdinals.length, -1);
+					}
+					localOrdinals[ordinal] = ids.intern(employeeID);
+				} else if(frame == ReplicationLeader.PUNCHES) {
+					long sentMillis = in.readLong();
+					leaderRecords = in.readLong();
+					int count = in.readInt();
+					if(count > ordinals.length) {
+						throw new IOException("Batch of " + count + " records is too large");
+					}
+					for(int i = 0; i < count; i++) {
+						int ordinal = in.readInt();
+						if(ordinal < 0 || ordinal >= localOrdinals.length || localOrdinals[ordinal] < 0) {
+							throw new IOException("Record for unknown employee ordinal " + ordinal);
+						}
+						ordinals[i] = localOrdinals[ordinal];
+						codes[i] = in.readByte();
+						minutes[i] = in.readInt();
+					}
+					engine.replicate(ordinals, codes, minutes, count);
+					replicated += count;
+					lastBatchLagMillis = System.currentTimeMillis() - sentMillis;
+					out.writeLong(engine.getJournalPosition().getTotalRecords());
+					out.writeLong(sentMillis);
+					out.flush();
+				} else if(frame == ReplicationLeader.HEARTBEAT) {
+					in.readLong();
+					leaderRecords = in.readLong();
+				} else {
+					throw new IOException("Unknown replication frame " + frame);
+				}
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Stop following the leader so the engine can take punches of its own. A batch being applied is
+	 * finished first, so the journal is left at a batch boundary.
+	 */
+
+	public void promote() {
+		following = false;
+		Socket connection = socket;
+		try {
+			if(connection != null) {
+				connection.shutdownInput();
+			}
+		} catch (IOException e) {
+			//The connection is already gone
+		}
+		//The thread is not interrupted, so a batch being applied is never cut short
+		if(thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return true until the follower is promoted
+	 */
+
+	public boolean isFollowing() {
+		return following;
+	}
+
+	/**
+	 * @return the records in the leader's journal that this engine does not have yet, as of the leader's last message
+	 */
+
+	public long getLagRecords() {
+		return Math.max(0, leaderRecords - engine.getJournalPosition().getTotalRecords());
+	}
+
+	/**
+	 * @return the status of the follower and how far behind it is
+	 */
+
+	public String getStatus() {
+		if(!following) {
+			return "promoted, was following " + host + ":" + port + "\n";
+		}
+		return "following " + host + ":" + port + ", " + (connected ? "connected" : "disconnected") + ", " + getLagRecords()
+				+ " records behind, " + lastBatchLagMillis + " ms lag on the last batch, last heard from "
+				+ (lastHeard == 0 ? "never" : (System.currentTimeMillis() - lastHeard) + " ms ago") + ", " + replicated + " records replicated\n";
+	}
+
+	/**
+	 * @return the follower's lag in the Prometheus text format
+	 */
+
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		text.append("# TYPE timeclock_replication_following gauge\n");
+		text.append("timeclock_replication_following ").append(following ? 1 : 0).append('\n');
+		text.append("# TYPE timeclock_replication_connected gauge\n");
+		text.append("timeclock_replication_connected ").append(connected ? 1 : 0).append('\n');
+		text.append("# TYPE timeclock_replication_lag_records gauge\n");
+		text.append("timeclock_replication_lag_records ").append(getLagRecords()).append('\n');
+		text.append("# TYPE timeclock_replication_batch_lag_seconds gauge\n");
+		text.append("timeclock_replication_batch_lag_seconds ").append(Double.toString(lastBatchLagMillis / 1000.0)).append('\n');
+		text.append("# TYPE timeclock_replication_last_heard_seconds gauge\n");
+		text.append("timeclock_replication_last_heard_seconds ")
+			.append(Double.toString(lastHeard == 0 ? 0 : (System.currentTimeMillis() - lastHeard) / 1000.0)).append('\n');
+		text.append("# TYPE timeclock_replication_records_total counter\n");
+		text.append("timeclock_replication_records_total ").append(replicated).append('\n');
+		return text.toString();
+	}
+}//ReplicationFollower
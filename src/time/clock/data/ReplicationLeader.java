@@ -0,0 +1,365 @@
+package time.clock.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streams an engine's punch journal and new employees to {@link ReplicationFollower}s over sockets. Each
+ * follower says how far its own journal goes when it connects, and is sent every record written after
+ * that, month by month in the order they were written, so its journal stays a copy of this one. Followers
+ * acknowledge each batch once it is durable, which is how far behind each one is measured.
+ *
+ * <pre>
+ * follower: int MAGIC, journal position
+ * leader:   'E' employeeID, role                 an employee line of employees.txt
+ *           'I' int ordinal, employeeID          an entry of the journal's ID dictionary
+ *           'P' long millis, long records, int count, count * (int ordinal, byte code, int epochMinute)
+ *           'H' long millis, long records        heartbeat while there is nothing to send
+ *                                                (millis is the leader's clock, records the leader's journal total)
+ * follower: long records, long millis            acknowledgement of a batch
+ * </pre>
+ */
+
+public class ReplicationLeader {
+
+	public static final String PROPERTY = "timeclock.replication";
+
+	static final int MAGIC = 0x54435250;			//"TCRP"
+	static final byte EMPLOYEE = 'E';
+	static final byte ID = 'I';
+	static final byte PUNCHES = 'P';
+	static final byte HEARTBEAT = 'H';
+	static final int BATCH_RECORDS = 4096;			//Most records sent in one batch
+
+	private static final long POLL_MILLIS = 10;			//How often the journal is checked for new records
+	private static final long HEARTBEAT_MILLIS = 1000;	//Longest time a follower goes without hearing from the leader
+
+	private PunchEngine engine;								//Engine whose journal is streamed
+	private ServerSocket server;							//Accepts followers
+	private List<FollowerLink> followers;					//Connected followers
+	private volatile boolean stopped;						//If the leader was stopped
+	private Thread acceptor;								//Accepts followers until stopped
+
+	/**
+	 * Set up the leader on a port. Followers are not accepted until {@link #start()}.
+	 * @param engine	The engine whose journal is streamed
+	 * @param port		Port to listen on, 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+
+	public ReplicationLeader(PunchEngine engine, int port) throws IOException {
+		this.engine = engine;
+		server = new ServerSocket();
+		server.setReuseAddress(true);
+		server.bind(new InetSocketAddress(port));
+		followers = new CopyOnWriteArrayList<FollowerLink>();
+	}
+
+	/**
+	 * Get the replication port from -Dtimeclock.replication=&lt;port&gt;.
+	 * @return the port, or -1 if replication is off
+	 */
+
+	public static int portFromSystemProperty() {
+		String setting = System.getProperty(PROPERTY);
+		return setting == null ? -1 : Integer.parseInt(setting);
+	}
+
+	public void start() {
+		acceptor = new Thread(() -> {
+			while(!stopped) {
+				try {
+					Socket socket = server.accept();
+					FollowerLink link = new FollowerLink(socket);
+					followers.add(link);
+					Thread thread = new Thread(link, "replication-" + link.address);
+					thread.setDaemon(true);
+					thread.start();
+				} catch (IOException e) {
+					if(!stopped) {
+						engine.getMetrics().failed(e);
+					}
+				}
+			}
+		}, "replication-leader");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stop accepting followers and disconnect the connected ones.
+	 */
+
+	public void stop() {
+		stopped = true;
+		try {
+			server.close();
+		} catch (IOException e) {
+			//Closing is assumed to work, no error handling here
+			e.printStackTrace();
+		}
+		for(FollowerLink link: followers) {
+			link.close();
+		}
+	}
+
+	/**
+	 * @return the port the leader is listening on
+	 */
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * @return one line per connected follower with how far behind it is
+	 */
+
+	public String getStatus() {
+		StringBuilder status = new StringBuilder("leader on port " + getPort() + ", " + followers.size() + " followers\n");
+		long records = engine.getJournalPosition().getTotalRecords();
+		for(FollowerLink link: followers) {
+			status.append(link.address).append(": ").append(Math.max(0, records - link.acknowledged)).append(" records behind, ")
+				.append(link.getLagMillis()).append(" ms lag\n");
+		}
+		return status.toString();
+	}
+
+	/**
+	 * @return the followers and their lag in the Prometheus text format
+	 */
+
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		text.append("# TYPE timeclock_replication_followers gauge\n");
+		text.append("timeclock_replication_followers ").append(followers.size()).append('\n');
+		long records = engine.getJournalPosition().getTotalRecords();
+		text.append("# TYPE timeclock_replication_follower_lag_records gauge\n");
+		for(FollowerLink link: followers) {
+			text.append("timeclock_replication_follower_lag_records{follower=\"").append(link.address).append("\"} ")
+				.append(Math.max(0, records - link.acknowledged)).append('\n');
+		}
+		text.append("# TYPE timeclock_replication_follower_lag_seconds gauge\n");
+		for(FollowerLink link: followers) {
+			text.append("timeclock_replication_follower_lag_seconds{follower=\"").append(link.address).append("\"} ")
+				.append(Double.toString(link.getLagMillis() / 1000.0)).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * One follower's connection. Polls the journal and employees file for anything not yet sent, and reads
+	 * the follower's acknowledgements in between.
+	 */
+
+	private class FollowerLink implements Runnable {
+		private Socket socket;							//Connection to the follower
+		private String address;							//Follower's address, for the status
+		private DataOutputStream out;					//Frames to the follower
+		private TreeMap<YearMonth, Long> sent;			//Records sent from each journal month
+		private long sentRecords;						//Records sent across every month
+		private int sentIds;							//Entries of the ID dictionary sent
+		private long employeesOffset;					//Bytes of employees.txt sent
+		private long lastSent;							//When anything was last sent
+		private ArrayDeque<long[]> unacknowledged;		//Records and send time of each batch not yet acknowledged
+		private volatile long acknowledged;				//Records the follower has made durable
+		private volatile long oldestUnacknowledged;		//When the oldest unacknowledged batch was sent, 0 if none
+		private int[] ordinals = new int[BATCH_RECORDS];
+		private byte[] codes = new byte[BATCH_RECORDS];
+		private int[] minutes = new int[BATCH_RECORDS];
+		private int batched;							//Records waiting in the batch arrays
+
+		private FollowerLink(Socket socket) {
+			this.socket = socket;
+			address = socket.getRemoteSocketAddress().toString();
+			unacknowledged = new ArrayDeque<long[]>();
+		}
+
+		@Override
+		public void run() {
+			try {
+				socket.setTcpNoDelay(true);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+				if(in.readInt() != MAGIC) {
+					return;
+				}
+				JournalPosition from = JournalPosition.readFrom(in);
+				sent = from.getRecords();
+				sentRecords = from.getTotalRecords();
+				acknowledged = sentRecords;
+				while(!stopped) {
+					sendEmployees();
+					JournalPosition position = new JournalPosition(sent);
+					if(engine.getJournalPosition().isAhead(position)) {
+						sendPunches(position);
+					}
+					if(System.currentTimeMillis() - lastSent >= HEARTBEAT_MILLIS) {
+						out.writeByte(HEARTBEAT);
+						out.writeLong(System.currentTimeMillis());
+						out.writeLong(engine.getJournalPosition().getTotalRecords());
+						out.flush();
+						lastSent = System.currentTimeMillis();
+					}
+					readAcknowledgements(in);
+					Thread.sleep(POLL_MILLIS);
+				}
+			} catch (IOException | UncheckedIOException e) {
+				//The follower went away, it starts again from its own position when it reconnects
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				close();
+				followers.remove(this);
+			}
+		}
+
+		/**
+		 * Send the employee lines added to employees.txt since the last pass. Only whole lines are sent, in
+		 * case one is being written. Every line is sent on connecting, and followers skip the ones they have.
+		 */
+
+		private void sendEmployees() throws IOException {
+			File file = new File(engine.getDataDirectory(), "employees.txt");
+			if(file.length() <= employeesOffset) {
+				return;
+			}
+			RandomAccessFile employees = new RandomAccessFile(file, "r");
+			byte[] added;
+			try {
+				employees.seek(employeesOffset);
+				added = new byte[(int) (employees.length() - employeesOffset)];
+				employees.readFully(added);
+			} finally {
+				employees.close();
+			}
+			int lineStart = 0;
+			for(int i = 0; i < added.length; i++) {
+				if(added[i] == '\n') {
+					String[] employee = new String(added, lineStart, i - lineStart, StandardCharsets.UTF_8).trim().split(",");
+					if(employee.length >= 2) {
+						out.writeByte(EMPLOYEE);
+						out.writeUTF(employee[0]);
+						out.writeUTF(employee[1]);
+					}
+					lineStart = i + 1;
+				}
+			}
+			employeesOffset += lineStart;
+			out.flush();
+			lastSent = System.currentTimeMillis();
+		}
+
+		/**
+		 * Send the journal records written after a position in batches.
+		 */
+
+		private void sendPunches(JournalPosition position) throws IOException {
+			try {
+				engine.getJournal().readAfter(position, (ordinal, type, epochMinute) -> {
+					ordinals[batched] = ordinal;
+					codes[batched] = type;
+					minutes[batched] = epochMinute;
+					batched++;
+					YearMonth month = JournalSegment.monthOf(epochMinute);
+					Long count = sent.get(month);
+					sent.put(month, (count == null ? 0 : count) + 1);
+					if(batched == BATCH_RECORDS) {
+						try {
+							sendBatch();
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			sendBatch();
+		}
+
+		private void sendBatch() throws IOException {
+			if(batched == 0) {
+				return;
+			}
+			//Entries of the dictionary are added before the records that use them are written
+			EmployeeIds ids = engine.getIds();
+			for(int size = ids.size(); sentIds < size; sentIds++) {
+				out.writeByte(ID);
+				out.writeInt(sentIds);
+				out.writeUTF(ids.get(sentIds));
+			}
+			long now = System.currentTimeMillis();
+			sentRecords += batched;
+			out.writeByte(PUNCHES);
+			out.writeLong(now);
+			out.writeLong(engine.getJournalPosition().getTotalRecords());
+			out.writeInt(batched);
+			for(int i = 0; i < batched; i++) {
+				out.writeInt(ordinals[i]);
+				out.writeByte(codes[i]);
+				out.writeInt(minutes[i]);
+			}
+			out.flush();
+			batched = 0;
+			lastSent = now;
+			synchronized(this) {
+				unacknowledged.add(new long[] {sentRecords, now});
+				if(oldestUnacknowledged == 0) {
+					oldestUnacknowledged = now;
+				}
+			}
+		}
+
+		/**
+		 * Read the acknowledgements that have arrived, without waiting for more.
+		 */
+
+		private void readAcknowledgements(DataInputStream in) throws IOException {
+			while(in.available() >= 16) {
+				long records = in.readLong();
+				in.readLong();
+				acknowledged = records;
+				synchronized(this) {
+					while(!unacknowledged.isEmpty() && unacknowledged.peek()[0] <= records) {
+						unacknowledged.poll();
+					}
+					oldestUnacknowledged = unacknowledged.isEmpty() ? 0 : unacknowledged.peek()[1];
+				}
+			}
+		}
+
+		/**
+		 * @return how long the oldest batch the follower has not made durable has been waiting, 0 if none
+		 */
+
+		private long getLagMillis() {
+			long oldest = oldestUnacknowledged;
+			return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+		}
+
+		private void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//Closing is assumed to work, no error handling here
+				e.printStackTrace();
+			}
+		}
+	}//FollowerLink
+}//ReplicationLeader
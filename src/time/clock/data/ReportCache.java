@@ -0,0 +1,166 @@
+package time.clock.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Least recently used cache of rendered single employee reports, bounded by entries and characters.
+ * A punch drops only its own employee's reports. Each employee has a version that a punch moves on,
+ * so a report rendered while a punch is recorded is never cached over it.
+ */
+
+public class ReportCache {
+
+	/**
+	 * What a cached report was rendered for: an employee, date range and activity type.
+	 */
+
+	private static class Key {
+		private String employeeID;
+		private int fromMinute;
+		private int toMinute;
+		private ActivityType type;
+
+		private Key(ReportQuery query) {
+			employeeID = query.getEmployeeID();
+			fromMinute = query.getFromMinute();
+			toMinute = query.getToMinute();
+			type = query.getType();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return employeeID.equals(key.employeeID) && fromMinute == key.fromMinute && toMinute == key.toMinute && type == key.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(employeeID, fromMinute, toMinute, type);
+		}
+	}
+
+	private int maxEntries;								//Most reports kept
+	private long maxChars;								//Most characters kept across every report
+	private long chars;									//Characters kept
+	private LinkedHashMap<Key, RenderedReport> reports;	//Reports, least recently used first
+	private Map<String, Set<Key>> byEmployee;			//Cached keys of each employee
+	private Map<String, Long> versions;					//Punches recorded for each employee since it was first seen
+	private long generation;							//Times the whole cache was cleared
+	private long hits;									//Reports served from the cache
+	private long misses;								//Reports rendered
+
+	/**
+	 * @param maxEntries	Most reports kept
+	 * @param maxChars		Most characters kept across every report
+	 */
+
+	public ReportCache(int maxEntries, long maxChars) {
+		this.maxEntries = maxEntries;
+		this.maxChars = maxChars;
+		reports = new LinkedHashMap<Key, RenderedReport>(16, 0.75f, true);
+		byEmployee = new HashMap<String, Set<Key>>();
+		versions = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Get a report from the cache, rendering and caching it if it is not there.
+	 * @param query		A single employee query
+	 * @param render	Renders the report on a miss, outside the cache's lock
+	 * @return the report
+	 */
+
+	public RenderedReport get(ReportQuery query, Supplier<RenderedReport> render) {
+		Key key = new Key(query);
+		Long version;
+		long cleared;
+		synchronized(this) {
+			RenderedReport cached = reports.get(key);
+			if(cached != null) {
+				hits++;
+				return cached;
+			}
+			misses++;
+			version = versions.get(key.employeeID);
+			cleared = generation;
+		}
+		RenderedReport report = render.get();
+		synchronized(this) {
+			//Reports over a quarter of the limit would push most others out, so they are not kept
+			if(cleared == generation && Objects.equals(version, versions.get(key.employeeID)) && report.length() <= maxChars / 4) {
+				put(key, report);
+			}
+		}
+		return report;
+	}
+
+	private void put(Key key, RenderedReport report) {
+		RenderedReport replaced = reports.put(key, report);
+		if(replaced != null) {
+			chars -= replaced.length();
+		}
+		chars += report.length();
+		Set<Key> keys = byEmployee.get(key.employeeID);
+		if(keys == null) {
+			keys = new HashSet<Key>();
+			byEmployee.put(key.employeeID, keys);
+		}
+		keys.add(key);
+
+		Iterator<Map.Entry<Key, RenderedReport>> eldest = reports.entrySet().iterator();
+		while(reports.size() > maxEntries || chars > maxChars) {
+			Map.Entry<Key, RenderedReport> entry = eldest.next();
+			chars -= entry.getValue().length();
+			Set<Key> employeeKeys = byEmployee.get(entry.getKey().employeeID);
+			employeeKeys.remove(entry.getKey());
+			if(employeeKeys.isEmpty()) {
+				byEmployee.remove(entry.getKey().employeeID);
+			}
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drop an employee's reports after a punch.
+	 * @param employeeID The employee ID
+	 */
+
+	public synchronized void invalidate(String employeeID) {
+		Long version = versions.get(employeeID);
+		versions.put(employeeID, version == null ? 1 : version + 1);
+		Set<Key> keys = byEmployee.remove(employeeID);
+		if(keys != null) {
+			for(Key key: keys) {
+				chars -= reports.remove(key).length();
+			}
+		}
+	}
+
+	/**
+	 * Drop every report, e.g. after activities are added outside of punches.
+	 */
+
+	public synchronized void clear() {
+		generation++;
+		reports.clear();
+		byEmployee.clear();
+		chars = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}//ReportCache
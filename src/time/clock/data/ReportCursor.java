@@ -0,0 +1,286 @@
+package time.clock.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily walks the activity stores for the activities matching a {@link ReportQuery}. Only the rows
+ * needed for the next page are read, and time ordered rows are searched to the start of the date range,
+ * so the first page costs the same however much history there is.
+ */
+
+public class ReportCursor implements Iterator<Activity> {
+	private List<ActivityStore> stores;	//Stores to walk, oldest first
+	private ReportQuery query;			//Filters
+	private int fromMinute;				//First epoch minute included
+	private int toMinute;				//First epoch minute after the range
+	private int storeIndex;				//Store being walked
+	private ActivityStore store;		//Store being walked, null before the first
+	private int[] rows;					//Rows of the employee being reported on, null for all employees
+	private boolean ordered;			//If rows in the current store are in time order
+	private int position;				//Next position in the current store
+	private int end;					//Position after the last in the current store
+	private Activity next;				//Next matching activity, null if not found yet
+	private boolean byTime;				//If the activities are returned in time order rather than the order recorded
+	private boolean walkInOrder;		//If the stores are in time order already, so they are walked without sorting
+	private List<Activity> group;		//Activities of one minute by employee ID, when returned in time order
+	private int groupPosition;			//Next position in the group
+	private Activity pending;			//First activity of the next minute, read past the end of the group
+	private long[] order;				//Matching rows sorted by time, as epoch minute and then sequence number
+	private int[] orderStores;			//Store of each matching row by sequence number
+	private int[] orderRows;			//Row of each matching row by sequence number
+	private int orderPosition;			//Next position in the sorted rows
+
+	/**
+	 * Set up a cursor over the activities in the order they were recorded.
+	 * @param stores	Stores to walk, oldest first
+	 * @param query		Filters
+	 */
+
+	public ReportCursor(List<ActivityStore> stores, ReportQuery query) {
+		this(stores, query, false);
+	}
+
+	/**
+	 * Set up a cursor.
+	 * @param stores	Stores to walk, oldest first
+	 * @param query		Filters
+	 * @param byTime	True for the activities in time order, those at the same minute by employee ID and then
+	 * 					in the order recorded, so reports split between shards merge into the same order.
+	 * 					Stores already in time order are walked as they are, others are sorted on the first read.
+	 */
+
+	public ReportCursor(List<ActivityStore> stores, ReportQuery query, boolean byTime) {
+		this.stores = stores;
+		this.query = query;
+		this.byTime = byTime;
+		if(byTime) {
+			walkInOrder = inTimeOrder(stores);
+			group = new ArrayList<Activity>();
+		}
+		fromMinute = query.getFromMinute();
+		toMinute = query.getToMinute();
+		storeIndex = -1;
+		store = null;
+		next = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(next == null) {
+			next = findNext();
+		}
+		return next != null;
+	}
+
+	@Override
+	public Activity next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Activity activity = next;
+		next = null;
+		return activity;
+	}
+
+	/**
+	 * Read the next page of matching activities.
+	 * @param pageSize Most activities to read
+	 * @return the page, empty once the report is finished
+	 */
+
+	public List<Activity> nextPage(int pageSize) {
+		List<Activity> page = new ArrayList<Activity>(pageSize);
+		while(page.size() < pageSize && hasNext()) {
+			page.add(next());
+		}
+		return page;
+	}
+
+	/**
+	 * Skip matching activities.
+	 * @param count How many to skip
+	 */
+
+	public void skip(long count) {
+		for(long i = 0; i < count && hasNext(); i++) {
+			next();
+		}
+	}
+
+	private Activity findNext() {
+		if(byTime) {
+			return nextInGroup();
+		}
+		int row = nextRow();
+		return row < 0 ? null : store.getActivity(row);
+	}
+
+	/**
+	 * Return the activities of each minute by employee ID. A minute holds a few punches at most, so they are
+	 * gathered and sorted as they are reached.
+	 */
+
+	private Activity nextInGroup() {
+		if(groupPosition < group.size()) {
+			return group.get(groupPosition++);
+		}
+		group.clear();
+		groupPosition = 0;
+		Activity first = pending != null ? pending : nextByTime();
+		if(first == null) {
+			return null;
+		}
+		group.add(first);
+		Activity more;
+		while((more = nextByTime()) != null && more.getDateTime().equals(first.getDateTime())) {
+			group.add(more);
+		}
+		pending = more;
+		if(group.size() > 1) {
+			//A stable sort, so an employee's punches in the minute stay in the order recorded
+			group.sort(Comparator.comparing(Activity::getEmployeeID));
+		}
+		return group.get(groupPosition++);
+	}
+
+	/**
+	 * @return the next matching activity in time order, those at the same minute in the order recorded
+	 */
+
+	private Activity nextByTime() {
+		if(walkInOrder) {
+			int row = nextRow();
+			return row < 0 ? null : store.getActivity(row);
+		}
+		if(order == null) {
+			sortRows();
+		}
+		if(orderPosition >= order.length) {
+			return null;
+		}
+		//The sequence number is in the low half
+		int sequence = (int) order[orderPosition++];
+		return stores.get(orderStores[sequence]).getActivity(orderRows[sequence]);
+	}
+
+	/**
+	 * Find every matching row and sort them by time, keeping the order recorded within a minute.
+	 */
+
+	private void sortRows() {
+		long[] keys = new long[1024];
+		orderStores = new int[keys.length];
+		orderRows = new int[keys.length];
+		int count = 0;
+		int row;
+		while((row = nextRow()) >= 0) {
+			if(count == keys.length) {
+				keys = Arrays.copyOf(keys, count * 2);
+				orderStores = Arrays.copyOf(orderStores, count * 2);
+				orderRows = Arrays.copyOf(orderRows, count * 2);
+			}
+			keys[count] = (long) store.getEpochMinute(row) << 32 | count;
+			orderStores[count] = storeIndex;
+			orderRows[count] = row;
+			count++;
+		}
+		order = Arrays.copyOf(keys, count);
+		Arrays.sort(order);
+	}
+
+	/**
+	 * @return true if every store is in time order and each ends no later than the next starts
+	 */
+
+	private static boolean inTimeOrder(List<ActivityStore> stores) {
+		int last = Integer.MIN_VALUE;
+		for(ActivityStore store: stores) {
+			if(!store.isSorted()) {
+				return false;
+			}
+			int size = store.size();
+			if(size > 0) {
+				if(store.getEpochMinute(0) < last) {
+					return false;
+				}
+				last = store.getEpochMinute(size - 1);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Walk to the next matching row in the order recorded.
+	 * @return the row in the current store, or -1 once there are no more
+	 */
+
+	private int nextRow() {
+		while(true) {
+			if(store == null || position >= end) {
+				if(!openNextStore()) {
+					return -1;
+				}
+				continue;
+			}
+
+			int row = rows == null ? position : rows[position];
+			position++;
+			int epochMinute = store.getEpochMinute(row);
+			if(epochMinute >= toMinute && ordered) {
+				//Nothing later in this store can be in range
+				position = end;
+				continue;
+			}
+			if(epochMinute < fromMinute || epochMinute >= toMinute) {
+				continue;
+			}
+			if(query.getType() != null && store.getCode(row) != query.getType().getCode()) {
+				continue;
+			}
+			return row;
+		}
+	}
+
+	/**
+	 * Move to the next store and position at the start of the date range.
+	 * @return false if there are no more stores
+	 */
+
+	private boolean openNextStore() {
+		storeIndex++;
+		if(storeIndex >= stores.size()) {
+			store = null;
+			return false;
+		}
+		store = stores.get(storeIndex);
+
+		if(query.getEmployeeID() != null) {
+			//An employee's rows are always in time order
+			rows = store.getRows(query.getEmployeeID());
+			ordered = true;
+			end = rows.length;
+			int low = 0;
+			int high = rows.length;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(store.getEpochMinute(rows[middle]) < fromMinute) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			position = low;
+		} else {
+			rows = null;
+			ordered = store.isSorted();
+			end = store.size();
+			position = ordered ? store.firstRowAtOrAfter(fromMinute) : 0;
+		}
+		return true;
+	}
+}//ReportCursor
@@ -0,0 +1,78 @@
+package time.clock.data;
+
+import java.time.LocalDate;
+
+/**
+ * Filters for a shift activity report. Any filter left null matches everything.
+ */
+
+public class ReportQuery {
+	private String employeeID;	//Only this employee's activities
+	private LocalDate from;		//First day included
+	private LocalDate to;		//Last day included
+	private ActivityType type;	//Only this type of activity
+
+	/**
+	 * Set up a query.
+	 * @param employeeID	Employee to report on, null for all employees
+	 * @param from			First day included, null for no start
+	 * @param to			Last day included, null for no end
+	 * @param type			Activity type to report on, null for all types
+	 */
+
+	public ReportQuery(String employeeID, LocalDate from, LocalDate to, ActivityType type) {
+		this.employeeID = employeeID;
+		this.from = from;
+		this.to = to;
+		this.type = type;
+	}
+
+	/**
+	 * @return a query matching every activity
+	 */
+
+	public static ReportQuery all() {
+		return new ReportQuery(null, null, null, null);
+	}
+
+	/**
+	 * @param employeeID The employee ID
+	 * @return a query matching all of an employee's activities
+	 */
+
+	public static ReportQuery employee(String employeeID) {
+		return new ReportQuery(employeeID, null, null, null);
+	}
+
+	public String getEmployeeID() {
+		return employeeID;
+	}
+
+	public LocalDate getFrom() {
+		return from;
+	}
+
+	public LocalDate getTo() {
+		return to;
+	}
+
+	public ActivityType getType() {
+		return type;
+	}
+
+	/**
+	 * @return the first epoch minute included
+	 */
+
+	public int getFromMinute() {
+		return from == null ? Integer.MIN_VALUE : TimeFormats.toEpochMinute(from.atStartOfDay());
+	}
+
+	/**
+	 * @return the first epoch minute after the range
+	 */
+
+	public int getToMinute() {
+		return to == null ? Integer.MAX_VALUE : TimeFormats.toEpochMinute(to.plusDays(1).atStartOfDay());
+	}
+}//ReportQuery
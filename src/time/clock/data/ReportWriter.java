@@ -0,0 +1,97 @@
+package time.clock.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Renders report rows through a buffer, a page at a time, instead of one console write per row.
+ */
+
+public class ReportWriter {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private Writer out;	//Buffered output
+
+	/**
+	 * Set up a writer on an output stream. The stream is flushed after each page but never closed.
+	 * @param stream The output stream, e.g. System.out
+	 */
+
+	public ReportWriter(OutputStream stream) {
+		this(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Set up a writer on a character writer. The writer is flushed after each page but never closed.
+	 * @param writer The writer
+	 */
+
+	public ReportWriter(Writer writer) {
+		out = new BufferedWriter(writer, BUFFER_SIZE);
+	}
+
+	/**
+	 * Write a page of a single employee's activity, e.g. 03/08/2022 07:50 AM: Shift started.
+	 * @param page The activities
+	 * @throws IOException if the output fails
+	 */
+
+	public void writeEmployeePage(List<Activity> page) throws IOException {
+		for(Activity action: page) {
+			out.write(TimeFormats.format(action.getDateTime()));
+			out.write(": ");
+			out.write(action.getActivity().getDescription());
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write a page of all employee activity, e.g. Date: 03/08/2022 07:50 AM, Employee: abcd, Activity: Shift started.
+	 * @param page The activities
+	 * @throws IOException if the output fails
+	 */
+
+	public void writeAllPage(List<Activity> page) throws IOException {
+		for(Activity action: page) {
+			out.write("Date: ");
+			out.write(TimeFormats.format(action.getDateTime()));
+			out.write(", Employee: ");
+			out.write(action.getEmployeeID());
+			out.write(", Activity: ");
+			out.write(action.getActivity().getDescription());
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write lines of a report rendered earlier.
+	 * @param report	The rendered report
+	 * @param first		First line to write
+	 * @param count		Most lines to write
+	 * @return the number of lines written
+	 * @throws IOException if the output fails
+	 */
+
+	public int writeRendered(RenderedReport report, long first, long count) throws IOException {
+		return report.write(out, first, count);
+	}
+
+	/**
+	 * Write a single line.
+	 * @param line The line, without a line break
+	 * @throws IOException if the output fails
+	 */
+
+	public void writeLine(String line) throws IOException {
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+}//ReportWriter
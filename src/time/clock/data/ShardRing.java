@@ -0,0 +1,79 @@
+package time.clock.data;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hash ring that splits employees between shards by uniqueID. Each shard owns many points on
+ * the ring, and an employee belongs to the shard owning the first point at or after the hash of their ID.
+ * Shards are known by their number, not their address, so a shard can move without moving its employees.
+ * Adding a shard only moves the employees that land on its points, about one in the new number of shards,
+ * and every other employee stays where they were.
+ */
+
+public class ShardRing {
+
+	public static final int POINTS_PER_SHARD = 128;	//Points each shard owns, enough to spread employees within a few percent
+
+	private int shards;			//Number of shards
+	private int[] points;		//Hashes of every shard's points, sorted
+	private int[] owners;		//Shard owning each point
+
+	/**
+	 * Set up the ring for a number of shards.
+	 * @param shards Number of shards, numbered from 0
+	 */
+
+	public ShardRing(int shards) {
+		if(shards < 1) {
+			throw new IllegalArgumentException("Expected at least one shard, got " + shards);
+		}
+		this.shards = shards;
+		//Point hash in the high half and shard in the low half, so points that collide still sort the same way every time
+		long[] packed = new long[shards * POINTS_PER_SHARD];
+		for(int shard = 0; shard < shards; shard++) {
+			for(int point = 0; point < POINTS_PER_SHARD; point++) {
+				packed[shard * POINTS_PER_SHARD + point] = (long) hash("shard-" + shard + "#" + point) << 32 | shard;
+			}
+		}
+		Arrays.sort(packed);
+		points = new int[packed.length];
+		owners = new int[packed.length];
+		for(int i = 0; i < packed.length; i++) {
+			points[i] = (int) (packed[i] >> 32);
+			owners[i] = (int) packed[i];
+		}
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * @param employeeID The employee's uniqueID
+	 * @return the number of the shard the employee belongs to
+	 */
+
+	public int shardOf(String employeeID) {
+		int index = Arrays.binarySearch(points, hash(employeeID));
+		if(index < 0) {
+			index = -index - 1;
+		}
+		//Past the last point wraps round to the first
+		return owners[index == points.length ? 0 : index];
+	}
+
+	/**
+	 * Hash a string for the ring. String.hashCode is the same on every JVM, so every router and split agree,
+	 * and the finalizer of MurmurHash3 spreads the close hashes of IDs like e1, e2 and e3 round the ring.
+	 */
+
+	static int hash(String key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}//ShardRing
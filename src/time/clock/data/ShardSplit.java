@@ -0,0 +1,123 @@
+package time.clock.data;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Splits one time clock's data between shards. Each shard gets a shard-N directory holding the
+ * employees.txt of the employees the {@link ShardRing} gives it and a calendar.txt of their punches,
+ * which the shard converts into its own journal when it first starts. Admins are copied to every shard, so
+ * any shard can check an admin request passed on by the router, and their punches still go to one shard.
+ */
+
+public class ShardSplit {
+
+	private static final int PAGE = 10000;	//Punches read from the journal at a time
+
+	private ShardSplit() {
+	}
+
+	/**
+	 * Split a data directory between shards.
+	 * @param dataDirectory	Directory holding employees.txt and the punch journal
+	 * @param ring			Ring giving each employee's shard
+	 * @return the employees and punches written to each shard
+	 * @throws IOException if a shard's files cannot be written
+	 */
+
+	public static String split(File dataDirectory, ShardRing ring) throws IOException {
+		int shards = ring.getShards();
+		long[] employees = new long[shards];
+		long[] punches = new long[shards];
+		final Writer[] employeeFiles = new Writer[shards];
+		Writer[] calendarFiles = new Writer[shards];
+		try {
+			for(int shard = 0; shard < shards; shard++) {
+				File directory = new File(dataDirectory, "shard-" + shard);
+				if(!directory.isDirectory() && !directory.mkdirs()) {
+					throw new IOException("Could not create " + directory);
+				}
+				employeeFiles[shard] = open(new File(directory, "employees.txt"));
+				calendarFiles[shard] = open(new File(directory, "calendar.txt"));
+			}
+
+			//Employees are copied from employees.txt, which keeps their roles
+			FileChannel input = FileChannel.open(new File(dataDirectory, "employees.txt").toPath());
+			try {
+				CsvParser parser = new CsvParser(input, Charset.defaultCharset());
+				IOException[] failed = new IOException[1];
+				parser.readEmployees((employeeID, role) -> {
+					int shard = ring.shardOf(employeeID);
+					boolean everyShard = role.equals("admin");
+					try {
+						for(int to = 0; to < shards; to++) {
+							if(to == shard || everyShard) {
+								employeeFiles[to].write(employeeID + "," + role + "\n");
+								employees[to]++;
+							}
+						}
+					} catch (IOException e) {
+						failed[0] = e;
+					}
+				});
+				if(failed[0] != null) {
+					throw failed[0];
+				}
+				parser.reportMalformed("employees.txt");
+			} finally {
+				input.close();
+			}
+
+			//Punches are read from the journal, which calendar.txt was converted into
+			PunchEngine engine = new PunchEngine(dataDirectory, DurabilityPolicy.parse("punch"));
+			try {
+				ReportCursor cursor = engine.query(new ReportQuery(null, null, null, null));
+				while(cursor.hasNext()) {
+					List<Activity> page = cursor.nextPage(PAGE);
+					for(Activity activity: page) {
+						int shard = ring.shardOf(activity.getEmployeeID());
+						Writer out = calendarFiles[shard];
+						out.write(activity.getEmployeeID());
+						out.write(',');
+						out.write(activity.getActivity().getName());
+						out.write(',');
+						out.write(TimeFormats.format(activity.getDateTime()));
+						out.write('\n');
+						punches[shard]++;
+					}
+				}
+			} finally {
+				engine.close();
+			}
+		} finally {
+			close(employeeFiles);
+			close(calendarFiles);
+		}
+
+		StringBuilder summary = new StringBuilder();
+		for(int shard = 0; shard < shards; shard++) {
+			summary.append("shard-").append(shard).append(": ").append(employees[shard]).append(" employees, ")
+				.append(punches[shard]).append(" punches\n");
+		}
+		return summary.toString();
+	}
+
+	private static Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.defaultCharset()), 1 << 16);
+	}
+
+	private static void close(Writer[] writers) throws IOException {
+		for(Writer writer: writers) {
+			if(writer != null) {
+				writer.close();
+			}
+		}
+	}
+}//ShardSplit
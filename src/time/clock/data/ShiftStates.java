@@ -0,0 +1,103 @@
+package time.clock.data;
+
+/**
+ * The shift, break and lunch rules as a transition table. An employee's state is the {@link Employee}
+ * state bits, and each activity code and state has one entry holding whether the punch is allowed and
+ * the state after it, so checking a punch is a single array lookup. Punches, imports and replays all
+ * go through this table.
+ */
+
+public final class ShiftStates {
+
+	public static final int STATES = 8;		//Every combination of the on shift, break and lunch bits
+
+	private static final PunchResult.Status[] STATUSES = PunchResult.Status.values();
+
+	//Entry for each activity code and state: the state after the punch in the low byte, the status ordinal above it.
+	//Rejected punches still hold the state an admin, who may make any punch, moves to.
+	private static final int[] TRANSITIONS = new int[ActivityType.values().length * STATES];
+
+	static {
+		PunchResult.Status recorded = PunchResult.Status.RECORDED;
+		for(int state = 0; state < STATES; state++) {
+			boolean onShift = (state & Employee.ON_SHIFT) != 0;
+			boolean onBreak = (state & Employee.ON_BREAK) != 0;
+			boolean onLunch = (state & Employee.ON_LUNCH) != 0;
+			PunchResult.Status needsShift = onShift ? recorded : PunchResult.Status.NOT_ON_SHIFT;
+
+			rule(ActivityType.CLOCK_IN, state, onShift ? PunchResult.Status.ALREADY_ON_SHIFT : recorded, state | Employee.ON_SHIFT);
+			rule(ActivityType.CLOCK_OUT, state, needsShift, state & ~Employee.ON_SHIFT);
+			rule(ActivityType.BREAK_START, state, onShift && onBreak ? PunchResult.Status.ALREADY_ON_BREAK : needsShift, state | Employee.ON_BREAK);
+			rule(ActivityType.BREAK_END, state, onShift && !onBreak ? PunchResult.Status.NOT_ON_BREAK : needsShift, state & ~Employee.ON_BREAK);
+			rule(ActivityType.LUNCH_START, state, onShift && onLunch ? PunchResult.Status.ALREADY_ON_LUNCH : needsShift, state | Employee.ON_LUNCH);
+			rule(ActivityType.LUNCH_END, state, onShift && !onLunch ? PunchResult.Status.NOT_ON_LUNCH : needsShift, state & ~Employee.ON_LUNCH);
+		}
+	}
+
+	private ShiftStates() {
+	}
+
+	private static void rule(ActivityType type, int state, PunchResult.Status status, int next) {
+		TRANSITIONS[type.getCode() * STATES + state] = status.ordinal() << 8 | next;
+	}
+
+	/**
+	 * Look up a punch in the transition table.
+	 * @param state	The employee's state bits
+	 * @param code	Activity code
+	 * @return the transition, read with {@link #status(int)} and {@link #next(int)}
+	 */
+
+	public static int transition(int state, byte code) {
+		return TRANSITIONS[code * STATES + state];
+	}
+
+	/**
+	 * @param transition A transition from {@link #transition(int, byte)}
+	 * @return RECORDED if the punch is allowed, otherwise why it is not
+	 */
+
+	public static PunchResult.Status status(int transition) {
+		return STATUSES[transition >>> 8];
+	}
+
+	/**
+	 * @param transition A transition from {@link #transition(int, byte)}
+	 * @return true if the punch is allowed
+	 */
+
+	public static boolean isAllowed(int transition) {
+		return transition >>> 8 == 0;
+	}
+
+	/**
+	 * @param transition A transition from {@link #transition(int, byte)}
+	 * @return the state bits after the punch
+	 */
+
+	public static int next(int transition) {
+		return transition & 0xff;
+	}
+
+	/**
+	 * Check a punch against the shift, break and lunch rules.
+	 * @param state	The employee's state bits
+	 * @param code	Activity code
+	 * @return RECORDED if the punch is allowed, otherwise why it is not
+	 */
+
+	public static PunchResult.Status check(int state, byte code) {
+		return status(transition(state, code));
+	}
+
+	/**
+	 * Work out an employee's state after a punch, whether or not the rules allow it.
+	 * @param state	The employee's state bits
+	 * @param code	Activity code
+	 * @return the new state bits
+	 */
+
+	public static int next(int state, byte code) {
+		return next(transition(state, code));
+	}
+}//ShiftStates
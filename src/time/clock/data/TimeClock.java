@@ -1,154 +1,39 @@
 package time.clock.data;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.InputMismatchException;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class TimeClock {
 
-	private String today;					//Today's date
-	private List<Employee> listEmployees;	//List of Employees
-	private List<Activity> listActivities;	//List of activities of an employee
+	private PunchEngine engine;		//Shared engine holding employees and activities
+	private boolean ownsEngine;		//If this session created the engine and closes it on exit
+	
+	private static final int REPORT_PAGE_SIZE = 50;	//Activities shown per report page
 	
 	/**
 	 * Constructor for the Time Clock application. Get today's date and initialize data from files in src
 	 */
 	
 	public TimeClock() {
-		SimpleDateFormat dateFormat = new SimpleDateFormat ("MM/dd/yyyy");
-		today = dateFormat.format(new Date()).toString();
-		listActivities = new ArrayList<Activity>();
-		listEmployees = new ArrayList<Employee>();
-		initializeCalendar();
-		initializeEmployees();
-	}
-	
-	/**
-	 * Initialize the activities calendar list from external file.
-	 */
-	
-	private void initializeCalendar() {
-		
-		//File location
-		File f = new File("src/calendar.txt");
-		
-		//Date format
-		SimpleDateFormat dateFormat = new SimpleDateFormat ("MM/dd/yyyy hh:mm aa");
-		
-		try {
-			//Use Scanner to read file contents in CSV format
-			Scanner input = new Scanner(f);
-			while(input.hasNextLine()) {
-				//Split line data from CSV format and read in date String as Date object
-				String[] activity = input.nextLine().split(",");
-				Date timeStamp = null;
-				try {
-					timeStamp = dateFormat.parse(activity[2]);
-				} catch (ParseException e) {
-					//File is assumed to be correct format, no error handling here
-					e.printStackTrace();
-				}
-				//Once a line is read, an activity is made and added to the list
-				Activity newActivity = new Activity(activity[0], activity[1], timeStamp);
-				listActivities.add(newActivity);
-			}
-			input.close();
-		} catch (FileNotFoundException e) {
-			//File is assumed to be here, no error handling here
-			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * Initialize employee list from external file.
-	 */
-	
-	private void initializeEmployees() {
-		//File location
-		File f = new File("src/employees.txt");
-		try {
-			//Use Scanner to read file contents in CSV format
-			Scanner input = new Scanner(f);
-			while(input.hasNextLine()) {
-				//Split line data from CSV format and call extra function to set up employee.
-				String[] employee = input.nextLine().split(",");
-				setUpEmployee(employee[0], employee[1], true);
-			}
-			input.close();
-		} catch (FileNotFoundException e) {
-			//File is assumed to be here, no error handling here
-			e.printStackTrace();
-		}
+		this(new PunchEngine(new File("src"), DurabilityPolicy.fromSystemProperty()));
+		ownsEngine = true;
 	}
 	
 	/**
-	 * Set up a single employee and add it to the employee list.
-	 * 
-	 * @param employeeID		The employee ID
-	 * @param role				The role of the employee
-	 * @param employeeStatus	Boolean for handling current vs new employees
+	 * Constructor for a terminal session on an engine shared with other terminals.
+	 * @param engine The shared engine
 	 */
 	
-	private void setUpEmployee(String employeeID, String role, boolean employeeStatus) {
-		//Construct an employee.
-		Employee employee = new Employee (employeeID, role);
-		
-		//If current employee, compare with the list of activities and current flags accordingly.
-		if(employeeStatus) {
-			for(Activity singleActivity: listActivities) {
-				if(singleActivity.getEmployeeID().equals(employeeID)) {
-					//Only set the flags for today in case if the user logs out today. History is forgotten past the current day.
-					SimpleDateFormat dateFormat = new SimpleDateFormat ("MM/dd/yyyy");
-					String activityDate = dateFormat.format(singleActivity.getDate()).toString();
-					if(activityDate.equals(today)) {
-						String action = singleActivity.getActivity();
-						if(action.equals("clock-in")) {
-							employee.setOnShift(true);
-						} else if(action.equals("clock-out")) {
-							employee.setOnShift(false);
-						} else if(action.equals("break-start")) {
-							employee.setOnBreak(true);
-						} else if(action.equals("break-end")) {
-							employee.setOnBreak(false);
-						} else if(action.equals("lunch-start")) {
-							employee.setOnLunch(true);
-						} else if(action.equals("lunch-end")) {
-							employee.setOnLunch(false);
-						}
-					}
-				}
-			}
-		} else {
-			//New employee, write the employee to a file. No need to set flags for employee.
-			File f = new File("src/employees.txt");
-			FileWriter fw;
-			
-			//Format is: employeeID,role
-			String writeToFile = employeeID + "," + role + "\n";
-			
-			try {
-				fw = new FileWriter(f, true);
-				fw.write(writeToFile);
-				fw.close();
-			} catch (IOException e) {
-				//File is assumed to be here, no error handling here
-				e.printStackTrace();
-			}
-			
-			System.out.println("\nNew employee added successfully: " + employeeID);
-		}
-		
-		//Add the employee
-		listEmployees.add(employee);
+	public TimeClock(PunchEngine engine) {
+		this.engine = engine;
+		ownsEngine = false;
 	}
 	
 	/**
@@ -199,6 +84,8 @@ public class TimeClock {
 		System.out.println("\nReports Menu:");
 		System.out.println("1. View an employee ID's shift activity.");
 		System.out.println("2. View all employee shift data.");
+		System.out.println("3. Search shift data by employee, dates and activity.");
+		System.out.println("4. View worked hours for a pay period.");
 		System.out.println("0. Return to the Employee home menu.\n");
 	}
 	
@@ -208,9 +95,7 @@ public class TimeClock {
 	 */
 	
 	public String getCurrentTime() {
-		DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm aa");
-		String date = dateFormat.format(new Date()).toString();
-		return date;
+		return TimeFormats.format(LocalDateTime.now(TimeFormats.ZONE));
 	}
 	
 	/**
@@ -239,7 +124,7 @@ public class TimeClock {
 					do {
 						System.out.print("\nPlease enter your employee ID: ");
 						employeeID = input.next();
-						employeeCheck = isEmployee(employeeID);
+						employeeCheck = engine.isEmployee(employeeID);
 						if(!employeeCheck) {
 							System.err.println(employeeID + " is not an employee. Please try again.");
 							input.nextLine();
@@ -254,12 +139,16 @@ public class TimeClock {
 					do {
 						System.out.print("\nPlease enter the employee ID you wish to register: ");
 						employeeID = input.next();
-						employeeCheck = isEmployee(employeeID);
+						employeeCheck = engine.isEmployee(employeeID);
 						if(employeeCheck) {
 							System.err.println(employeeID + " is already an employee! Please try again.");
 						}
 					} while(employeeCheck);
-					setUpEmployee(employeeID, "user", false);
+					if(engine.register(employeeID, "user")) {
+						System.out.println("\nNew employee added successfully: " + employeeID);
+					} else {
+						System.err.println(employeeID + " is already an employee!");
+					}
 					displayLoginMenu();
 				} else if(loginOption != 0) {
 					System.err.println("You entered an invalid option. Please try again.");
@@ -271,6 +160,9 @@ public class TimeClock {
 			}
 		} while (loginOption != 0);
 		input.close();
+		if(ownsEngine) {
+			engine.close();
+		}
 	}
 	
 	/**
@@ -282,7 +174,7 @@ public class TimeClock {
 	public void employeeHome(String employeeID, Scanner input) {
 		//Initialize input and options for later
 		int homeOption = -1;
-		Employee employee = getEmployee(employeeID);
+		Employee employee = engine.getEmployee(employeeID);
 		boolean isAdmin = false;
 		
 		//Check for admin role here
@@ -304,88 +196,14 @@ public class TimeClock {
 				homeOption = input.nextInt();
 				switch (homeOption) {
 				
-				//Case 1 - Start work shift but only if they are an admin or not on a shift.
+				//Cases 1 to 6 - Punches, in activity code order. The engine checks them against the shift rules.
 				case 1:
-					if(employee.isOnShift() && !isAdmin) {
-						System.err.println("You are already on a shift. Please select a different option.");
-						input.nextLine();
-					} else {
-						employee.setOnShift(true);
-						recordActivity(employeeID, "clock-in");
-						displayHomeMenu(isAdmin);
-					}
-					break;
-					
-				//Case 2 - End work shift but only if they are an admin or on a shift.
 				case 2:
-					if(!employee.isOnShift() && !isAdmin) {
-						System.err.println("You are not on a shift. Please select a different option.");
-						input.nextLine();
-					} else {
-						employee.setOnShift(false);
-						recordActivity(employeeID, "clock-out");
-						displayHomeMenu(isAdmin);
-					}
-					break;
-				
-				//Case 3 - Start break but only if they are an admin or not on a break.	
 				case 3:
-					if(!employee.isOnShift() && !isAdmin) {
-						System.err.println("You are not on a shift. Please select a different option.");
-						input.nextLine();
-					} else if(employee.isOnBreak() && !isAdmin) {
-						System.err.println("You are already on a break. Please select a different option.");
-						input.nextLine();
-					} else {
-						recordActivity(employeeID, "break-start");
-						employee.setOnBreak(true);
-						displayHomeMenu(isAdmin);
-					}
-					break;
-					
-				//Case 4 - End break but only if they are an admin or on a break.	
 				case 4:
-					if(!employee.isOnShift() && !isAdmin) {
-						System.err.println("You are not on a shift. Please select a different option.");
-						input.nextLine();
-					} else if(!employee.isOnBreak() && !isAdmin) {
-						System.err.println("You are not on a break. Please select a different option.");
-						input.nextLine();
-					} else {
-						recordActivity(employeeID, "break-end");
-						employee.setOnBreak(false);
-						displayHomeMenu(isAdmin);
-					}
-					break;
-				
-				//Case 5 - Start lunch but only if they are an admin or not on a lunch break.	
 				case 5:
-					if(!employee.isOnShift() && !isAdmin) {
-						System.err.println("You are not on a shift. Please select a different option.");
-						input.nextLine();
-					} else if(employee.isOnLunch() && !isAdmin) {
-						System.err.println("You are already on a lunch break. Please select a different option.");
-						input.nextLine();
-					} else {
-						recordActivity(employeeID, "lunch-start");
-						employee.setOnLunch(true);
-						displayHomeMenu(isAdmin);
-					}
-					break;
-				
-				//Case 6 - Start break but only if they are an admin or on a lunch break.	
 				case 6:
-					if(!employee.isOnShift() && !isAdmin) {
-						System.err.println("You are not on a shift. Please select a different option.");
-						input.nextLine();
-					} else if(!employee.isOnLunch() && !isAdmin) {
-						System.err.println("You are not on a lunch break. Please select a different option.");
-						input.nextLine();
-					} else {
-						recordActivity(employeeID, "lunch-end");
-						employee.setOnLunch(false);
-						displayHomeMenu(isAdmin);
-					}
+					recordActivity(employeeID, ActivityType.fromCode((byte) (homeOption - 1)), isAdmin, input);
 					break;
 				
 				//Case 7 - Goes to reports menu only if they are an admin.	
@@ -418,48 +236,27 @@ public class TimeClock {
 	}
 	
 	/**
-	 * Record the activity made by the employee in the list of activities. Also write activity to the external file.
+	 * Record the activity made by the employee through the engine, which checks it against the employee's
+	 * current state. Rejected activities tell the employee why.
 	 * @param employeeID Employee that made the activity
 	 * @param action	 Type of action the employee made.
+	 * @param isAdmin	 If true, display admin options
+	 * @param input		 The input parser passed in
 	 */
 	
-	public void recordActivity(String employeeID, String action) {
-		//Define external file and activity
-		File f = new File("src/calendar.txt");
-		FileWriter fw;
-		Date currentTime = new Date();
-		Activity activity = new Activity(employeeID, action, currentTime);
-
-		//Add activity to the list
-		listActivities.add(activity);
-		
-		DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm aa");
-		String date = dateFormat.format(currentTime).toString();
-		
-		//Add activity to the file.
-		String writeToFile = employeeID + "," + action + "," + date + "\n";
-		try {
-			fw = new FileWriter(f, true);
-			fw.write(writeToFile);
-			fw.close();
-		} catch (IOException e) {
-			//File is assumed to be here, no error handling here
-			e.printStackTrace();
-		}
-
-		//Display activity recorded
-		if(action.equals("clock-in")) {
-			System.out.println("\nShift started. Current time: " + date);
-		} else if(action.equals("clock-out")) {
-			System.out.println("\nShift ended. Current time: " + date);
-		} else if(action.equals("break-start")) {
-			System.out.println("\nBreak started. Current time: " + date);
-		} else if(action.equals("break-end")) {
-			System.out.println("\nBreak ended. Current time: " + date);
-		} else if(action.equals("lunch-start")) {
-			System.out.println("\nLunch started. Current time: " + date);
-		} else if(action.equals("lunch-end")) {
-			System.out.println("\nLunch ended. Current time: " + date);
+	public void recordActivity(String employeeID, ActivityType action, boolean isAdmin, Scanner input) {
+		PunchResult result = engine.punch(employeeID, action);
+		if(result.isRecorded()) {
+			//Display activity recorded
+			String date = TimeFormats.format(result.getActivity().getDateTime());
+			System.out.println("\n" + action.getDescription() + " Current time: " + date);
+			displayHomeMenu(isAdmin);
+		} else if(result.getStatus() == PunchResult.Status.NOT_SAVED) {
+			System.err.println(result.getStatus().getMessage());
+			input.nextLine();
+		} else {
+			System.err.println(result.getStatus().getMessage() + " Please select a different option.");
+			input.nextLine();
 		}
 	}
 	
@@ -485,19 +282,30 @@ public class TimeClock {
 					do {
 						System.out.print("\nPlease enter the employee ID that you would like to view shift activity on: ");
 						employeeID = input.next();
-						employeeCheck = isEmployee(employeeID);
+						employeeCheck = engine.isEmployee(employeeID);
 						if(!employeeCheck) {
 							System.err.println(employeeID + " is not an employee. Please try again.");
 							input.nextLine();
 						}
 					} while(!employeeCheck);
 					//Display single employee data
-					displayEmployeeData(employeeID);
+					displayReport(ReportQuery.employee(employeeID), input);
 					displayReportsMenu();
 					break;
 				//Case 2: Display all employee activity
 				case 2:
-					displayAllData();
+					displayReport(ReportQuery.all(), input);
+					displayReportsMenu();
+					break;
+				//Case 3: Search activity by employee, date range and activity type
+				case 3:
+					displayReport(readReportQuery(input), input);
+					displayReportsMenu();
+					break;
+				//Case 4: Display worked hours for every employee in a pay period
+				case 4:
+					LocalDate day = readDate(input, "Please enter a date in the pay period (MM/dd/yyyy), or * for the current pay period: ");
+					displayPayPeriodSummary(day == null ? LocalDate.now(TimeFormats.ZONE) : day);
 					displayReportsMenu();
 					break;
 				
@@ -519,103 +327,195 @@ public class TimeClock {
 	}
 	
 	/**
-	 * Function to check if employee ID entered is an employee in the list
-	 * @param employeeID employee ID
-	 * @return true if employee in list, false otherwise
+	 * Display a single employee's data
+	 * @param employeeID The employee ID.
+	 */
+	
+	public void displayEmployeeData(String employeeID) {
+		displayReport(ReportQuery.employee(employeeID), null);
+	}
+	
+	/**
+	 * Display all shift data for all employees in Date, Employee, Activity format.
 	 */
 	
-	public boolean isEmployee(String employeeID) {
-		for(Employee emp: listEmployees) {
-			if(emp.getUniqueID().equals(employeeID)) {
-				return true;
+	public void displayAllData() {	
+		displayReport(ReportQuery.all(), null);
+	}
+	
+	/**
+	 * Stream a report to the console a page at a time. Only one page of activities is read ahead, so the
+	 * first page shows straight away however much history there is. Single employee reports come from
+	 * the engine's report cache, so viewing one again costs nothing until the employee punches.
+	 * @param query	Filters for the report. Reports for one employee use the single employee format.
+	 * @param input	If not null, ask before each page after the first so the user can stop early
+	 */
+	
+	public void displayReport(ReportQuery query, Scanner input) {
+		long start = System.nanoTime();
+		long waiting = 0;
+		ReportWriter writer = new ReportWriter(System.out);
+		try {
+			if(query.getEmployeeID() != null) {
+				RenderedReport report = engine.getEmployeeReport(query);
+				if(report.getLineCount() == 0) {
+					writer.writeLine("\nNo shift data for employee: " + query.getEmployeeID());
+					return;
+				}
+				writer.writeLine("\nShift activity for employee: " + query.getEmployeeID());
+				for(int line = 0; line < report.getLineCount(); line += REPORT_PAGE_SIZE) {
+					if(line > 0 && input != null) {
+						//Time spent waiting for the user is left out of the report's latency
+						long prompt = System.nanoTime();
+						boolean stop = askStop(input);
+						waiting += System.nanoTime() - prompt;
+						if(stop) {
+							break;
+						}
+					}
+					writer.writeRendered(report, line, REPORT_PAGE_SIZE);
+				}
+				return;
+			}
+			
+			ReportCursor cursor = engine.query(query);
+			List<Activity> page = cursor.nextPage(REPORT_PAGE_SIZE);
+			
+			//Report activity if there is one
+			writer.writeLine("\nAll shift activity:");
+			if(page.isEmpty()) {
+				writer.writeLine("No shift activity found.");
+				return;
 			}
+			
+			while(!page.isEmpty()) {
+				writer.writeAllPage(page);
+				if(!cursor.hasNext()) {
+					break;
+				}
+				if(input != null) {
+					long prompt = System.nanoTime();
+					boolean stop = askStop(input);
+					waiting += System.nanoTime() - prompt;
+					if(stop) {
+						break;
+					}
+				}
+				page = cursor.nextPage(REPORT_PAGE_SIZE);
+			}
+		} catch (IOException e) {
+			//Console is assumed to be writable, no error handling here
+			e.printStackTrace();
+		} finally {
+			engine.getMetrics().getReportHistogram().record(System.nanoTime() - start - waiting);
 		}
-		return false;
 	}
 	
 	/**
-	 * Get an employee based on the employee ID
-	 * @param employee employee ID
-	 * @return the matching Employee object
+	 * Ask if the user wants the next page of a report.
+	 * @param input The input parser passed in
+	 * @return true if the user wants to stop
 	 */
 	
-	public Employee getEmployee(String employeeID) {
-		Employee employee = null;
-		for(Employee emp: listEmployees) {
-			if(emp.getUniqueID().equals(employeeID)) {
-				employee = emp;
+	private boolean askStop(Scanner input) {
+		System.out.print("\nEnter n for the next page or q to stop: ");
+		return input.next().equalsIgnoreCase("q");
+	}
+	
+	/**
+	 * Display the paid hours, break and lunch minutes of every employee in a pay period.
+	 * @param day Any day in the pay period
+	 */
+	
+	public void displayPayPeriodSummary(LocalDate day) {
+		long start = System.nanoTime();
+		PayPeriod period = engine.getPayPeriod();
+		ReportWriter writer = new ReportWriter(System.out);
+		try {
+			writer.writeLine("\nWorked hours for the pay period " + TimeFormats.formatDate(period.startOf(day))
+					+ " - " + TimeFormats.formatDate(period.endOf(day)) + ":");
+			Map<String, Hours> summary = engine.getPayPeriodSummary(day);
+			if(summary.isEmpty()) {
+				writer.writeLine("No worked hours found.");
+			}
+			for(Map.Entry<String, Hours> entry: summary.entrySet()) {
+				writer.writeLine("Employee: " + entry.getKey() + ", " + entry.getValue());
 			}
+		} catch (IOException e) {
+			//Console is assumed to be writable, no error handling here
+			e.printStackTrace();
+		} finally {
+			engine.getMetrics().getReportHistogram().recordSince(start);
 		}
-		return employee;
 	}
 	
 	/**
-	 * Display a single employee's data
-	 * @param employeeID The employee ID.
+	 * Ask for the filters of a report search. * skips a filter.
+	 * @param input The input parser passed in
+	 * @return the query
 	 */
 	
-	public void displayEmployeeData(String employeeID) {
-		boolean activityFlag = false;
-		for(Activity action: listActivities) {
-			if(action.getEmployeeID().equals(employeeID) ) {
-				//Report activity if there is one
-				if(!activityFlag) {
-					System.out.println("\nShift activity for employee: " + employeeID);
-					activityFlag = true;
-				}
-				
-				//Translate shift activity
-				String activity = action.getActivity();
-				if(activity.equals("clock-in")) {
-					activity = "Shift started.";
-				} else if(activity.equals("clock-out")) {
-					activity = "Shift ended.";
-				} else if(activity.equals("break-start")) {
-					activity = "Break started.";
-				} else if(activity.equals("break-end")) {
-					activity = "Break ended.";
-				} else if(activity.equals("lunch-start")) {
-					activity = "Lunch started.";
-				} else if(activity.equals("lunch-end")) {
-					activity = "Lunch ended.";
-				}
-				DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm aa");
-				String date = dateFormat.format(action.getDate()).toString();
-				
-				System.out.println(date + ": " + activity);
+	public ReportQuery readReportQuery(Scanner input) {
+		String employeeID = null;
+		LocalDate from = null;
+		LocalDate to = null;
+		ActivityType type = null;
+		
+		//Loop until a valid Employee ID or * is entered.
+		while(true) {
+			System.out.print("\nPlease enter the employee ID to search, or * for all employees: ");
+			String entry = input.next();
+			if(entry.equals("*")) {
+				break;
+			} else if(engine.isEmployee(entry)) {
+				employeeID = entry;
+				break;
 			}
+			System.err.println(entry + " is not an employee. Please try again.");
+			input.nextLine();
 		}
 		
-		//If no activities, then display no activities.
-		if(!activityFlag) {
-			System.out.println("\nNo shift data for employee: " + employeeID);
+		from = readDate(input, "Please enter the first date to search (MM/dd/yyyy), or * for no start: ");
+		to = readDate(input, "Please enter the last date to search (MM/dd/yyyy), or * for no end: ");
+		
+		//Loop until a valid activity or * is entered.
+		while(true) {
+			System.out.print("\nPlease enter the activity to search (clock-in, clock-out, break-start, break-end, lunch-start, lunch-end), or * for all: ");
+			String entry = input.next();
+			if(entry.equals("*")) {
+				break;
+			}
+			try {
+				type = ActivityType.fromName(entry);
+				break;
+			} catch (IllegalArgumentException e) {
+				System.err.println(entry + " is not an activity. Please try again.");
+				input.nextLine();
+			}
 		}
+		return new ReportQuery(employeeID, from, to, type);
 	}
 	
 	/**
-	 * Display all shift data for all employees in Date, Employee, Activity format.
+	 * Ask for a date until a valid one or * is entered.
+	 * @param input		The input parser passed in
+	 * @param prompt	The prompt
+	 * @return the date, or null for *
 	 */
-	public void displayAllData() {	
-		System.out.println("\nAll shift activity:");
-		for(Activity action: listActivities) {
-			String activity = action.getActivity();
-			if(activity.equals("clock-in")) {
-				activity = "Shift started.";
-			} else if(activity.equals("clock-out")) {
-				activity = "Shift ended.";
-			} else if(activity.equals("break-start")) {
-				activity = "Break started.";
-			} else if(activity.equals("break-end")) {
-				activity = "Break ended.";
-			} else if(activity.equals("lunch-start")) {
-				activity = "Lunch started.";
-			} else if(activity.equals("lunch-end")) {
-				activity = "Lunch ended.";
+	
+	private LocalDate readDate(Scanner input, String prompt) {
+		while(true) {
+			System.out.print("\n" + prompt);
+			String entry = input.next();
+			if(entry.equals("*")) {
+				return null;
+			}
+			try {
+				return LocalDate.parse(entry, TimeFormats.DATE);
+			} catch (DateTimeParseException e) {
+				System.err.println(entry + " is not a valid date. Please try again.");
+				input.nextLine();
 			}
-			DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm aa");
-			String date = dateFormat.format(action.getDate()).toString();
-			
-			System.out.println("Date: " + date + ", Employee: " + action.getEmployeeID() + ", Activity: " + activity);
 		}
 	}
 }//TimeClock
@@ -0,0 +1,101 @@
+package time.clock.data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared, thread safe date formatting for the time clock. Formatters are immutable and
+ * formatted dates are cached per day, so formatting an activity does not allocate a formatter.
+ */
+
+public final class TimeFormats {
+
+	public static final ZoneId ZONE = ZoneId.systemDefault();
+
+	//Date format used in reports and the calendar file
+	public static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("MM/dd/yyyy", Locale.US);
+
+	//Date and time format for display, e.g. 03/08/2022 07:45 AM
+	public static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm a", Locale.US);
+
+	//Date and time format for parsing the calendar file, which accepts 7:45 AM as well as 07:45 AM
+	public static final DateTimeFormatter PARSE_DATE_TIME = DateTimeFormatter.ofPattern("MM/dd/yyyy h:mm a", Locale.US);
+
+	private static final int MINUTES_PER_DAY = 24 * 60;
+
+	//Formatted time for each minute of the day
+	private static final String[] TIMES_OF_DAY = new String[MINUTES_PER_DAY];
+
+	//Formatted date for each day seen so far
+	private static final ConcurrentMap<LocalDate, String> DAYS = new ConcurrentHashMap<LocalDate, String>();
+
+	static {
+		DateTimeFormatter time = DateTimeFormatter.ofPattern("hh:mm a", Locale.US);
+		for(int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+			TIMES_OF_DAY[minute] = time.format(LocalTime.ofSecondOfDay(minute * 60L));
+		}
+	}
+
+	private TimeFormats() {
+	}
+
+	/**
+	 * Format a date and time in MM/dd/yyyy hh:mm AM/PM format.
+	 * @param dateTime The date and time
+	 * @return the formatted string
+	 */
+
+	public static String format(LocalDateTime dateTime) {
+		return formatDate(dateTime.toLocalDate()) + " " + TIMES_OF_DAY[dateTime.getHour() * 60 + dateTime.getMinute()];
+	}
+
+	/**
+	 * Format a date in MM/dd/yyyy format.
+	 * @param date The date
+	 * @return the formatted string
+	 */
+
+	public static String formatDate(LocalDate date) {
+		String formatted = DAYS.get(date);
+		if(formatted == null) {
+			formatted = DATE.format(date);
+			DAYS.putIfAbsent(date, formatted);
+		}
+		return formatted;
+	}
+
+	/**
+	 * Parse a date and time in the calendar file format.
+	 * @param text The date and time, e.g. 03/08/2022 7:45 AM
+	 * @return the parsed date and time
+	 */
+
+	public static LocalDateTime parse(String text) {
+		return LocalDateTime.parse(text, PARSE_DATE_TIME);
+	}
+
+	/**
+	 * @param dateTime A local date and time
+	 * @return minutes since the epoch for the date and time in the local zone
+	 */
+
+	public static int toEpochMinute(LocalDateTime dateTime) {
+		return (int) (dateTime.atZone(ZONE).toEpochSecond() / 60);
+	}
+
+	/**
+	 * @param epochMinute Minutes since the epoch
+	 * @return the local date and time for the minute
+	 */
+
+	public static LocalDateTime fromEpochMinute(int epochMinute) {
+		return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochMinute * 60L), ZONE);
+	}
+}//TimeFormats
@@ -0,0 +1,292 @@
+package time.clock.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One employee's shift, break and lunch totals per day and per pay period. Punches are paired with the
+ * open interval they close as they are applied, in time order. Intervals still open at midnight are closed
+ * at midnight, so each day's totals only depend on that day's punches. Breaks and lunches only count while
+ * a shift is open, e.g. an admin's lunch before they clock in is not taken off their paid time.
+ */
+
+public class Timesheet {
+
+	private static final int SHIFT = 0;
+	private static final int BREAK = 1;
+	private static final int LUNCH = 2;
+	private static final int NONE = Integer.MIN_VALUE;	//No interval open
+
+	private final PayPeriod payPeriod;							//How days are grouped into pay periods
+	private final PayRules rules;								//Rounding and paid time rules
+	private final int[] open = {NONE, NONE, NONE};				//Start minute of each open interval
+	private LocalDate day;										//Day of the last punch
+	private LocalDate periodStart;								//First day of the last punch's pay period
+	private int dayStart;										//First minute of the day
+	private int dayEnd;											//First minute of the next day
+	private int lastMinute = Integer.MIN_VALUE;					//Latest punch applied, before rounding
+	private final Map<LocalDate, long[]> days = new HashMap<LocalDate, long[]>();		//Totals by day
+	private final Map<LocalDate, long[]> periods = new HashMap<LocalDate, long[]>();	//Totals by pay period start
+
+	public Timesheet(PayPeriod payPeriod, PayRules rules) {
+		this.payPeriod = payPeriod;
+		this.rules = rules;
+	}
+
+	/**
+	 * Apply a punch. Punches must be applied in the order they were made.
+	 * @param code			Activity code
+	 * @param epochMinute	Minutes since the epoch, before rounding
+	 */
+
+	public synchronized void apply(byte code, int epochMinute) {
+		lastMinute = Math.max(lastMinute, epochMinute);
+		int minute = rules.round(epochMinute);
+		if(day == null || minute < dayStart || minute >= dayEnd) {
+			if(day != null && minute >= dayEnd) {
+				//A new day, anything still open ends at midnight
+				closeDay();
+			} else {
+				//A punch from an earlier day, open intervals cannot be paired with it
+				open[SHIFT] = open[BREAK] = open[LUNCH] = NONE;
+			}
+			day = TimeFormats.fromEpochMinute(minute).toLocalDate();
+			periodStart = payPeriod.startOf(day);
+			dayStart = TimeFormats.toEpochMinute(day.atStartOfDay());
+			dayEnd = TimeFormats.toEpochMinute(day.plusDays(1).atStartOfDay());
+		}
+
+		switch(ActivityType.fromCode(code)) {
+		case CLOCK_IN:
+			start(SHIFT, minute);
+			break;
+		case CLOCK_OUT:
+			closeAll(minute);
+			break;
+		case BREAK_START:
+			startOnShift(BREAK, minute);
+			break;
+		case BREAK_END:
+			close(BREAK, minute);
+			break;
+		case LUNCH_START:
+			startOnShift(LUNCH, minute);
+			break;
+		default:
+			close(LUNCH, minute);
+		}
+	}
+
+	/**
+	 * Close anything still open at the end of the last punch's day, as a punch on a later day would.
+	 */
+
+	public synchronized void closeDay() {
+		if(day != null) {
+			closeAll(dayEnd);
+		}
+	}
+
+	/**
+	 * Close anything still open at the end of the last punch's day, if that day is before another.
+	 * @param next The day that started
+	 */
+
+	public synchronized void closeDayBefore(LocalDate next) {
+		if(day != null && day.isBefore(next)) {
+			closeAll(dayEnd);
+		}
+	}
+
+	/**
+	 * Add the totals of a timesheet covering later punches of the same employee, and carry on from where it left off.
+	 * @param later The later timesheet
+	 */
+
+	public synchronized void merge(Timesheet later) {
+		synchronized(later) {
+			add(days, later.days);
+			add(periods, later.periods);
+			lastMinute = Math.max(lastMinute, later.lastMinute);
+			if(later.day != null) {
+				System.arraycopy(later.open, 0, open, 0, open.length);
+				day = later.day;
+				periodStart = later.periodStart;
+				dayStart = later.dayStart;
+				dayEnd = later.dayEnd;
+			}
+		}
+	}
+
+	/**
+	 * @return the minute of the latest punch applied, Integer.MIN_VALUE if there is none
+	 */
+
+	public synchronized int getLastMinute() {
+		return lastMinute;
+	}
+
+	/**
+	 * @param day The day
+	 * @return closed intervals on the day
+	 */
+
+	public synchronized Hours getDay(LocalDate day) {
+		return hours(days.get(day));
+	}
+
+	/**
+	 * @param day Any day in the pay period
+	 * @return closed intervals in the pay period
+	 */
+
+	public synchronized Hours getPeriod(LocalDate day) {
+		return hours(periods.get(payPeriod.startOf(day)));
+	}
+
+	/**
+	 * @param other Another timesheet
+	 * @return true if both have the same daily totals
+	 */
+
+	public synchronized boolean sameTotals(Timesheet other) {
+		synchronized(other) {
+			if(days.size() != other.days.size()) {
+				return false;
+			}
+			for(Map.Entry<LocalDate, long[]> entry: days.entrySet()) {
+				if(!Arrays.equals(entry.getValue(), other.days.get(entry.getKey()))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return a copy that does not change with this timesheet
+	 */
+
+	public synchronized Timesheet copy() {
+		Timesheet copy = new Timesheet(payPeriod, rules);
+		copy.merge(this);
+		return copy;
+	}
+
+	/**
+	 * Write the open intervals and daily totals. Pay period totals are added up again when read.
+	 * @param out The output
+	 * @throws IOException if the output fails
+	 */
+
+	public synchronized void writeTo(DataOutput out) throws IOException {
+		for(int start: open) {
+			out.writeInt(start);
+		}
+		out.writeLong(day == null ? Long.MIN_VALUE : day.toEpochDay());
+		out.writeInt(lastMinute);
+		out.writeInt(days.size());
+		for(Map.Entry<LocalDate, long[]> entry: days.entrySet()) {
+			out.writeLong(entry.getKey().toEpochDay());
+			for(long minutes: entry.getValue()) {
+				out.writeLong(minutes);
+			}
+		}
+	}
+
+	/**
+	 * Read a timesheet written by {@link #writeTo(DataOutput)}.
+	 * @param in		The input
+	 * @param payPeriod	How days are grouped into pay periods
+	 * @param rules		Rounding and paid time rules the timesheet was worked out with
+	 * @return the timesheet
+	 * @throws IOException if the input fails
+	 */
+
+	public static Timesheet readFrom(DataInput in, PayPeriod payPeriod, PayRules rules) throws IOException {
+		Timesheet timesheet = new Timesheet(payPeriod, rules);
+		for(int kind = 0; kind < timesheet.open.length; kind++) {
+			timesheet.open[kind] = in.readInt();
+		}
+		long lastDay = in.readLong();
+		if(lastDay != Long.MIN_VALUE) {
+			timesheet.day = LocalDate.ofEpochDay(lastDay);
+			timesheet.periodStart = payPeriod.startOf(timesheet.day);
+			timesheet.dayStart = TimeFormats.toEpochMinute(timesheet.day.atStartOfDay());
+			timesheet.dayEnd = TimeFormats.toEpochMinute(timesheet.day.plusDays(1).atStartOfDay());
+		}
+		timesheet.lastMinute = in.readInt();
+		int entries = in.readInt();
+		for(int i = 0; i < entries; i++) {
+			LocalDate day = LocalDate.ofEpochDay(in.readLong());
+			long[] total = new long[3];
+			for(int kind = 0; kind < total.length; kind++) {
+				total[kind] = in.readLong();
+			}
+			timesheet.days.put(day, total);
+			long[] period = total(timesheet.periods, payPeriod.startOf(day));
+			for(int kind = 0; kind < total.length; kind++) {
+				period[kind] += total[kind];
+			}
+		}
+		return timesheet;
+	}
+
+	private Hours hours(long[] total) {
+		if(total == null) {
+			return new Hours(0, 0, 0, 0);
+		}
+		return new Hours(total[SHIFT], total[BREAK], total[LUNCH], rules.paidMinutes(total[SHIFT], total[BREAK], total[LUNCH]));
+	}
+
+	private void start(int kind, int minute) {
+		if(open[kind] == NONE) {
+			open[kind] = minute;
+		}
+	}
+
+	private void startOnShift(int kind, int minute) {
+		if(open[SHIFT] != NONE) {
+			start(kind, minute);
+		}
+	}
+
+	private void closeAll(int minute) {
+		close(BREAK, minute);
+		close(LUNCH, minute);
+		close(SHIFT, minute);
+	}
+
+	private void close(int kind, int minute) {
+		if(open[kind] == NONE) {
+			return;
+		}
+		long minutes = minute - open[kind];
+		open[kind] = NONE;
+		total(days, day)[kind] += minutes;
+		total(periods, periodStart)[kind] += minutes;
+	}
+
+	private static long[] total(Map<LocalDate, long[]> totals, LocalDate key) {
+		long[] total = totals.get(key);
+		if(total == null) {
+			total = new long[3];
+			totals.put(key, total);
+		}
+		return total;
+	}
+
+	private static void add(Map<LocalDate, long[]> totals, Map<LocalDate, long[]> more) {
+		for(Map.Entry<LocalDate, long[]> entry: more.entrySet()) {
+			long[] total = total(totals, entry.getKey());
+			for(int kind = 0; kind < total.length; kind++) {
+				total[kind] += entry.getValue()[kind];
+			}
+		}
+	}
+}//Timesheet
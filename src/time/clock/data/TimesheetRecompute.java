@@ -0,0 +1,239 @@
+package time.clock.data;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Works out every employee's {@link Timesheet} from the stored activities, e.g. after the pay rules change.
+ * The parallel computation splits the work by employee, and a long history of one employee by day, over a
+ * fork-join pool. Intervals never run past midnight, so days can be worked out apart and added up, and both
+ * computations use the same per-employee code and give the same totals.
+ */
+
+public class TimesheetRecompute {
+
+	private static final int EMPLOYEES_PER_TASK = 16;	//Employees worked out by one task
+	private static final int PUNCHES_PER_TASK = 8192;	//Punches of one employee worked out by one task
+
+	private EmployeeIds ids;				//Dictionary of employee ordinals
+	private List<ActivityStore> stores;		//Activity stores, oldest first
+	private int[] limits;					//Rows of each store to include
+	private PayPeriod payPeriod;			//How days are grouped into pay periods
+	private PayRules rules;					//Rounding and paid time rules
+	private int fromMinute;					//First minute to include
+	private int toMinute;					//First minute past the range
+
+	/**
+	 * Set up a recompute.
+	 * @param ids		Dictionary of employee ordinals
+	 * @param stores	Activity stores, oldest first
+	 * @param limits	Rows of each store to include, so rows added during the recompute are left out
+	 * @param payPeriod	How days are grouped into pay periods
+	 * @param rules		Rounding and paid time rules
+	 * @param from		First day to include, null for no start
+	 * @param to		Last day to include, null for no end
+	 */
+
+	public TimesheetRecompute(EmployeeIds ids, List<ActivityStore> stores, int[] limits, PayPeriod payPeriod, PayRules rules,
+			LocalDate from, LocalDate to) {
+		this.ids = ids;
+		this.stores = stores;
+		this.limits = limits;
+		this.payPeriod = payPeriod;
+		this.rules = rules;
+		ReportQuery range = new ReportQuery(null, from, to, null);
+		fromMinute = range.getFromMinute();
+		toMinute = range.getToMinute();
+	}
+
+	/**
+	 * Work out every timesheet on the calling thread.
+	 * @return timesheets indexed by employee ordinal, null for employees without punches
+	 */
+
+	public Timesheet[] computeSequential() {
+		Timesheet[] timesheets = new Timesheet[ids.size()];
+		for(int ordinal = 0; ordinal < timesheets.length; ordinal++) {
+			Punches punches = punches(ordinal);
+			if(punches.count > 0) {
+				timesheets[ordinal] = compute(punches, 0, punches.count);
+			}
+		}
+		return timesheets;
+	}
+
+	/**
+	 * Work out every timesheet on a fork-join pool.
+	 * @param pool The pool, e.g. ForkJoinPool.commonPool()
+	 * @return timesheets indexed by employee ordinal, null for employees without punches
+	 */
+
+	public Timesheet[] computeParallel(ForkJoinPool pool) {
+		Timesheet[] timesheets = new Timesheet[ids.size()];
+		pool.invoke(new EmployeeTask(timesheets, 0, timesheets.length));
+		return timesheets;
+	}
+
+	/**
+	 * Work out a single employee's timesheet.
+	 * @param ordinal Employee ordinal
+	 * @return the timesheet, null if the employee has no punches
+	 */
+
+	public Timesheet computeEmployee(int ordinal) {
+		Punches punches = punches(ordinal);
+		return punches.count == 0 ? null : compute(punches, 0, punches.count);
+	}
+
+	/**
+	 * The per-employee computation shared by both modes: apply a run of punches to a new timesheet.
+	 */
+
+	private Timesheet compute(Punches punches, int start, int end) {
+		Timesheet timesheet = new Timesheet(payPeriod, rules);
+		for(int i = start; i < end; i++) {
+			timesheet.apply(punches.codes[i], punches.minutes[i]);
+		}
+		return timesheet;
+	}
+
+	/**
+	 * Gather an employee's punches in the range from every store, in time order. Each store's rows are copied
+	 * under one lock and then filtered, so parallel tasks do not contend for the store's lock on every punch.
+	 */
+
+	private Punches punches(int ordinal) {
+		String employeeID = ids.get(ordinal);
+		Punches punches = new Punches();
+		for(int s = 0; s < stores.size(); s++) {
+			ActivityStore store = stores.get(s);
+			int[] rows = store.getRows(employeeID);
+			punches.grow(rows.length);
+			int first = punches.count;
+			store.getPunches(rows, punches.codes, punches.minutes, first);
+			//Keep the rows in the range, moving them down over those left out
+			for(int i = 0; i < rows.length; i++) {
+				int minute = punches.minutes[first + i];
+				if(rows[i] < limits[s] && minute >= fromMinute && minute < toMinute) {
+					punches.minutes[punches.count] = minute;
+					punches.codes[punches.count] = punches.codes[first + i];
+					punches.count++;
+				}
+			}
+		}
+		return punches;
+	}
+
+	/**
+	 * One employee's punches as parallel arrays.
+	 */
+
+	private static class Punches {
+		private int[] minutes = new int[0];		//Epoch minute of each punch
+		private byte[] codes = new byte[0];		//Activity code of each punch
+		private int count;						//Number of punches
+
+		void grow(int more) {
+			if(count + more > minutes.length) {
+				minutes = Arrays.copyOf(minutes, count + more);
+				codes = Arrays.copyOf(codes, count + more);
+			}
+		}
+	}
+
+	/**
+	 * Works out the timesheets of a range of employee ordinals, splitting the range in half until it is small.
+	 */
+
+	private class EmployeeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private Timesheet[] timesheets;	//Results indexed by ordinal
+		private int first;				//First ordinal
+		private int last;				//Ordinal past the range
+
+		EmployeeTask(Timesheet[] timesheets, int first, int last) {
+			this.timesheets = timesheets;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if(last - first > EMPLOYEES_PER_TASK) {
+				int middle = (first + last) >>> 1;
+				invokeAll(new EmployeeTask(timesheets, first, middle), new EmployeeTask(timesheets, middle, last));
+				return;
+			}
+			for(int ordinal = first; ordinal < last; ordinal++) {
+				Punches punches = punches(ordinal);
+				if(punches.count > 0) {
+					timesheets[ordinal] = new DayTask(punches, 0, punches.count).invoke();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out one employee's timesheet over a run of punches, splitting it at a midnight until it is small.
+	 */
+
+	private class DayTask extends RecursiveTask<Timesheet> {
+		private static final long serialVersionUID = 1L;
+
+		private Punches punches;	//The employee's punches
+		private int start;			//First punch
+		private int end;			//Punch past the run
+
+		DayTask(Punches punches, int start, int end) {
+			this.punches = punches;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Timesheet compute() {
+			int split = end - start > PUNCHES_PER_TASK ? daySplit() : -1;
+			if(split < 0) {
+				return TimesheetRecompute.this.compute(punches, start, end);
+			}
+			DayTask earlier = new DayTask(punches, start, split);
+			earlier.fork();
+			Timesheet later = new DayTask(punches, split, end).compute();
+			Timesheet timesheet = earlier.join();
+
+			//The later run starts on a later day, which closes anything the earlier run left open
+			timesheet.closeDay();
+			timesheet.merge(later);
+			return timesheet;
+		}
+
+		/**
+		 * @return the first punch at or after the middle of the run on a later day than the punch before it,
+		 * or -1 if the whole run is one day
+		 */
+
+		private int daySplit() {
+			int middle = (start + end) >>> 1;
+			for(int i = middle; i < end; i++) {
+				if(!day(i).equals(day(i - 1))) {
+					return i;
+				}
+			}
+			for(int i = middle - 1; i > start; i--) {
+				if(!day(i).equals(day(i - 1))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private LocalDate day(int punch) {
+			return TimeFormats.fromEpochMinute(rules.round(punches.minutes[punch])).toLocalDate();
+		}
+	}
+}//TimesheetRecompute
@@ -0,0 +1,37 @@
+package time.clock.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+/**
+ * Reading pay period settings and finding the period a day is in.
+ */
+
+public class PayPeriodTest {
+
+	@Test
+	public void fortnightStartsOnItsAnchor() {
+		PayPeriod period = PayPeriod.parse("14:01/03/2022");
+		assertEquals(LocalDate.of(2022, 3, 14), period.startOf(LocalDate.of(2022, 3, 20)));
+		assertEquals(LocalDate.of(2022, 3, 27), period.endOf(LocalDate.of(2022, 3, 20)));
+		assertEquals(LocalDate.of(2021, 12, 20), period.startOf(LocalDate.of(2022, 1, 2)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroDaysIsRejected() {
+		PayPeriod.parse("0:01/03/2022");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeDaysIsRejected() {
+		PayPeriod.parse("-7:01/03/2022");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingStartIsRejected() {
+		PayPeriod.parse("14");
+	}
+}//PayPeriodTest
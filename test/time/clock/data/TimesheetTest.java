@@ -0,0 +1,92 @@
+package time.clock.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+/**
+ * Worked hours totals of a single {@link Timesheet} under the standard pay rules.
+ */
+
+public class TimesheetTest {
+
+	private static final LocalDate DAY = LocalDate.of(2022, 3, 8);
+
+	/**
+	 * 1234's day in the shipped calendar.txt: a lunch and a break taken before clocking in at 7:55 PM, which
+	 * are not part of the shift that runs to midnight.
+	 */
+
+	@Test
+	public void lunchAndBreakOffShiftAreNotTakenOffPaidTime() {
+		Timesheet timesheet = timesheet();
+		apply(timesheet, ActivityType.LUNCH_START, "03/08/2022 1:00 PM");
+		apply(timesheet, ActivityType.LUNCH_END, "03/08/2022 1:30 PM");
+		apply(timesheet, ActivityType.BREAK_START, "03/08/2022 3:30 PM");
+		apply(timesheet, ActivityType.BREAK_END, "03/08/2022 4:00 PM");
+		apply(timesheet, ActivityType.CLOCK_OUT, "03/08/2022 4:50 PM");
+		apply(timesheet, ActivityType.CLOCK_IN, "03/08/2022 7:55 PM");
+		timesheet.closeDay();
+
+		Hours hours = timesheet.getDay(DAY);
+		assertEquals(245, hours.getShiftMinutes());
+		assertEquals(0, hours.getBreakMinutes());
+		assertEquals(0, hours.getLunchMinutes());
+		assertEquals(245, hours.getPaidMinutes());
+	}
+
+	@Test
+	public void lunchOnShiftIsUnpaidAndBreakIsPaid() {
+		Timesheet timesheet = timesheet();
+		apply(timesheet, ActivityType.CLOCK_IN, "03/08/2022 8:00 AM");
+		apply(timesheet, ActivityType.BREAK_START, "03/08/2022 10:00 AM");
+		apply(timesheet, ActivityType.BREAK_END, "03/08/2022 10:15 AM");
+		apply(timesheet, ActivityType.LUNCH_START, "03/08/2022 12:00 PM");
+		apply(timesheet, ActivityType.LUNCH_END, "03/08/2022 12:30 PM");
+		apply(timesheet, ActivityType.CLOCK_OUT, "03/08/2022 4:30 PM");
+
+		Hours hours = timesheet.getDay(DAY);
+		assertEquals(510, hours.getShiftMinutes());
+		assertEquals(15, hours.getBreakMinutes());
+		assertEquals(30, hours.getLunchMinutes());
+		assertEquals(480, hours.getPaidMinutes());
+	}
+
+	@Test
+	public void lunchStartedBeforeClockInIsNotCountedOnceTheShiftStarts() {
+		Timesheet timesheet = timesheet();
+		apply(timesheet, ActivityType.LUNCH_START, "03/08/2022 7:30 AM");
+		apply(timesheet, ActivityType.CLOCK_IN, "03/08/2022 8:00 AM");
+		apply(timesheet, ActivityType.LUNCH_END, "03/08/2022 8:30 AM");
+		apply(timesheet, ActivityType.CLOCK_OUT, "03/08/2022 12:00 PM");
+
+		Hours hours = timesheet.getDay(DAY);
+		assertEquals(240, hours.getShiftMinutes());
+		assertEquals(0, hours.getLunchMinutes());
+		assertEquals(240, hours.getPaidMinutes());
+	}
+
+	@Test
+	public void lunchStillOpenAtClockOutEndsWithTheShift() {
+		Timesheet timesheet = timesheet();
+		apply(timesheet, ActivityType.CLOCK_IN, "03/08/2022 8:00 AM");
+		apply(timesheet, ActivityType.LUNCH_START, "03/08/2022 12:00 PM");
+		apply(timesheet, ActivityType.CLOCK_OUT, "03/08/2022 1:00 PM");
+		apply(timesheet, ActivityType.LUNCH_END, "03/08/2022 1:30 PM");
+
+		Hours hours = timesheet.getDay(DAY);
+		assertEquals(300, hours.getShiftMinutes());
+		assertEquals(60, hours.getLunchMinutes());
+		assertEquals(240, hours.getPaidMinutes());
+	}
+
+	private static Timesheet timesheet() {
+		return new Timesheet(new PayPeriod(LocalDate.of(1970, 1, 5), 7), PayRules.standard());
+	}
+
+	private static void apply(Timesheet timesheet, ActivityType type, String dateTime) {
+		timesheet.apply(type.getCode(), TimeFormats.toEpochMinute(TimeFormats.parse(dateTime)));
+	}
+}//TimesheetTest